@@ -18,7 +18,12 @@ package com.superdashi.gosper.adafruit;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.Arrays;
+import java.util.Optional;
 
 import com.diozero.api.PwmOutputDevice;
 import com.superdashi.gosper.device.DeviceException;
@@ -27,6 +32,7 @@ import com.superdashi.gosper.logging.Logger;
 import com.superdashi.gosper.studio.Composition;
 import com.superdashi.gosper.studio.Target;
 import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
 
 class Adafruit2423Screen implements Screen {
 
@@ -34,23 +40,31 @@ class Adafruit2423Screen implements Screen {
 	private static final int height = 240;
 	private static final int size = width * height;
 	private static final IntDimensions dimensions = IntDimensions.of(width, height);
+	private static final IntRect bounds = dimensions.toRect();
 
+	// composited pixels, already in the RGB565 format of the framebuffer
 	private final short[] surface = new short[size];
 	private final Target target = Target.toShort565ARGB(dimensions, surface);
-	private final byte[] buffer = new byte[size * 2];
+	// the pixels last written to the framebuffer
+	private final short[] shown = new short[size];
 	private final String devicePath;
 	private final PwmOutputDevice briPin;
 	private final Logger logger;
 
+	// the region in which the surface may differ from the framebuffer, null if none
+	private IntRect dirty = bounds;
+
 	// allocated on begin
 	private RandomAccessFile raf;
-	//private FileChannel channel;
-	//private MappedByteBuffer mmap;
+	private MappedByteBuffer mmap;
+	private ShortBuffer pixels;
 
 	Adafruit2423Screen(String devicePath, PwmOutputDevice briPin, Logger logger) {
 		this.devicePath = devicePath;
 		this.briPin = briPin;
 		this.logger = logger;
+		// the whole screen is large enough to benefit from compositing on multiple cores
+		target.enableTiling();
 	}
 
 	@Override
@@ -112,8 +126,21 @@ class Adafruit2423Screen implements Screen {
 		if (raf != null) throw new IllegalStateException("already begun");
 		try {
 			raf = new RandomAccessFile(devicePath, "rw");
-			//mmap = channel.map(MapMode.READ_WRITE, 0, size * 2);
+			mmap = raf.getChannel().map(MapMode.READ_WRITE, 0L, size * 2L);
+			mmap.order(ByteOrder.LITTLE_ENDIAN);
+			pixels = mmap.asShortBuffer();
+			// record what the framebuffer holds, so that only differences are written
+			pixels.get(shown);
+			dirty = bounds;
 		} catch (IOException e) {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException ex) {
+					/* ignored */
+				}
+				raf = null;
+			}
 			logger.error().message("failed to open framebuffer device {}").values(devicePath).stacktrace(e).log();
 			throw new DeviceException("failed to open framebuffer");
 		}
@@ -127,9 +154,12 @@ class Adafruit2423Screen implements Screen {
 		} catch (IOException e) {
 			logger.error().message("failed to close framebuffer device {}").values(devicePath).stacktrace(e).log();
 		} finally {
-//			channel = null;
-//			mmap = null;
+			// the mapping itself is released when collected
+			mmap = null;
+			pixels = null;
 			raf = null;
+			// contents of the framebuffer are unknown on the next begin
+			dirty = bounds;
 		}
 	}
 
@@ -140,20 +170,19 @@ class Adafruit2423Screen implements Screen {
 
 	@Override
 	public void clear() {
-		Arrays.fill(buffer, (byte) 0);
+		Arrays.fill(surface, (short) 0);
+		// the next composite must redraw everything
+		target.invalidate();
+		dirty = bounds;
 	}
 
 	@Override
 	public void composite(Composition composition) {
 		if (composition == null) throw new IllegalArgumentException("null composition");
-		composition.compositeTo(target);
-		//TODO irritating that this is necessary
-		for (int i = 0; i < surface.length; i++) {
-			short s = surface[i];
-			buffer[i * 2    ] = (byte)  s      ;
-			buffer[i * 2 + 1] = (byte) (s >> 8);
+		Optional<IntRect> region = composition.compositeTo(target);
+		if (region.isPresent()) {
+			dirty = dirty == null ? region.get() : dirty.growToIncludeRect(region.get());
 		}
-
 	}
 
 	@Override
@@ -164,14 +193,22 @@ class Adafruit2423Screen implements Screen {
 
 	@Override
 	public void update() {
-//		mmap.clear();
-//		mmap.put(buffer);
-		try {
-			raf.seek(0L);
-			raf.write(buffer);
-		} catch (IOException e) {
-			throw new DeviceException("failed to update framebuffer", e);
+		if (pixels == null) throw new IllegalStateException("not begun");
+		if (dirty == null) return;
+		// only write the spans of each row that have changed
+		for (int y = dirty.minY; y < dirty.maxY; y++) {
+			int row = y * width;
+			int from = row + dirty.minX;
+			int to = row + dirty.maxX;
+			while (from < to && surface[from] == shown[from]) from++;
+			if (from == to) continue;
+			while (surface[to - 1] == shown[to - 1]) to--;
+			int length = to - from;
+			System.arraycopy(surface, from, shown, from, length);
+			pixels.position(from);
+			pixels.put(surface, from, length);
 		}
+		dirty = null;
 	}
 
 }
@@ -32,6 +32,7 @@ import com.diozero.util.RuntimeIOException;
 import com.tomgibara.bits.BitStore;
 import com.tomgibara.bits.BitStore.BitMatches;
 import com.tomgibara.bits.Bits;
+import com.superdashi.gosper.device.BitPages;
 import com.superdashi.gosper.device.Screen;
 import com.superdashi.gosper.logging.Logger;
 import com.superdashi.gosper.studio.Composition;
@@ -104,11 +105,13 @@ class Adafruit3531Screen implements Screen {
 	private final Logger logger;
 	private final DigitalOutputDevice resetPin;
 	private final byte[] bitmap = new byte[width * height / 8];
-	private final Target target = Target.toByteBitmap(dimensions, bitmap);
-	private final int[] bufferA = new int[width * height / 32];
-	private final int[] bufferB = new int[width * height / 32];
+	private final Target target = Target.toPackedBits(dimensions, bitmap);
+	// column-major pages, as transmitted in vertical addressing mode
+	private final byte[] bufferA = new byte[width * height / 8];
+	private final byte[] bufferB = new byte[width * height / 8];
 	private final I2CDevice device;
 	private Buffering buffering = Buffering.A_FROM_NIL;
+	private boolean memoryKnown = false; // whether the screen is known to match the memory buffer
 	private int vccState = SSD1306_SWITCHCAPVCC;
 	//private int vccState = SSD1306_EXTERNALVCC;
 	private float contrast = external() ? 0x9F/255f : 0xCF/255f;
@@ -198,6 +201,7 @@ class Adafruit3531Screen implements Screen {
 
 	@Override
 	public void reset() {
+		memoryKnown = false;
 		if (resetPin == null) return;
 		debug("resetting screen");
 		resetPin.on();
@@ -217,19 +221,14 @@ class Adafruit3531Screen implements Screen {
 	public void composite(Composition composition) {
 		if (composition == null) throw new IllegalArgumentException("null composition");
 		composition.compositeTo(target);
-		int[] buffer = buffer();
-		int j = 0;
-		for (int x = 0; x < width; x ++) {
-			for (int y = 0; y < height; y += 32) {
-				buffer[j++] = readBits(x, y);
-			}
-		}
+		// buffers alternate between updates, so the bitmap is always converted in full; update transmits only changed columns
+		BitPages.toColumns(bitmap, width, height, buffer());
 	}
 
 	@Override
 	public void update() {
 		debug("updating screen");
-		if (buffering == Buffering.A_FROM_NIL) {
+		if (buffering == Buffering.A_FROM_NIL || !memoryKnown) {
 			debug("no dirty, first update");
 			transmitAll();
 		} else {
@@ -269,6 +268,7 @@ class Adafruit3531Screen implements Screen {
 			}
 		}
 		buffering = buffering.next();
+		memoryKnown = true;
 		debug("screen updated");
 	}
 
@@ -281,10 +281,7 @@ class Adafruit3531Screen implements Screen {
 	// additional methods
 
 	public void noise(Random r) {
-		int[] buffer = buffer();
-		for (int i = 0; i < buffer.length; i++) {
-			buffer[i] = r.nextInt();
-		}
+		r.nextBytes(buffer());
 	}
 
 	private boolean external() {
@@ -346,58 +343,23 @@ class Adafruit3531Screen implements Screen {
 		}
 	}
 
-	private int[] buffer() {
+	private byte[] buffer() {
 		return buffering == Buffering.B_FROM_A ? bufferB : bufferA;
 	}
 
-	private int[] memory() {
+	private byte[] memory() {
 		return buffering == Buffering.B_FROM_A ? bufferA : bufferB;
 	}
 
-	private void fillBytes(int tl, int bl, int tr, int br) {
-		bytes[ 0] = (byte)  tl       ;
-		bytes[ 1] = (byte) (tl >>  8);
-		bytes[ 2] = (byte) (tl >> 16);
-		bytes[ 3] = (byte) (tl >> 24);
-		bytes[ 4] = (byte)  bl       ;
-		bytes[ 5] = (byte) (bl >>  8);
-		bytes[ 6] = (byte) (bl >> 16);
-		bytes[ 7] = (byte) (bl >> 24);
-		bytes[ 8] = (byte)  tr       ;
-		bytes[ 9] = (byte) (tr >>  8);
-		bytes[10] = (byte) (tr >> 16);
-		bytes[11] = (byte) (tr >> 24);
-		bytes[12] = (byte)  br       ;
-		bytes[13] = (byte) (br >>  8);
-		bytes[14] = (byte) (br >> 16);
-		bytes[15] = (byte) (br >> 24);
-	}
-
-	private int readBits(int x, int y) {
-		int bits = 0;
-		int i = y * width + x; // index of bit
-		int b = i / 8; // index of byte
-		int s = 7 - (i % 8); // shift required
-		int w = width / 8; // bytes per width (= 16)
-		for (int j = b + w * 31; j >= b; j -= w) {
-			bits <<= 1;
-			bits |= (bitmap[j] >> s) & 1;
-		}
-		return bits;
-	}
-
+	// compares column pairs with those last transmitted
 	private void markDirty() {
-		int[] b = buffer();
-		int[] m = memory();
-		for (int i = 0; i < width / 2; i += 4) {
-			dirty.setBit(i,
-					b[i    ] != m[i    ] ||
-					b[i + 1] != m[i + 1] ||
-					b[i + 2] != m[i + 2] ||
-					b[i + 3] != m[i + 3]
-					);
+		byte[] b = buffer();
+		byte[] m = memory();
+		int length = bytes.length;
+		for (int i = 0; i < width / 2; i++) {
+			int from = i * length;
+			dirty.setBit(i, BitPages.firstDifference(b, m, from, from + length) >= 0);
 		}
-		dirty.setAll(true);
 	}
 
 	private void transmitAll() {
@@ -415,32 +377,18 @@ class Adafruit3531Screen implements Screen {
 		issue(0);                    // Page start address. (0 = reset)
 		issue(height/8-1);           // Page end address.
 		int control = 0x40;
-		int[] buffer = buffer();
+		byte[] buffer = buffer();
+		int length = bytes.length;
 		try {
-			if (inverted) {
-				// two column strides
-				for (int i = fromCol; i < toCol; i ++) {
-					int j = i << 2;
-					fillBytes(
-							~buffer[j    ],
-							~buffer[j + 1],
-							~buffer[j + 2],
-							~buffer[j + 3]
-							);
-					device.writeBytes(control, bytes.length, bytes);
-				}
-			} else {
-				// two column strides
-				for (int i = fromCol; i < toCol; i ++) {
-					int j = i << 2;
-					fillBytes(
-							buffer[j    ],
-							buffer[j + 1],
-							buffer[j + 2],
-							buffer[j + 3]
-							);
-					device.writeBytes(control, bytes.length, bytes);
+			// two column strides
+			for (int i = fromCol; i < toCol; i ++) {
+				System.arraycopy(buffer, i * length, bytes, 0, length);
+				if (inverted) {
+					for (int j = 0; j < length; j++) {
+						bytes[j] = (byte) ~bytes[j];
+					}
 				}
+				device.writeBytes(control, length, bytes);
 			}
 		} catch (RuntimeIOException e) {
 			throw new RuntimeException("Failed to write to screen");
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.adafruit;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.superdashi.gosper.color.Argb;
+import com.superdashi.gosper.logging.LogDomain;
+import com.superdashi.gosper.studio.Composition;
+import com.superdashi.gosper.studio.Pane;
+import com.superdashi.gosper.studio.Panel;
+import com.superdashi.gosper.studio.StudioPlan;
+import com.tomgibara.intgeom.IntCoords;
+import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
+
+public class Adafruit2423ScreenTest {
+
+	@Test
+	public void testFileFramebuffer() throws IOException {
+		// a regular file stands in for the framebuffer device
+		Path path = Files.createTempFile("fb", ".test");
+		try {
+			Adafruit2423Screen screen = new Adafruit2423Screen(path.toString(), null, new LogDomain(e -> {}).loggers().loggerFor("test", "screen"));
+			screen.begin();
+			Composition comp = new StudioPlan().createLocalStudio().createComposition();
+			Panel panel = comp.createPanel(screen.dimensions(), true);
+			Pane background = panel.createEntirePane(IntCoords.ORIGIN, 0);
+			background.canvas().color(Argb.RED).fill();
+			screen.composite(comp);
+			screen.update();
+			Assert.assertEquals(0xf800, pixel(path, 0, 0));
+			Assert.assertEquals(0xf800, pixel(path, 319, 239));
+
+			// only the changed region is written
+			Panel small = comp.createPanel(IntDimensions.of(10, 10), true);
+			Pane pane = small.createEntirePane(IntCoords.at(100, 100), 1);
+			pane.canvas().color(Argb.BLUE).fill();
+			try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+				// scribble outside the damaged region
+				raf.seek(2L * (50 * 320 + 50));
+				raf.writeShort(0);
+			}
+			screen.composite(comp);
+			screen.update();
+			Assert.assertEquals(0x001f, pixel(path, 105, 105));
+			Assert.assertEquals(0xf800, pixel(path, 99, 105));
+			Assert.assertEquals(0x0000, pixel(path, 50, 50));
+			Assert.assertEquals(IntRect.bounded(100, 100, 110, 110), pane.bounds());
+
+			screen.blank();
+			Assert.assertEquals(0x0000, pixel(path, 105, 105));
+			screen.end();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	private static int pixel(Path path, int x, int y) throws IOException {
+		byte[] bytes = Files.readAllBytes(path);
+		int i = (y * 320 + x) * 2;
+		return (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8;
+	}
+}
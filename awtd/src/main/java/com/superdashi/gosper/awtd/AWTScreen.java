@@ -100,6 +100,8 @@ public class AWTScreen extends JComponent implements Screen {
 
 		surfaceT = new BufferedImage(screenDimensions.width, screenDimensions.height, background == null ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
 		target = Target.toImage(surfaceT);
+		// only regions with enough pixels will be composited in parallel
+		target.enableTiling();
 
 		IntDimensions imageDimensions = screenDimensions.scale(screenScale);
 		imageWidth = imageDimensions.width;
@@ -238,6 +240,7 @@ public class AWTScreen extends JComponent implements Screen {
 	public void composite(Composition composition) {
 		synchronized (lock) {
 			composition.compositeTo(target);
+			// the back image was last drawn two updates ago, so it is redrawn entirely whatever region was composited
 			Graphics2D g = graphics();
 			g.setPaintMode();
 			g.drawImage(surfaceT, 0, 0, imageWidth, imageHeight, null);
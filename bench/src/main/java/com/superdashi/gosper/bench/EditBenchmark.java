@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2019 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.superdashi.gosper.graphdb.Edit;
+import com.superdashi.gosper.graphdb.Node;
+
+// measures the cost of creating and modifying parts, including flushing and committing
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark {
+
+	// the number of parts created or modified per edit
+	@Param({"1", "100"})
+	public int batch;
+
+	private int counter = 0;
+
+	@Benchmark
+	public boolean createNodesAndCommit(GraphState state) {
+		try (Edit edit = state.view.edit()) {
+			for (int i = 0; i < batch; i++) {
+				GraphState.populate(edit.createNode(GraphState.TYPE_ITEM), counter++);
+			}
+			return edit.commit();
+		}
+	}
+
+	@Benchmark
+	public boolean createEdgesAndCommit(GraphState state) {
+		try (Edit edit = state.view.edit()) {
+			for (int i = 0; i < batch; i++) {
+				Node source = edit.node(state.ref(counter++)).get();
+				Node target = edit.node(state.ref(counter * 31)).get();
+				edit.createEdge(source, target, GraphState.TYPE_LINK);
+			}
+			return edit.commit();
+		}
+	}
+
+	// modifies existing nodes so that each flush has many dirty parts
+	@Benchmark
+	public boolean modifyAndFlush(GraphState state) {
+		try (Edit edit = state.view.edit()) {
+			for (int i = 0; i < batch; i++) {
+				Node node = edit.node(state.ref(counter++)).get();
+				node.attrs().integer(GraphState.ATTR_RANK, counter % GraphState.DISTINCT_VALUES);
+			}
+			boolean flushed = edit.flush();
+			edit.commit();
+			return flushed;
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.superdashi.gosper.framework.Identity;
+import com.superdashi.gosper.framework.Namespace;
+import com.superdashi.gosper.graphdb.Edit;
+import com.superdashi.gosper.graphdb.Node;
+import com.superdashi.gosper.graphdb.PartRef;
+import com.superdashi.gosper.graphdb.Space;
+import com.superdashi.gosper.graphdb.Store;
+import com.superdashi.gosper.graphdb.View;
+import com.superdashi.gosper.graphdb.Viewer;
+import com.superdashi.gosper.item.Value;
+
+// a space populated with a configurable number of nodes, shared by the graphdb benchmarks
+@State(Scope.Benchmark)
+public class GraphState {
+
+	static final Namespace NS = new Namespace("www.example.com");
+	static final Identity ID = new Identity(NS, "bench");
+
+	static final String TYPE_ITEM = "Item";
+	static final String TYPE_LINK = "link";
+	static final String TAG_EVEN = "even";
+	static final String ATTR_RANK = "rank"; // indexed
+	static final String ATTR_LABEL = "label"; // not indexed
+
+	// the number of distinct rank/label values
+	static final int DISTINCT_VALUES = 100;
+
+	// the number of nodes created per edit while populating
+	private static final int POPULATE_BATCH = 1000;
+
+	public enum StoreType {
+		MEMORY,
+		FILE;
+
+		Store newStore(Path path) {
+			switch (this) {
+			case MEMORY: return Store.newMemStore();
+			case FILE  : return Store.fileStore(path);
+			default: throw new IllegalStateException();
+			}
+		}
+	}
+
+	@Param({"MEMORY", "FILE"})
+	public StoreType storeType;
+
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	Path path;
+	Space space;
+	View view;
+	List<PartRef> refs;
+
+	@Setup(Level.Trial)
+	public void setUpSpace() throws IOException {
+		path = storeType == StoreType.FILE ? Files.createTempFile("gosper-bench", ".graphdb") : null;
+		if (path != null) Files.delete(path); // the store must create the file itself
+		Store store = storeType.newStore(path);
+		space = new Space(store);
+		Viewer viewer = Viewer.createBuilder(ID)
+				.addType(TYPE_ITEM)
+				.addType(TYPE_LINK)
+				.addAttribute(ATTR_RANK, Value.Type.INTEGER, Value.empty(), true)
+				.addAttribute(ATTR_LABEL, Value.Type.STRING, Value.empty(), false)
+				.build();
+		space.associate(viewer);
+		space.open();
+		view = space.view(ID);
+		refs = new ArrayList<>(size);
+		for (int i = 0; i < size; i += POPULATE_BATCH) {
+			try (Edit edit = view.edit()) {
+				int limit = Math.min(size, i + POPULATE_BATCH);
+				for (int j = i; j < limit; j++) {
+					refs.add(populate(edit.createNode(TYPE_ITEM), j).ref());
+				}
+				edit.commit();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownSpace() throws IOException {
+		space.close();
+		if (path != null) Files.deleteIfExists(path);
+	}
+
+	PartRef ref(int index) {
+		return refs.get(index % refs.size());
+	}
+
+	static Node populate(Node node, int index) {
+		int value = index % DISTINCT_VALUES;
+		node.attrs().integer(ATTR_RANK, value);
+		node.attrs().string(ATTR_LABEL, "label " + value);
+		if ((index & 1) == 0) node.tags().add(TAG_EVEN);
+		return node;
+	}
+
+}
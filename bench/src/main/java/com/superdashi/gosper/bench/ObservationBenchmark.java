@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2019 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.superdashi.gosper.graphdb.Edit;
+import com.superdashi.gosper.graphdb.Node;
+import com.superdashi.gosper.graphdb.Observation;
+import com.superdashi.gosper.graphdb.Selector;
+import com.superdashi.gosper.item.Value;
+
+// measures the cost that registered observations add to commits, and of delivering their notifications
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservationBenchmark {
+
+	// the number of nodes modified per commit
+	private static final int BATCH = 100;
+
+	@Param({"1", "10", "50"})
+	public int observations;
+
+	private final List<Observation> registered = new ArrayList<>();
+	private int counter = 0;
+	private long notified = 0L;
+
+	@Setup
+	public void setUp(GraphState state) {
+		for (int i = 0; i < observations; i++) {
+			Selector selector = Selector.withValue(GraphState.ATTR_RANK, Value.ofInteger(i % GraphState.DISTINCT_VALUES));
+			registered.add(state.view.observe(selector, ref -> notified++));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		registered.forEach(Observation::cancel);
+		registered.clear();
+	}
+
+	@Benchmark
+	public long commitAndDeliver(GraphState state) {
+		try (Edit edit = state.view.edit()) {
+			for (int i = 0; i < BATCH; i++) {
+				Node node = edit.node(state.ref(counter++)).get();
+				node.attrs().integer(GraphState.ATTR_RANK, counter % GraphState.DISTINCT_VALUES);
+			}
+			edit.commit();
+		}
+		for (Observation observation : registered) {
+			observation.deliver();
+		}
+		return notified;
+	}
+
+}
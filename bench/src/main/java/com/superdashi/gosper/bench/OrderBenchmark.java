@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.superdashi.gosper.graphdb.Inspect;
+import com.superdashi.gosper.graphdb.NodeCursor;
+import com.superdashi.gosper.graphdb.Order;
+import com.superdashi.gosper.graphdb.Selector;
+import com.superdashi.gosper.item.Value;
+
+// measures ordered queries, the way that paged tables consume them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+
+	private static final Selector ALL_ITEMS = Selector.ofType(GraphState.TYPE_ITEM);
+	private static final Selector EVEN = Selector.withTag(GraphState.TAG_EVEN);
+
+	@Param({"INDEXED", "UNINDEXED"})
+	public String attr;
+
+	@Param({"ASCENDING", "DESCENDING"})
+	public String direction;
+
+	private Inspect inspect;
+	private Order order;
+
+	@Setup
+	public void setUp(GraphState state) {
+		inspect = state.view.inspect();
+		String name = attr.equals("INDEXED") ? GraphState.ATTR_RANK : GraphState.ATTR_LABEL;
+		Value.Type type = attr.equals("INDEXED") ? Value.Type.INTEGER : Value.Type.STRING;
+		order = Order.byAttr(name, type.order(direction.equals("ASCENDING"), false));
+	}
+
+	@TearDown
+	public void tearDown() {
+		inspect.close();
+	}
+
+	@Benchmark
+	public long firstPage() {
+		return cursor(ALL_ITEMS).stream().limit(PAGE_SIZE).count();
+	}
+
+	@Benchmark
+	public long middlePage() {
+		NodeCursor cursor = cursor(ALL_ITEMS);
+		return cursor.stream().skip(cursor.count() / 2).limit(PAGE_SIZE).count();
+	}
+
+	@Benchmark
+	public long firstPageOfSelection() {
+		return cursor(EVEN).stream().limit(PAGE_SIZE).count();
+	}
+
+	@Benchmark
+	public long sortAll() {
+		return cursor(ALL_ITEMS).stream().count();
+	}
+
+	private NodeCursor cursor(Selector selector) {
+		return inspect.graph().nodes(selector).order(order);
+	}
+
+}
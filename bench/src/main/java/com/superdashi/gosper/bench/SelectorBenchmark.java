@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.superdashi.gosper.graphdb.Inspect;
+import com.superdashi.gosper.graphdb.Selector;
+import com.superdashi.gosper.item.Value;
+
+// compares selections that are answered from indices with those that require scans
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+
+	private static final Value VALUE = Value.ofInteger(GraphState.DISTINCT_VALUES / 2);
+	private static final Value LABEL = Value.ofString("label " + GraphState.DISTINCT_VALUES / 2);
+
+	private static final Selector ALL_ITEMS = Selector.ofType(GraphState.TYPE_ITEM);
+	private static final Selector EVEN = Selector.withTag(GraphState.TAG_EVEN);
+	private static final Selector RANKED = Selector.withValue(GraphState.ATTR_RANK, VALUE);
+	private static final Selector LABELLED = Selector.withValue(GraphState.ATTR_LABEL, LABEL);
+
+	private Inspect inspect;
+
+	@Setup
+	public void setUp(GraphState state) {
+		inspect = state.view.inspect();
+	}
+
+	@TearDown
+	public void tearDown() {
+		inspect.close();
+	}
+
+	@Benchmark
+	public int ofType() {
+		return inspect.graph().nodes(ALL_ITEMS).count();
+	}
+
+	@Benchmark
+	public int withTag() {
+		return inspect.graph().nodes(EVEN).count();
+	}
+
+	@Benchmark
+	public int withValueIndexed() {
+		return inspect.graph().nodes(RANKED).count();
+	}
+
+	@Benchmark
+	public int withValueScanned() {
+		return inspect.graph().nodes(LABELLED).count();
+	}
+
+	@Benchmark
+	public int conjunctionIndexed() {
+		return inspect.graph().nodes(RANKED.and(EVEN)).count();
+	}
+
+	@Benchmark
+	public int conjunctionScanned() {
+		return inspect.graph().nodes(LABELLED.and(EVEN)).count();
+	}
+
+}
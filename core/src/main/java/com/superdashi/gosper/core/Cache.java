@@ -19,47 +19,63 @@ package com.superdashi.gosper.core;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
 
-import com.tomgibara.collect.Collect;
-import com.tomgibara.collect.Collect.Maps;
-import com.tomgibara.collect.EquivalenceMap;
 import com.superdashi.gosper.color.Palette.LogicalColor;
 import com.superdashi.gosper.util.TextCanvas;
 import com.tomgibara.hashing.Hasher;
 import com.tomgibara.hashing.Hashing;
-import com.tomgibara.storage.StoreType;
 import com.tomgibara.streams.ReadStream;
 import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.StreamException;
 import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
 
 /*
  * Data persisted on disk:
  *
- * URI (utf-8 string) filesize? (long), expiry timestamp (long)
+ * per item: URI (utf-8 string), expiry timestamp (long), fetched data
+ * index: version (int), count (int), then per item: file name (utf-8 string), file size (long), expiry timestamp (long), access timestamp (long), etag (utf-8 string, empty if none), last modified timestamp (long, zero if none)
  *
  */
 
-//TODO needs syncing over files
+// items are held in memory up to the policy limits, evicting the least recently used
+// fetched data is also written to disk, where files are evicted in the same way
+// the disk index is loaded on creation so that lookups only open files that are known to be valid
+// disk hits are promoted back into memory
+// expired items with validators are retained and revalidated with conditional requests
+//TODO disk cache is not safe for concurrent use by multiple processes
 public final class Cache {
 
-	private static final Maps<URI, CacheEntry> maps = Collect.setsOf(URI.class).mappedTo(CacheEntry.class);
-
 	private static final int DEFAULT_STREAM_SIZE = 65536;
 	private static final String DIGEST = "SHA1";
 	private static final Hasher<String> HASH;
@@ -70,16 +86,36 @@ public final class Cache {
 			throw new RuntimeException("No hash algorithm: " + DIGEST);
 		}
 	}
+	private static final String INDEX_NAME = "cache-index";
+	private static final int INDEX_VERSION = 1;
+	private static final int REVALIDATION_THREADS = 2;
+	private static final String TEMP_SUFFIX = ".tmp";
 
 	private static final ImageAdapter imageAdapter = new ImageAdapter();
 	private static final CanvasAdapter canvasAdapter = new CanvasAdapter();
 
 	private final CachePolicy policy;
-	private final EquivalenceMap<URI, CacheEntry> entries = maps.newMap();
+	// matches the names of item files, and any temporary files used to write them
+	private final Pattern itemName;
+	// both maps are access ordered, so that iteration begins with the least recently used
+	private final Map<URI, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, DiskEntry> files = new LinkedHashMap<>(16, 0.75f, true);
+	private long memorySize = 0L; // guarded by entries
+	private long diskSize = 0L; // guarded by files
+	private boolean indexDirty = false; // guarded by files
+	// in progress fetches, keyed as per memory entries
+	private final Map<URI, CompletableFuture<Object>> fetches = new HashMap<>();
+	// null unless stale items are served while they are revalidated, and the cache is open
+	private volatile ExecutorService revalidator = null;
 	private boolean closed;
 
 	Cache(CachePolicy policy) {
 		this.policy = policy;
+		String suffix = policy.getFileSuffix();
+		itemName = Pattern.compile("[0-9a-f]{40}" + Pattern.quote(suffix == null ? "" : suffix) + "(" + Pattern.quote(TEMP_SUFFIX) + ")?");
+		if (policy.isStaleWhileRevalidate()) revalidator = newRevalidator();
+		Path dir = diskPath();
+		if (dir != null) loadIndex(dir);
 	}
 
 	public BufferedImage cachedImage(URI uri) throws CacheException {
@@ -92,106 +128,190 @@ public final class Cache {
 
 	private <T> T cachedItem(URI uri, Adapter<T> adapter) throws CacheException {
 		final URI key = !closed && policy.isMemoryUsed() ? adapter.keyFor(uri) : null;
+		final long now = System.currentTimeMillis();
+		// an expired item that may be revalidated, or served while it is refreshed
+		CacheEntry stale = null;
 
 		// first try memory
 		if (key != null) {
 			CacheEntry entry;
 			synchronized (entries) {
 				entry = entries.get(key);
-			}
-			//TODO check entry validity an nullify if necessary
-			if (entry != null) {
-				if (entry.expires < System.currentTimeMillis()) {
+				if (entry != null && entry.expires < now && !retainable(entry.etag, entry.lastModified)) {
 					entries.remove(key);
-					/* FALL THROUGH */
-				} else {
-					DashiLog.trace("cache hit memory: {0}", key);
-					//TODO update use timestamp
-					return (T) entry.item;
+					memorySize -= entry.size;
+					entry = null;
 				}
-			} else {
+			}
+			if (entry == null) {
 				DashiLog.trace("cache miss memory: {0}", key);
-				/* FALL THROUGH */
+			} else if (entry.expires < now) {
+				DashiLog.trace("cache stale memory: {0}", key);
+				stale = entry;
+			} else {
+				DashiLog.trace("cache hit memory: {0}", key);
+				return (T) entry.item;
 			}
+			/* FALL THROUGH */
 		}
 
 		// then fall back to disk
-		final Path path;
-		if (!closed && policy.isDiskUsed()) {
-			Path dir = policy.getDiskPath();
-			if (dir == null) {
-				DashiLog.warn("disk caching requested without disk path");
-				path = null;
-			} else {
-				path = dir.resolve( name(uri.toString()) );
-			}
-		} else {
-			path = null;
-		}
+		final Path dir = closed ? null : diskPath();
+		final String name = dir == null ? null : name(uri.toString());
 
-		// check file
-		if (path != null) {
-			try (ReadStream stream = Streams.streamInput(Files.newInputStream(path))) {
-				String str = stream.readChars();
-				if (!str.equals(uri.toString())) {
-					DashiLog.warn("Hash collision {0} and {1} resolved to {2}", str, uri, path.getFileName());
-					/* FALL THROUGH */
-				} else {
-					long expires = stream.readLong();
-					if (expires < System.currentTimeMillis()) {
-						DashiLog.debug("Deleting expired file {0} for URI {1}", path.getFileName(), uri);
-						Files.delete(path);
+		// check file, unless a stale item is already available
+		if (name != null && stale == null) {
+			DiskEntry entry = diskEntry(dir, name, now);
+			if (entry != null) {
+				Path path = dir.resolve(name);
+				try (ReadStream stream = Streams.streamInput(Files.newInputStream(path))) {
+					String str = stream.readChars();
+					if (!str.equals(uri.toString())) {
+						DashiLog.warn("Hash collision {0} and {1} resolved to {2}", str, uri, path.getFileName());
 						/* FALL THROUGH */
 					} else {
-						DashiLog.trace("cache hit disk: {0}", uri);
-						//TODO should put back into entries?
-						return adapter.fromStream(stream);
+						stream.readLong();
+						T item = adapter.fromStream(stream);
+						CacheEntry cached = new CacheEntry(adapter.sizeInBytes(item), entry.expires, item, entry.etag, entry.lastModified);
+						if (entry.expires < now) {
+							DashiLog.trace("cache stale disk: {0}", uri);
+							stale = cached;
+						} else {
+							DashiLog.trace("cache hit disk: {0}", uri);
+							if (key != null) storeInMemory(key, cached);
+							return item;
+						}
 					}
+				} catch (IOException | StreamException e) {
+					DashiLog.warn("Error reading item {0} from disk at {1}", e, uri, path);
+					/* FALL THROUGH */
+				}
+			}
+		}
+
+		// serve the stale item while it is refreshed
+		ExecutorService revalidator = this.revalidator;
+		if (stale != null && revalidator != null) {
+			boolean fetching;
+			synchronized (fetches) {
+				fetching = fetches.containsKey(adapter.keyFor(uri));
+			}
+			if (!fetching) {
+				CacheEntry previous = stale;
+				try {
+					revalidator.execute(() -> {
+						try {
+							fetch(uri, adapter, key, dir, name, previous);
+						} catch (CacheException e) {
+							DashiLog.warn("Failed to revalidate {0}", e, uri);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					DashiLog.debug("Not revalidating {0}: cache closed", uri);
 				}
-			} catch (IOException e) {
-				DashiLog.warn("Error reading item {0} from disk at {1}", e, uri, path);
-				/* FALL THROUGH */
 			}
+			return (T) stale.item;
 		}
 
+		return fetch(uri, adapter, key, dir, name, stale);
+	}
+
+	// concurrent requests for the same item share a single fetch
+	private <T> T fetch(URI uri, Adapter<T> adapter, URI key, Path dir, String name, CacheEntry stale) throws CacheException {
+		URI fetchKey = adapter.keyFor(uri);
+		CompletableFuture<Object> fetch;
+		boolean fetching;
+		synchronized (fetches) {
+			fetch = fetches.get(fetchKey);
+			fetching = fetch == null;
+			if (fetching) {
+				fetch = new CompletableFuture<>();
+				fetches.put(fetchKey, fetch);
+			}
+		}
+		if (!fetching) {
+			DashiLog.trace("awaiting fetch: {0}", uri);
+			try {
+				return (T) fetch.join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof CacheException) throw (CacheException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new CacheException("failed to retrieve item from " + uri, cause);
+			}
+		}
+		try {
+			T item = download(uri, adapter, key, dir, name, stale);
+			fetch.complete(item);
+			return item;
+		} catch (Throwable e) {
+			// waiting requests must always be released
+			fetch.completeExceptionally(e);
+			throw e;
+		} finally {
+			synchronized (fetches) {
+				fetches.remove(fetchKey);
+			}
+		}
+	}
+
+	// downloads the item, conditionally if there is a stale item with validators
+	private <T> T download(URI uri, Adapter<T> adapter, URI key, Path dir, String name, CacheEntry stale) throws CacheException {
 		// adapt
 		T item;
 		long expires;
+		String etag;
+		long lastModified;
+		boolean notModified;
 		URLConnection conn = null;
 		StreamBytes bytes;
 		try {
 			conn = uri.toURL().openConnection();
 			// sample UA string from Android: "Mozilla/5.0 (Linux; Android 5.1.1; Nexus 5 Build/LMY48B; wv) AppleWebKit/537.36 (KHTML, like Gecko) Version/4.0 Chrome/43.0.2357.65 Mobile Safari/537.36"
 			conn.setRequestProperty("User-Agent", "Experimental/5.0 (Linux; Raspbian; Raspberry Pi)");
+			boolean conditional = stale != null && conn instanceof HttpURLConnection && (stale.etag != null || stale.lastModified != 0L);
+			if (conditional) {
+				if (stale.etag != null) conn.setRequestProperty("If-None-Match", stale.etag);
+				if (stale.lastModified != 0L) conn.setIfModifiedSince(stale.lastModified);
+			}
+			notModified = conditional && ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
 			expires = conn.getExpiration();
-			long length = conn.getContentLengthLong();
-			int maxStreamSize = policy.getMaxStreamSize();
-			if (maxStreamSize < 0) maxStreamSize = Integer.MAX_VALUE;
-			int maxFileSize = policy.getMaxFileSize();
-			//TODO need to limit size
-			//TODO need to use size if available
-			//TODO need to do this only if caching enabled
-			ReadStream stream = null;
-			try {
-				if (length > maxStreamSize) {
-					bytes = null;
-					stream = Streams.streamInput(conn.getInputStream());
-				} else {
-					int initialSize = Math.max((int) length, -1);
-					if (initialSize == -1) {
-						bytes = Streams.bytes(DEFAULT_STREAM_SIZE, maxStreamSize);
+			etag = conn.getHeaderField("ETag");
+			lastModified = conn.getLastModified();
+			if (notModified) {
+				item = (T) stale.item;
+				bytes = null;
+				// a response need not repeat the validators
+				if (etag == null) etag = stale.etag;
+				if (lastModified == 0L) lastModified = stale.lastModified;
+			} else {
+				long length = conn.getContentLengthLong();
+				int maxStreamSize = policy.getMaxStreamSize();
+				if (maxStreamSize < 0) maxStreamSize = Integer.MAX_VALUE;
+				//TODO need to limit size
+				//TODO need to do this only if caching enabled
+				ReadStream stream = null;
+				try {
+					if (length > maxStreamSize) {
+						bytes = null;
+						stream = Streams.streamInput(conn.getInputStream());
 					} else {
-						bytes = Streams.bytes(initialSize, maxStreamSize);
-					}
-					try (ReadStream in = Streams.streamInput(conn.getInputStream())) {
-						//bytes.writeStream().from(in).transferFully();
-						in.to(bytes.writeStream()).transferFully();
+						int initialSize = Math.max((int) length, -1);
+						if (initialSize == -1) {
+							bytes = Streams.bytes(DEFAULT_STREAM_SIZE, maxStreamSize);
+						} else {
+							bytes = Streams.bytes(initialSize, maxStreamSize);
+						}
+						try (ReadStream in = Streams.streamInput(conn.getInputStream())) {
+							//bytes.writeStream().from(in).transferFully();
+							in.to(bytes.writeStream()).transferFully();
+						}
+						stream = bytes.readStream();
 					}
-					stream = bytes.readStream();
+					item = adapter.fromStream(stream);
+				} finally {
+					if (stream != null) stream.close();
 				}
-				item = adapter.fromStream(stream);
-			} finally {
-				if (stream != null) stream.close();
 			}
 		} catch (IOException e) {
 			throw new CacheException("failed to retrieve image from " + uri, e);
@@ -209,30 +329,51 @@ public final class Cache {
 			expires = 0L;
 		}
 
-		// store in memory
-		if (expires != 0 && key != null) {
-			int size = adapter.sizeInBytes(item);
-			synchronized (entries) {
-				entries.put(key, new CacheEntry(key, size, expires, item, bytes));
+		// an item without an expiry is still worth storing if it can be revalidated
+		if (expires != 0L || etag != null || lastModified != 0L) {
+			if (notModified) {
+				DashiLog.trace("cache revalidated: {0}", uri);
+				CacheEntry entry = new CacheEntry(stale.size, expires, item, etag, lastModified);
+				if (key != null) storeInMemory(key, entry);
+				if (name != null) revalidateOnDisk(dir, name, entry);
+			} else {
+				CacheEntry entry = new CacheEntry(adapter.sizeInBytes(item), expires, item, etag, lastModified);
+				// store in memory
+				if (key != null) storeInMemory(key, entry);
+				// store on disk, only possible if the data was buffered
+				int maxFileSize = policy.getMaxFileSize();
+				if (name != null && bytes != null && (maxFileSize < 0 || bytes.length() <= maxFileSize)) storeOnDisk(uri, dir, name, entry, bytes);
 			}
 		}
 
-		// store on disk (how? - cache original data on entry?);
 		return item;
 	}
 
 	// control methods
-	void close() {
+	synchronized void close() {
 		closed = true;
+		// pending revalidations are abandoned, items remain stale until the cache is reopened
+		if (revalidator != null) {
+			revalidator.shutdownNow();
+			revalidator = null;
+		}
+		Path dir = diskPath();
+		if (dir != null) {
+			synchronized (files) {
+				if (indexDirty) saveIndex(dir);
+			}
+		}
 	}
 
-	void open() {
+	synchronized void open() {
 		closed = false;
+		if (policy.isStaleWhileRevalidate() && revalidator == null) revalidator = newRevalidator();
 	}
 
 	void clearMemory() {
 		synchronized (entries) {
 			entries.clear();
+			memorySize = 0L;
 		}
 	}
 
@@ -242,9 +383,14 @@ public final class Cache {
 			DashiLog.warn("Cannot clear disk cache: no path configured");
 			return;
 		}
+		synchronized (files) {
+			files.clear();
+			diskSize = 0L;
+			indexDirty = false;
+		}
 		String suffix = policy.getFileSuffix();
-		try {
-			Files.newDirectoryStream(path, p -> Files.isRegularFile(path) && (suffix == null || p.getFileName().toString().endsWith(suffix))).forEach(p -> {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, p -> Files.isRegularFile(p) && (suffix == null || p.getFileName().toString().endsWith(suffix) || p.getFileName().toString().equals(INDEX_NAME)))) {
+			stream.forEach(p -> {
 				try {
 					Files.delete(p);
 				} catch (IOException e) {
@@ -265,6 +411,234 @@ public final class Cache {
 		return suffix == null ? hash : hash + suffix;
 	}
 
+	private Path diskPath() {
+		if (!policy.isDiskUsed()) return null;
+		Path dir = policy.getDiskPath();
+		if (dir == null) DashiLog.warn("disk caching requested without disk path");
+		return dir;
+	}
+
+	// whether an expired item is worth retaining
+	private boolean retainable(String etag, long lastModified) {
+		return policy.isStaleWhileRevalidate() || etag != null || lastModified != 0L;
+	}
+
+	private ExecutorService newRevalidator() {
+		return Executors.newFixedThreadPool(REVALIDATION_THREADS, r -> {
+			Thread thread = new Thread(r, "gosper-cache-revalidation");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private void storeInMemory(URI key, CacheEntry entry) {
+		if (entry.size > policy.getMemoryLimit()) {
+			DashiLog.trace("Not caching oversized item {0} in memory", key);
+			return;
+		}
+		synchronized (entries) {
+			CacheEntry previous = entries.put(key, entry);
+			if (previous != null) memorySize -= previous.size;
+			memorySize += entry.size;
+			Iterator<Map.Entry<URI, CacheEntry>> i = entries.entrySet().iterator();
+			while (memorySize > policy.getMemoryLimit() || entries.size() > policy.getMaxMemoryItems()) {
+				Map.Entry<URI, CacheEntry> eldest = i.next();
+				i.remove();
+				memorySize -= eldest.getValue().size;
+				DashiLog.trace("cache evicted memory: {0}", eldest.getKey());
+			}
+		}
+	}
+
+	// returns the index entry for a file that is unexpired or may be revalidated, or null
+	private DiskEntry diskEntry(Path dir, String name, long now) {
+		synchronized (files) {
+			DiskEntry entry = files.get(name);
+			if (entry == null) {
+				DashiLog.trace("cache miss disk: {0}", name);
+				return null;
+			}
+			if (entry.expires < now && !retainable(entry.etag, entry.lastModified)) {
+				DashiLog.debug("Deleting expired file {0}", name);
+				removeFile(dir, name);
+				saveIndex(dir);
+				return null;
+			}
+			entry.accessed = now;
+			indexDirty = true;
+			return entry;
+		}
+	}
+
+	// records the new expiry and validators of a file whose content is unchanged
+	private void revalidateOnDisk(Path dir, String name, CacheEntry entry) {
+		synchronized (files) {
+			DiskEntry previous = files.get(name);
+			if (previous == null) return;
+			files.put(name, new DiskEntry(name, previous.size, entry.expires, System.currentTimeMillis(), entry.etag, entry.lastModified));
+			saveIndex(dir);
+		}
+	}
+
+	private void storeOnDisk(URI uri, Path dir, String name, CacheEntry entry, StreamBytes bytes) {
+		Path path = dir.resolve(name);
+		Path temp = dir.resolve(name + TEMP_SUFFIX);
+		try {
+			Files.createDirectories(dir);
+			try (WriteStream out = Streams.streamOutput(Files.newOutputStream(temp))) {
+				out.writeChars(uri.toString());
+				out.writeLong(entry.expires);
+				// the read stream of the bytes has already been consumed
+				out.writeBytes(bytes.directBytes(), 0, bytes.length());
+			}
+			long size = Files.size(temp);
+			int maxFileSize = policy.getMaxFileSize();
+			if (maxFileSize >= 0 && size > maxFileSize) {
+				DashiLog.trace("Not caching oversized item {0} on disk", uri);
+				Files.delete(temp);
+				return;
+			}
+			synchronized (files) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				DiskEntry previous = files.put(name, new DiskEntry(name, size, entry.expires, System.currentTimeMillis(), entry.etag, entry.lastModified));
+				if (previous != null) diskSize -= previous.size;
+				diskSize += size;
+				evictFiles(dir);
+				saveIndex(dir);
+			}
+		} catch (IOException | StreamException e) {
+			DashiLog.warn("Error writing item {0} to disk at {1}", e, uri, path);
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ex) {
+				DashiLog.warn("Failed to delete temporary file {0}", ex, temp);
+			}
+		}
+	}
+
+	// called with lock on files
+	private void evictFiles(Path dir) {
+		while (diskSize > policy.getDiskLimit() || files.size() > policy.getMaxDiskItems()) {
+			String eldest = files.keySet().iterator().next();
+			DashiLog.trace("cache evicted disk: {0}", eldest);
+			removeFile(dir, eldest);
+		}
+	}
+
+	// called with lock on files
+	private void removeFile(Path dir, String name) {
+		DiskEntry entry = files.remove(name);
+		if (entry == null) return;
+		diskSize -= entry.size;
+		indexDirty = true;
+		try {
+			Files.deleteIfExists(dir.resolve(name));
+		} catch (IOException e) {
+			DashiLog.warn("Failed to delete cache file {0}", e, name);
+		}
+	}
+
+	// called with lock on files
+	private void saveIndex(Path dir) {
+		Path path = dir.resolve(INDEX_NAME);
+		Path temp = dir.resolve(INDEX_NAME + TEMP_SUFFIX);
+		try {
+			Files.createDirectories(dir);
+			try (WriteStream out = Streams.streamOutput(Files.newOutputStream(temp))) {
+				out.writeInt(INDEX_VERSION);
+				out.writeInt(files.size());
+				for (DiskEntry entry : files.values()) {
+					out.writeChars(entry.name);
+					out.writeLong(entry.size);
+					out.writeLong(entry.expires);
+					out.writeLong(entry.accessed);
+					out.writeChars(entry.etag == null ? "" : entry.etag);
+					out.writeLong(entry.lastModified);
+				}
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			indexDirty = false;
+		} catch (IOException | StreamException e) {
+			DashiLog.warn("Error writing cache index {0}", e, path);
+		}
+	}
+
+	private void loadIndex(Path dir) {
+		if (!Files.isDirectory(dir)) return;
+		Path path = dir.resolve(INDEX_NAME);
+		List<DiskEntry> loaded = new ArrayList<>();
+		if (Files.isRegularFile(path)) {
+			try (ReadStream stream = Streams.streamInput(Files.newInputStream(path))) {
+				if (stream.readInt() != INDEX_VERSION) throw new IOException("unsupported index version");
+				int count = stream.readInt();
+				for (int i = 0; i < count; i++) {
+					String name = stream.readChars();
+					long size = stream.readLong();
+					long expires = stream.readLong();
+					long accessed = stream.readLong();
+					String etag = stream.readChars();
+					long lastModified = stream.readLong();
+					DiskEntry entry = new DiskEntry(name, size, expires, accessed, etag.isEmpty() ? null : etag, lastModified);
+					if (Files.isRegularFile(dir.resolve(name))) loaded.add(entry);
+				}
+			} catch (IOException | StreamException e) {
+				DashiLog.warn("Error reading cache index {0}", e, path);
+				loaded.clear();
+			}
+		}
+		// files that are not indexed were written before the index existed, or after it was last saved
+		// they are indexed if they are readable, while temporary files are left by a failure
+		Set<String> indexed = new HashSet<>();
+		loaded.forEach(e -> indexed.add(e.name));
+		boolean unindexed = false;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, p -> itemName.matcher(p.getFileName().toString()).matches())) {
+			for (Path p : stream) {
+				String name = p.getFileName().toString();
+				if (indexed.contains(name)) continue;
+				Matcher matcher = itemName.matcher(name);
+				boolean temporary = matcher.matches() && matcher.group(1) != null;
+				DiskEntry entry = temporary ? null : readEntry(p, name);
+				if (entry == null) {
+					DashiLog.debug("Deleting unindexed file {0}", name);
+					try {
+						Files.deleteIfExists(p);
+					} catch (IOException e) {
+						DashiLog.warn("Failed to delete cache file {0}", e, name);
+					}
+				} else {
+					DashiLog.debug("Indexing unindexed file {0}", name);
+					loaded.add(entry);
+					unindexed = true;
+				}
+			}
+		} catch (IOException e) {
+			DashiLog.warn("Error listing unindexed files in {0}", e, dir);
+		}
+		loaded.sort(Comparator.comparingLong(e -> e.accessed));
+		synchronized (files) {
+			for (DiskEntry entry : loaded) {
+				files.put(entry.name, entry);
+				diskSize += entry.size;
+			}
+			if (unindexed) indexDirty = true;
+			evictFiles(dir);
+			if (indexDirty) saveIndex(dir);
+		}
+	}
+
+	// the entry for a valid item file that is missing from the index, or null
+	private DiskEntry readEntry(Path path, String name) {
+		try (ReadStream stream = Streams.streamInput(Files.newInputStream(path))) {
+			String uri = stream.readChars();
+			long expires = stream.readLong();
+			if (!name(uri).equals(name)) return null;
+			return new DiskEntry(name, Files.size(path), expires, Files.getLastModifiedTime(path).toMillis(), null, 0L);
+		} catch (IOException | StreamException e) {
+			DashiLog.debug("Unable to read unindexed file {0}", e, name);
+			return null;
+		}
+	}
+
 	private static interface Adapter<T> {
 
 		URI keyFor(URI uri);
@@ -291,7 +665,8 @@ public final class Cache {
 		@Override
 		public int sizeInBytes(BufferedImage item) {
 			DataBuffer buffer = item.getRaster().getDataBuffer();
-			return buffer.getSize() * DataBuffer.getDataTypeSize(buffer.getDataType());
+			// data type sizes are in bits
+			return buffer.getSize() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
 		}
 	}
 
@@ -359,18 +734,38 @@ public final class Cache {
 
 	private static final class CacheEntry {
 
-		private final URI uri;
 		private final long expires;
 		private final int size;
-		private Object item;
-		private StreamBytes bytes;
+		private final Object item;
+		// validators, null or zero if absent
+		private final String etag;
+		private final long lastModified;
 
-		private CacheEntry(URI uri, int size, long expires, Object item, StreamBytes bytes) {
-			this.uri = uri;
+		private CacheEntry(int size, long expires, Object item, String etag, long lastModified) {
 			this.size = size;
 			this.expires = expires;
 			this.item = item;
-			this.bytes = bytes;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static final class DiskEntry {
+
+		private final String name;
+		private final long size;
+		private final long expires;
+		private final String etag;
+		private final long lastModified;
+		private long accessed;
+
+		private DiskEntry(String name, long size, long expires, long accessed, String etag, long lastModified) {
+			this.name = name;
+			this.size = size;
+			this.expires = expires;
+			this.accessed = accessed;
+			this.etag = etag;
+			this.lastModified = lastModified;
 		}
 	}
 }
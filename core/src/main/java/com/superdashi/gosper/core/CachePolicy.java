@@ -48,5 +48,8 @@ public interface CachePolicy {
 
 	default int getMaxFileSize() { return 1024 * 1024; }
 
+	// whether expired items are returned immediately while they are refreshed in the background
+	default boolean isStaleWhileRevalidate() { return false; }
+
 
 }
@@ -44,7 +44,7 @@ public final class CoreTier {
 	public void start() {
 		checkRunning(false);
 		executor = Executors.newSingleThreadScheduledExecutor();
-		server.start(executor);
+		server.start();
 	}
 
 	public void stop(long timeout) throws InterruptedException {
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class CacheTest {
+
+	private static final String ETAG = "\"v1\"";
+
+	private static final CachePolicy memoryPolicy = new CachePolicy() {
+		@Override public boolean isDiskUsed() { return false; }
+		@Override public Path getDiskPath() { return null; }
+	};
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger notModified = new AtomicInteger();
+	private volatile long delay = 0L;
+	private HttpServer server;
+	private byte[] png;
+
+	@Before
+	public void startServer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", out);
+		png = out.toByteArray();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		// responses are immediately expired, but carry a validator, except under /fresh/
+		server.createContext("/", this::respond);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		delay = 200L;
+		Cache cache = new Cache(memoryPolicy);
+		URI uri = uri("single");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<BufferedImage> a = executor.submit(() -> cache.cachedImage(uri));
+			Future<BufferedImage> b = executor.submit(() -> cache.cachedImage(uri));
+			assertSame(a.get(), b.get());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void testRevalidation() {
+		Cache cache = new Cache(memoryPolicy);
+		URI uri = uri("revalidated");
+		BufferedImage image = cache.cachedImage(uri);
+		assertSame(image, cache.cachedImage(uri));
+		assertSame(image, cache.cachedImage(uri));
+		assertEquals(3, requests.get());
+		assertEquals(2, notModified.get());
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		Cache cache = new Cache(new CachePolicy() {
+			@Override public boolean isDiskUsed() { return false; }
+			@Override public Path getDiskPath() { return null; }
+			@Override public boolean isStaleWhileRevalidate() { return true; }
+		});
+		URI uri = uri("stale");
+		BufferedImage image = cache.cachedImage(uri);
+		delay = 200L;
+		// the stale image is returned without waiting for the server
+		long start = System.currentTimeMillis();
+		assertSame(image, cache.cachedImage(uri));
+		assertTrue(System.currentTimeMillis() - start < delay);
+		Thread.sleep(delay * 2);
+		assertEquals(2, requests.get());
+		assertEquals(1, notModified.get());
+
+		// revalidation stops while the cache is closed
+		cache.close();
+		long limit = System.currentTimeMillis() + 1000L;
+		while (revalidationThreads() > 0) {
+			assertTrue(System.currentTimeMillis() < limit);
+			Thread.sleep(1L);
+		}
+		cache.open();
+		assertSame(image, cache.cachedImage(uri));
+		Thread.sleep(delay * 2);
+		assertEquals(3, requests.get());
+		cache.close();
+	}
+
+	@Test
+	public void testDiskPersistence() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		URI uri = uri("fresh/persisted");
+		Cache cache = new Cache(diskPolicy(dir, false, 1000, 1024 * 1024));
+		BufferedImage image = cache.cachedImage(uri);
+		cache.close();
+		assertEquals(1, requests.get());
+		assertTrue(Files.isRegularFile(dir.resolve("cache-index")));
+
+		// the index is read by a new cache
+		Cache reopened = new Cache(diskPolicy(dir, false, 1000, 1024 * 1024));
+		BufferedImage read = reopened.cachedImage(uri);
+		assertEquals(1, requests.get());
+		assertEquals(image.getWidth(), read.getWidth());
+		assertEquals(image.getHeight(), read.getHeight());
+	}
+
+	@Test
+	public void testDiskEviction() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		Cache cache = new Cache(diskPolicy(dir, false, 2, 1024 * 1024));
+		cache.cachedImage(uri("fresh/a"));
+		cache.cachedImage(uri("fresh/b"));
+		cache.cachedImage(uri("fresh/c"));
+		assertEquals(2, itemFiles(dir));
+		// the least recently used file was evicted
+		cache.cachedImage(uri("fresh/b"));
+		cache.cachedImage(uri("fresh/c"));
+		assertEquals(3, requests.get());
+		cache.cachedImage(uri("fresh/a"));
+		assertEquals(4, requests.get());
+		cache.close();
+
+		// a smaller limit is applied on load, retaining the most recently used file
+		long size;
+		try (Stream<Path> paths = Files.list(dir)) {
+			size = paths.filter(p -> p.getFileName().toString().matches("[0-9a-f]{40}")).findFirst().get().toFile().length();
+		}
+		Cache smaller = new Cache(diskPolicy(dir, false, 1000, size));
+		assertEquals(1, itemFiles(dir));
+		smaller.cachedImage(uri("fresh/a"));
+		assertEquals(4, requests.get());
+		smaller.cachedImage(uri("fresh/c"));
+		assertEquals(5, requests.get());
+		assertEquals(1, itemFiles(dir));
+	}
+
+	@Test
+	public void testDiskPromotion() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		URI uri = uri("fresh/promoted");
+		Cache writer = new Cache(diskPolicy(dir, false, 1000, 1024 * 1024));
+		writer.cachedImage(uri);
+		writer.close();
+
+		Cache cache = new Cache(diskPolicy(dir, true, 1000, 1024 * 1024));
+		BufferedImage image = cache.cachedImage(uri);
+		assertEquals(1, requests.get());
+		// the disk hit is now served from memory
+		cache.clearDisk();
+		assertEquals(0, itemFiles(dir));
+		assertSame(image, cache.cachedImage(uri));
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void testUnindexedFiles() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		URI uri = uri("fresh/unindexed");
+		Cache writer = new Cache(diskPolicy(dir, false, 1000, 1024 * 1024));
+		writer.cachedImage(uri);
+		writer.close();
+		// as if written before the disk was indexed
+		Files.delete(dir.resolve("cache-index"));
+		Path temporary = Files.write(dir.resolve("0000000000000000000000000000000000000000.tmp"), new byte[] {1, 2, 3});
+		Path invalid = Files.write(dir.resolve("1111111111111111111111111111111111111111"), new byte[] {1, 2, 3});
+		Path other = Files.write(dir.resolve("notes.txt"), new byte[] {1, 2, 3});
+
+		// valid files are indexed, other item files are deleted
+		Cache cache = new Cache(diskPolicy(dir, false, 1000, 1024 * 1024));
+		assertFalse(Files.exists(temporary));
+		assertFalse(Files.exists(invalid));
+		assertTrue(Files.exists(other));
+		assertEquals(1, itemFiles(dir));
+		assertTrue(Files.isRegularFile(dir.resolve("cache-index")));
+		cache.cachedImage(uri);
+		assertEquals(1, requests.get());
+	}
+
+	private static long revalidationThreads() {
+		return Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().equals("gosper-cache-revalidation")).count();
+	}
+
+	private static CachePolicy diskPolicy(Path dir, boolean memoryUsed, int maxDiskItems, long diskLimit) {
+		return new CachePolicy() {
+			@Override public Path getDiskPath() { return dir; }
+			@Override public boolean isMemoryUsed() { return memoryUsed; }
+			@Override public int getMaxDiskItems() { return maxDiskItems; }
+			@Override public long getDiskLimit() { return diskLimit; }
+		};
+	}
+
+	private static long itemFiles(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.list(dir)) {
+			return paths.filter(p -> p.getFileName().toString().matches("[0-9a-f]{40}")).count();
+		}
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/" + path);
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		exchange.getResponseHeaders().add("ETag", ETAG);
+		if (exchange.getRequestURI().getPath().startsWith("/fresh/")) {
+			exchange.getResponseHeaders().add("Expires", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusHours(1)));
+		}
+		if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			notModified.incrementAndGet();
+			exchange.sendResponseHeaders(304, -1L);
+		} else {
+			exchange.sendResponseHeaders(200, png.length);
+			exchange.getResponseBody().write(png);
+		}
+		exchange.close();
+	}
+}
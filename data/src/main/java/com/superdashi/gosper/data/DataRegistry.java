@@ -16,11 +16,17 @@
  */
 package com.superdashi.gosper.data;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.superdashi.gosper.core.ComponentRegistry;
@@ -42,8 +48,14 @@ import com.tomgibara.storage.StoreType;
 import com.tomgibara.tries.Trie;
 import com.tomgibara.tries.Tries;
 
+// each component records data in its own lane: recordings for one component are serialized
+// but recordings for different components proceed in parallel
+// http requests are routed without locking via an immutable snapshot of the paths
 public class DataRegistry implements ComponentRegistry<DataComponent> {
 
+	// the maximum number of recordings that may be waiting in a lane
+	private static final int LANE_CAPACITY = 16;
+
 	private static final Storage<String> stringStorage = StoreType.of(String.class).storage();
 	private static final Storage<Invoker> invokerStorage = StoreType.of(Invoker.class).storage();
 	private static final Storage<Identity> identityStorage = StoreType.of(Identity.class).storage();
@@ -70,6 +82,14 @@ public class DataRegistry implements ComponentRegistry<DataComponent> {
 	// populated during processing based on presence of path
 	private final Trie<String> paths = Tries.serialStrings(DashiUtil.UTF8).nodeSource(Tries.sourceForCompactLookups()).newTrie();
 	private final EquivalenceMap<String, Invoker> invokersByPath = pathMaps.newMap();
+	// republished whenever paths are modified
+	private volatile Routes routes = new Routes(paths.immutableCopy(), Collections.emptyMap());
+	// lanes are drained on this executor, at most one thread per lane
+	private final ExecutorService lanes = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "gosper-data-lane");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	DataRegistry(DataTier dataTier) {
 		this.dataTier = dataTier;
@@ -142,6 +162,8 @@ public class DataRegistry implements ComponentRegistry<DataComponent> {
 			invokers.values().forEach(i -> unprocess(i));
 			EquivalenceSet<DataComponent> removed = invokers.keySet().immutableCopy();
 			invokers.clear();
+			components.clear();
+			publishRoutes();
 			return removed;
 		}
 	}
@@ -154,19 +176,26 @@ public class DataRegistry implements ComponentRegistry<DataComponent> {
 		}
 	}
 
+	public Optional<LaneStats> laneStats(Identity identity) {
+		if (identity == null) throw new IllegalArgumentException("null identity");
+		Invoker invoker;
+		synchronized (lock) {
+			DataComponent component = components.get(identity);
+			invoker = component == null ? null : invokers.get(component);
+		}
+		return invoker == null ? Optional.empty() : Optional.of(invoker.stats());
+	}
+
 	void record(ReqRes reqres) {
 		if (reqres == null) throw new IllegalArgumentException("null request");
 		String path = reqres.request().path();
 		//TODO could optimize this away with a 'smart' serializer
 		if (!path.endsWith("/")) path += '/';
-		Invoker invoker;
-		synchronized (lock) {
-			Optional<String> match;
-			match = paths.parentOrSelf(path);
-			if (!match.isPresent()) return;
-			invoker = invokersByPath.get(match.get());
-			reqres.trimPath(pathPrefixLength(invoker.component));
-		}
+		Routes routes = this.routes;
+		Optional<String> match = routes.paths.parentOrSelf(path);
+		if (!match.isPresent()) return;
+		Invoker invoker = routes.invokers.get(match.get());
+		reqres.trimPath(pathPrefixLength(invoker.component));
 		invoker.record(reqres);
 	}
 
@@ -177,17 +206,26 @@ public class DataRegistry implements ComponentRegistry<DataComponent> {
 		Invoker invoker = new Invoker(component);
 		invokers.put(component, invoker);
 		process(invoker);
+		publishRoutes();
 		return true;
 	}
 
 	private boolean remove(DataComponent component) {
 		Identity identity = component.details().identity();
-		return components.remove(identity, component);
+		if (!components.remove(identity, component)) return false;
+		unprocess(invokers.remove(component));
+		publishRoutes();
+		return true;
 	}
 
 	private DataComponent remove(Details details) {
 		Identity identity = details.identity();
-		return components.remove(identity);
+		DataComponent component = components.remove(identity);
+		if (component != null) {
+			unprocess(invokers.remove(component));
+			publishRoutes();
+		}
+		return component;
 	}
 
 	private void process(Invoker invoker) {
@@ -201,6 +239,7 @@ public class DataRegistry implements ComponentRegistry<DataComponent> {
 			Invoker previous = invokersByPath.putIfAbsent(path, invoker);
 			if (previous == null) {
 				paths.add(path);
+				invoker.path = path;
 			} else {
 				DashiLog.warn("data components {0} and {1} mapped to the same path: {2}", invoker.component.details(), previous.component.details(), path);
 			}
@@ -217,30 +256,213 @@ public class DataRegistry implements ComponentRegistry<DataComponent> {
 			invokersByPath.remove(invoker.path);
 			invoker.path = null;
 		}
+		invoker.close();
+	}
+
+	// called with lock
+	private void publishRoutes() {
+		routes = new Routes(paths.immutableCopy(), new HashMap<>(invokersByPath));
+	}
+
+	private static final class Routes {
+
+		final Trie<String> paths;
+		final Map<String, Invoker> invokers;
+
+		Routes(Trie<String> paths, Map<String, Invoker> invokers) {
+			this.paths = paths;
+			this.invokers = invokers;
+		}
+	}
+
+	// a recording waiting in a lane
+	private static final class Task {
+
+		final Runnable runnable;
+		final boolean awaited;
+		final long queued = System.nanoTime();
+		final CountDownLatch done = new CountDownLatch(1);
+		// both set before done is counted down
+		RuntimeException failure = null;
+		boolean discarded = false;
+
+		Task(Runnable runnable, boolean awaited) {
+			this.runnable = runnable;
+			this.awaited = awaited;
+		}
+
+		// false if the task was discarded without being run
+		boolean await(ArrayDeque<Task> queue) {
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						done.await();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+						// abandon the task if it hasn't started, otherwise wait for it to finish
+						synchronized (queue) {
+							if (queue.remove(this)) return false;
+						}
+					}
+				}
+			} finally {
+				if (interrupted) Thread.currentThread().interrupt();
+			}
+			if (failure != null) throw failure;
+			return !discarded;
+		}
 	}
 
-	//TODO look for something less heavyweight than taking the lock when recording
+	// invokes the recorder of a component, serially, in the order that recordings were requested
 	private final class Invoker implements Runnable {
 
 		final DataComponent component;
 		Future<?> future = null;
 		String path = null;
 
+		// all guarded by queue
+		private final ArrayDeque<Task> queue = new ArrayDeque<>();
+		private boolean draining = false;
+		private boolean closed = false;
+		private long recorded = 0L;
+		private long dropped = 0L;
+		private long totalWait = 0L;
+		private long maxWait = 0L;
+
 		Invoker(DataComponent component) {
 			this.component = component;
 		}
 
+		// invoked by the schedule
 		@Override
 		public void run() {
-			synchronized (lock) {
-				component.recorder().recordDataOnSchedule();
+			if (!submit(new Task(() -> component.recorder().recordDataOnSchedule(), false))) {
+				DashiLog.debug("scheduled recording dropped for data component {0}", component.details());
 			}
 		}
 
 		void record(HttpReqRes reqres) {
-			synchronized (lock) {
-				component.recorder().recordDataOnHttp(reqres);
+			Task task = new Task(() -> component.recorder().recordDataOnHttp(reqres), true);
+			// the response must be made before the request is returned
+			if (!submit(task) || !task.await(queue)) {
+				reqres.respondStatus(503, "Service Unavailable");
+			}
+		}
+
+		void close() {
+			List<Task> discarded;
+			synchronized (queue) {
+				closed = true;
+				discarded = new ArrayList<>(queue);
+				queue.clear();
 			}
+			// release any waiting requests
+			discarded.forEach(t -> {
+				t.discarded = true;
+				t.done.countDown();
+			});
+		}
+
+		LaneStats stats() {
+			synchronized (queue) {
+				return new LaneStats(queue.size(), recorded, dropped, totalWait, maxWait);
+			}
+		}
+
+		private boolean submit(Task task) {
+			synchronized (queue) {
+				if (closed || queue.size() == LANE_CAPACITY) {
+					dropped++;
+					return false;
+				}
+				queue.add(task);
+				if (draining) return true;
+				draining = true;
+			}
+			lanes.execute(this::drain);
+			return true;
+		}
+
+		private void drain() {
+			while (true) {
+				Task task;
+				synchronized (queue) {
+					task = queue.poll();
+					if (task == null) {
+						draining = false;
+						return;
+					}
+					long wait = System.nanoTime() - task.queued;
+					recorded++;
+					totalWait += wait;
+					maxWait = Math.max(maxWait, wait);
+				}
+				try {
+					task.runnable.run();
+				} catch (RuntimeException e) {
+					if (task.awaited) {
+						task.failure = e;
+					} else {
+						DashiLog.warn("data component {0} failed to record data", e, component.details());
+					}
+				} finally {
+					task.done.countDown();
+				}
+			}
+		}
+	}
+
+	// a snapshot of the activity in a component's lane, times are in nanoseconds
+	public static final class LaneStats {
+
+		private final int queued;
+		private final long recorded;
+		private final long dropped;
+		private final long totalWait;
+		private final long maxWait;
+
+		LaneStats(int queued, long recorded, long dropped, long totalWait, long maxWait) {
+			this.queued = queued;
+			this.recorded = recorded;
+			this.dropped = dropped;
+			this.totalWait = totalWait;
+			this.maxWait = maxWait;
+		}
+
+		// the number of recordings waiting
+		public int queued() {
+			return queued;
+		}
+
+		// the number of recordings started
+		public long recorded() {
+			return recorded;
+		}
+
+		// the number of recordings rejected because the lane was full
+		public long dropped() {
+			return dropped;
+		}
+
+		// the total time recordings waited in the lane
+		public long totalWait() {
+			return totalWait;
+		}
+
+		// the longest time a recording waited in the lane
+		public long maxWait() {
+			return maxWait;
+		}
+
+		public long meanWait() {
+			return recorded == 0L ? 0L : totalWait / recorded;
+		}
+
+		@Override
+		public String toString() {
+			return "queued: " + queued + ", recorded: " + recorded + ", dropped: " + dropped + ", mean wait: " + meanWait() + "ns, max wait: " + maxWait + "ns";
 		}
 	}
 }
@@ -38,11 +38,15 @@ import com.superdashi.gosper.graphdb.AttrName;
 import com.superdashi.gosper.graphdb.Edit;
 import com.superdashi.gosper.graphdb.Inspect;
 import com.superdashi.gosper.graphdb.Inventory;
+import com.superdashi.gosper.graphdb.Observation;
+import com.superdashi.gosper.graphdb.PartRef;
+import com.superdashi.gosper.graphdb.Selector;
 import com.superdashi.gosper.graphdb.Space;
 import com.superdashi.gosper.graphdb.Store;
 import com.superdashi.gosper.graphdb.Type;
 import com.superdashi.gosper.graphdb.View;
 import com.superdashi.gosper.graphdb.Viewer;
+import com.tomgibara.fundament.Consumer;
 
 public final class DataTier {
 
@@ -216,6 +220,11 @@ public final class DataTier {
 			return view().edit();
 		}
 
+		@Override
+		public Observation observe(Selector selector, Consumer<PartRef> notifier) {
+			return view().observe(selector, notifier);
+		}
+
 		@Override
 		public boolean isTypeAvailable(Type type) {
 			return view.isTypeAvailable(type);
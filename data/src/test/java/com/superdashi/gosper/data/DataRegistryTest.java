@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.superdashi.gosper.config.Config.PathConfig;
+import com.superdashi.gosper.config.ConfigProperty;
+import com.superdashi.gosper.config.ConfigTarget;
+import com.superdashi.gosper.framework.Details;
+import com.superdashi.gosper.framework.Identity;
+import com.superdashi.gosper.framework.Kind;
+import com.superdashi.gosper.framework.Namespace;
+import com.superdashi.gosper.framework.Type;
+import com.superdashi.gosper.http.HttpReqRes;
+import com.superdashi.gosper.http.HttpRequest;
+import com.superdashi.gosper.http.HttpServer.ReqRes;
+import com.tomgibara.streams.ReadStream;
+
+public class DataRegistryTest {
+
+	private static final Namespace ns = new Namespace("www.example.com");
+	private static final Type type = new Type(new Identity(ns, "recorder"), Kind.DATA_RECORDER);
+
+	@Test
+	public void testLaneOrder() throws InterruptedException {
+		DataRegistry registry = new DataRegistry(null);
+		Recorder recorder = new Recorder();
+		DataComponent component = component("a", "/a", recorder);
+		registry.addComponent(component);
+
+		// the first recording blocks the lane while the others queue behind it
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			int queued = i;
+			threads.add(request(registry, new Request("/www.example.com/a/" + i)));
+			waitFor(() -> stats(registry, component).recorded() == 1 && stats(registry, component).queued() == queued);
+		}
+		Assert.assertEquals(1, recorder.entered.size());
+		recorder.release.countDown();
+		for (Thread thread : threads) {
+			thread.join(1000L);
+		}
+		Assert.assertEquals(Arrays.asList("/a/0", "/a/1", "/a/2", "/a/3", "/a/4"), recorder.entered);
+		Assert.assertEquals(1, recorder.maxActive);
+		DataRegistry.LaneStats stats = stats(registry, component);
+		Assert.assertEquals(5L, stats.recorded());
+		Assert.assertEquals(0, stats.queued());
+		Assert.assertEquals(0L, stats.dropped());
+		Assert.assertTrue(stats.maxWait() > 0L);
+		Assert.assertTrue(stats.meanWait() <= stats.maxWait());
+	}
+
+	@Test
+	public void testParallelLanes() throws InterruptedException {
+		DataRegistry registry = new DataRegistry(null);
+		Recorder a = new Recorder();
+		Recorder b = new Recorder();
+		registry.addComponent(component("a", "/a", a));
+		registry.addComponent(component("b", "/b", b));
+		Thread ta = request(registry, new Request("/www.example.com/a"));
+		Thread tb = request(registry, new Request("/www.example.com/b"));
+		// a blocked recording does not delay other components
+		waitFor(() -> a.entered.size() == 1 && b.entered.size() == 1);
+		a.release.countDown();
+		b.release.countDown();
+		ta.join(1000L);
+		tb.join(1000L);
+	}
+
+	@Test
+	public void testFullLane() throws InterruptedException {
+		DataRegistry registry = new DataRegistry(null);
+		Recorder recorder = new Recorder();
+		DataComponent component = component("a", "/a", recorder);
+		registry.addComponent(component);
+		List<Thread> threads = new ArrayList<>();
+		threads.add(request(registry, new Request("/www.example.com/a")));
+		waitFor(() -> recorder.entered.size() == 1);
+		for (int i = 0; i < 16; i++) {
+			threads.add(request(registry, new Request("/www.example.com/a")));
+		}
+		waitFor(() -> stats(registry, component).queued() == 16);
+
+		Request rejected = new Request("/www.example.com/a");
+		registry.record(rejected);
+		Assert.assertEquals(503, rejected.status);
+		Assert.assertEquals(1L, stats(registry, component).dropped());
+
+		recorder.release.countDown();
+		for (Thread thread : threads) {
+			thread.join(1000L);
+		}
+		Assert.assertEquals(17, recorder.entered.size());
+		Assert.assertEquals(17L, stats(registry, component).recorded());
+	}
+
+	@Test
+	public void testInterruptedRequest() throws InterruptedException {
+		DataRegistry registry = new DataRegistry(null);
+		Recorder recorder = new Recorder();
+		DataComponent component = component("a", "/a", recorder);
+		registry.addComponent(component);
+		Thread first = request(registry, new Request("/www.example.com/a/0"));
+		waitFor(() -> recorder.entered.size() == 1);
+
+		Request request = new Request("/www.example.com/a/1");
+		boolean[] interrupted = {false};
+		Thread second = new Thread(() -> {
+			registry.record(request);
+			interrupted[0] = Thread.currentThread().isInterrupted();
+		});
+		second.start();
+		waitFor(() -> stats(registry, component).queued() == 1);
+		second.interrupt();
+		second.join(1000L);
+
+		// the abandoned request is rejected and never recorded
+		Assert.assertEquals(503, request.status);
+		Assert.assertTrue(interrupted[0]);
+		Assert.assertEquals(0, stats(registry, component).queued());
+		recorder.release.countDown();
+		first.join(1000L);
+		Assert.assertEquals(Collections.singletonList("/a/0"), recorder.entered);
+	}
+
+	@Test
+	public void testRemoval() throws InterruptedException {
+		DataRegistry registry = new DataRegistry(null);
+		Recorder recorder = new Recorder();
+		DataComponent component = component("a", "/a", recorder);
+		registry.addComponent(component);
+		Request first = new Request("/www.example.com/a");
+		Thread t1 = request(registry, first);
+		waitFor(() -> recorder.entered.size() == 1);
+		Request queued = new Request("/www.example.com/a");
+		Thread t2 = request(registry, queued);
+		waitFor(() -> stats(registry, component).queued() == 1);
+
+		// queued requests are rejected when the component is removed
+		Assert.assertTrue(registry.removeComponent(component));
+		t2.join(1000L);
+		Assert.assertEquals(503, queued.status);
+		recorder.release.countDown();
+		t1.join(1000L);
+		Assert.assertEquals(1, recorder.entered.size());
+
+		// the path is no longer mapped
+		Identity identity = component.details().identity();
+		Assert.assertFalse(registry.componentWithIdentity(identity).isPresent());
+		Assert.assertFalse(registry.laneStats(identity).isPresent());
+		Request unmapped = new Request("/www.example.com/a");
+		registry.record(unmapped);
+		Assert.assertEquals(1, recorder.entered.size());
+		Assert.assertEquals(0, unmapped.status);
+
+		// and may be mapped to another component
+		Recorder other = new Recorder();
+		other.release.countDown();
+		registry.addComponent(component("b", "/a", other));
+		registry.record(new Request("/www.example.com/a/x"));
+		Assert.assertEquals(Collections.singletonList("/a/x"), other.entered);
+	}
+
+	private static DataComponent component(String name, String path, DataRecorder recorder) {
+		DataComponent component = new DataComponent(recorder, Details.typeAndIdentity(type, new Identity(ns, name)));
+		ConfigTarget target = component.openTarget();
+		target.applyStyling(ConfigProperty.forName("request-path").get(), PathConfig.parse(path));
+		target.close();
+		return component;
+	}
+
+	private static DataRegistry.LaneStats stats(DataRegistry registry, DataComponent component) {
+		return registry.laneStats(component.details().identity()).get();
+	}
+
+	private static Thread request(DataRegistry registry, Request request) {
+		Thread thread = new Thread(() -> registry.record(request));
+		thread.start();
+		return thread;
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long limit = System.currentTimeMillis() + 1000L;
+		while (!condition.getAsBoolean()) {
+			Assert.assertTrue("timed out", System.currentTimeMillis() < limit);
+			Thread.sleep(1L);
+		}
+	}
+
+	// records the trimmed paths of requests, blocking until released
+	private static final class Recorder implements DataRecorder {
+
+		final List<String> entered = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch release = new CountDownLatch(1);
+		private int active = 0;
+		int maxActive = 0;
+
+		@Override
+		public void recordDataOnHttp(HttpReqRes reqres) {
+			synchronized (this) {
+				active++;
+				maxActive = Math.max(maxActive, active);
+			}
+			entered.add(reqres.request().path());
+			try {
+				release.await(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			synchronized (this) {
+				active--;
+			}
+			reqres.respondOkay();
+		}
+	}
+
+	private static final class Request implements ReqRes, HttpRequest {
+
+		private String path;
+		volatile int status = 0;
+
+		Request(String path) {
+			this.path = path;
+		}
+
+		@Override public HttpRequest request() { return this; }
+		@Override public void trimPath(int chars) { path = path.substring(chars); }
+		@Override public void respondStatus(int statusCode, String statusMessage) { status = statusCode; }
+		@Override public void respondText(int statusCode, String mimeType, String content) { status = statusCode; }
+		@Override public void respondStream(int statusCode, String mimeType, ReadStream content, long length) { status = statusCode; }
+		@Override public void respondNotFound() { status = 404; }
+		@Override public void respondOkay() { status = 200; }
+
+		@Override public String protocol() { return "HTTP/1.1"; }
+		@Override public String method() { return "POST"; }
+		@Override public String path() { return path; }
+		@Override public Query query() { return null; }
+		@Override public Set<String> headerNames() { return Collections.emptySet(); }
+		@Override public Optional<String> getHeaderAsString(String headerName) { return Optional.empty(); }
+		@Override public List<Cookie> getCookies() { return Collections.emptyList(); }
+		@Override public ReadStream contentAsStream() { return null; }
+	}
+}
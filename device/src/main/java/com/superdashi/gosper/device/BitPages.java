@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.device;
+
+// converts row-major bitmaps into the page layouts of monochrome display controllers
+// bitmap rows are packed from the most significant bit of each byte, as composited by Target.toPackedBits
+// a page is a strip of 8 rows, stored as a byte per column with the top row in the least significant bit
+// dimensions must be multiples of 8
+public final class BitPages {
+
+	// pages are stored consecutively with a byte for each column, as in page addressing modes (eg. ST7567)
+	public static void toPages(byte[] bitmap, int width, int height, byte[] pages) {
+		transpose(bitmap, width, height, pages, false);
+	}
+
+	// columns are stored consecutively with a byte for each page, as in vertical addressing modes (eg. SSD1306)
+	public static void toColumns(byte[] bitmap, int width, int height, byte[] columns) {
+		transpose(bitmap, width, height, columns, true);
+	}
+
+	// the index of the first byte in the range that differs between the arrays, or -1
+	public static int firstDifference(byte[] a, byte[] b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (a[i] != b[i]) return i;
+		}
+		return -1;
+	}
+
+	// the index of the last byte in the range that differs between the arrays, or -1
+	public static int lastDifference(byte[] a, byte[] b, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (a[i] != b[i]) return i;
+		}
+		return -1;
+	}
+
+	// transposes each block of 8x8 bits as a single 64 bit word
+	private static void transpose(byte[] bitmap, int width, int height, byte[] out, boolean columnar) {
+		if (bitmap == null) throw new IllegalArgumentException("null bitmap");
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (width <= 0 || (width & 7) != 0) throw new IllegalArgumentException("invalid width");
+		if (height <= 0 || (height & 7) != 0) throw new IllegalArgumentException("invalid height");
+		int size = width * height >> 3;
+		if (bitmap.length < size) throw new IllegalArgumentException("bitmap too short");
+		if (out.length < size) throw new IllegalArgumentException("out too short");
+		int stride = width >> 3; // bytes per row
+		int pageCount = height >> 3;
+		for (int page = 0; page < pageCount; page++) {
+			int rowOffset = page * 8 * stride;
+			for (int col = 0; col < stride; col++) {
+				// gather the block with each row in a byte, the top row least significant
+				int i = rowOffset + col;
+				long word =
+						 (bitmap[i             ] & 0xffL)        |
+						((bitmap[i + stride    ] & 0xffL) <<  8) |
+						((bitmap[i + stride * 2] & 0xffL) << 16) |
+						((bitmap[i + stride * 3] & 0xffL) << 24) |
+						((bitmap[i + stride * 4] & 0xffL) << 32) |
+						((bitmap[i + stride * 5] & 0xffL) << 40) |
+						((bitmap[i + stride * 6] & 0xffL) << 48) |
+						((bitmap[i + stride * 7] & 0xffL) << 56);
+				if (word != 0L) word = transpose(word);
+				// each byte is now a column, but the leftmost column is most significant
+				int x = col << 3;
+				if (columnar) {
+					int j = x * pageCount + page;
+					for (int k = 56; k >= 0; k -= 8, j += pageCount) {
+						out[j] = (byte) (word >>> k);
+					}
+				} else {
+					int j = page * width + x;
+					for (int k = 56; k >= 0; k -= 8, j++) {
+						out[j] = (byte) (word >>> k);
+					}
+				}
+			}
+		}
+	}
+
+	// exchanges bit 8r+c with bit 8c+r
+	private static long transpose(long x) {
+		long t;
+		t = (x ^ (x >>>  7)) & 0x00aa00aa00aa00aaL;
+		x = x ^ t ^ (t <<  7);
+		t = (x ^ (x >>> 14)) & 0x0000cccc0000ccccL;
+		x = x ^ t ^ (t << 14);
+		t = (x ^ (x >>> 28)) & 0x00000000f0f0f0f0L;
+		x = x ^ t ^ (t << 28);
+		return x;
+	}
+
+	private BitPages() { }
+
+}
@@ -40,5 +40,6 @@ public interface Device {
 	void setSpecConsumer(Consumer<DeviceSpec> specConsumer);
 
 	// if non empty, the object from which events must be polled.
+	// devices should prefer to deliver events to the consumer as they occur
 	Optional<Producer<List<Event>>> events();
 }
@@ -29,12 +29,14 @@ public class DeviceSpec {
 		private Keyboard keyboard;
 		private ScreenClass screenClass;
 		private ScreenColor screenColor;
+		private int maxFrameRate;
 
 		public Builder() {
 			flags = 0;
 			keyboard = Keyboard.withNoKeys();
 			screenClass = ScreenClass.NONE;
 			screenColor = ScreenColor.OTHER;
+			maxFrameRate = DEFAULT_MAX_FRAME_RATE;
 		}
 
 		private Builder(DeviceSpec device) {
@@ -42,6 +44,7 @@ public class DeviceSpec {
 			keyboard = device.keyboard;
 			screenClass = device.screenClass;
 			screenColor = device.screenColor;
+			maxFrameRate = device.maxFrameRate;
 		}
 
 		// input
@@ -104,6 +107,13 @@ public class DeviceSpec {
 			return this;
 		}
 
+		// zero indicates that the rate of screen updates is not limited
+		public Builder setMaxFrameRate(int maxFrameRate) {
+			if (maxFrameRate < 0) throw new IllegalArgumentException("negative maxFrameRate");
+			this.maxFrameRate = maxFrameRate;
+			return this;
+		}
+
 		public Builder addHdmi() {
 			flags |= FLAGS_HDMI;
 			return this;
@@ -134,6 +144,9 @@ public class DeviceSpec {
 		return new Builder();
 	}
 
+	// frames per second
+	public static final int DEFAULT_MAX_FRAME_RATE = 30;
+
 	// input
 
 	private static final int FLAGS_DPAD     = 0b000000000001;
@@ -163,12 +176,14 @@ public class DeviceSpec {
 	public final Keyboard keyboard;
 	public final ScreenClass screenClass;
 	public final ScreenColor screenColor;
+	public final int maxFrameRate;
 
 	private DeviceSpec(Builder builder) {
 		flags = builder.flags;
 		keyboard = builder.keyboard;
 		screenClass = builder.screenClass;
 		screenColor = builder.screenColor;
+		maxFrameRate = builder.maxFrameRate;
 	}
 
 	// input
@@ -316,6 +316,12 @@ public class Event {
 		return flags == this.flags ? this : new Event(flags, key, x, y, time);
 	}
 
+	// true if this event can replace the preceding event without loss of information
+	public boolean coalescesWith(Event previous) {
+		if (previous == null) throw new IllegalArgumentException("null previous");
+		return isSet(FLAG_MOVE) && previous.flags == flags && previous.key == key;
+	}
+
 	// object methods
 
 	@Override
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.device;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BitPagesTest {
+
+	private static final int WIDTH = 128;
+	private static final int HEIGHT = 64;
+
+	@Test
+	public void testTransposition() {
+		Random r = new Random(0L);
+		byte[] bitmap = new byte[WIDTH * HEIGHT / 8];
+		r.nextBytes(bitmap);
+		byte[] pages = new byte[bitmap.length];
+		byte[] columns = new byte[bitmap.length];
+		BitPages.toPages(bitmap, WIDTH, HEIGHT, pages);
+		BitPages.toColumns(bitmap, WIDTH, HEIGHT, columns);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				boolean expected = (bitmap[(y * WIDTH + x) >> 3] & (0x80 >> (x & 7))) != 0;
+				Assert.assertEquals(expected, (pages[(y >> 3) * WIDTH + x] & (1 << (y & 7))) != 0);
+				Assert.assertEquals(expected, (columns[x * (HEIGHT >> 3) + (y >> 3)] & (1 << (y & 7))) != 0);
+			}
+		}
+	}
+
+	@Test
+	public void testDifferences() {
+		byte[] a = new byte[32];
+		byte[] b = new byte[32];
+		Assert.assertEquals(-1, BitPages.firstDifference(a, b, 0, 32));
+		Assert.assertEquals(-1, BitPages.lastDifference(a, b, 0, 32));
+		b[5] = 1;
+		b[20] = 1;
+		Assert.assertEquals(5, BitPages.firstDifference(a, b, 0, 32));
+		Assert.assertEquals(20, BitPages.lastDifference(a, b, 0, 32));
+		Assert.assertEquals(20, BitPages.firstDifference(a, b, 6, 32));
+		Assert.assertEquals(5, BitPages.lastDifference(a, b, 0, 20));
+	}
+}
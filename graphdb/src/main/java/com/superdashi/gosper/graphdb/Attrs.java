@@ -223,6 +223,11 @@ public final class Attrs {
 		return itemizer.itemize(map);
 	}
 
+	// the attributes for which the part holds values, irrespective of visibility
+	Set<AttrName> names() {
+		return map.keySet();
+	}
+
 	// private helper methods
 
 	private Value getImpl(AttrName attrName) {
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.graphdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// creates parts in bulk, within an edit
+// ids are drawn from contiguous reservations and new parts are written to each map in key order
+// parts are no longer tracked individually once flushed, subsequent modifications are handled by the edit
+public final class Bulk {
+
+	// reservations grow from the minimum to the maximum if no counts are supplied
+	private static final int MIN_RESERVATION = 64;
+	private static final int MAX_RESERVATION = 65536;
+
+	private final Edit edit;
+	private final Space space;
+
+	private final List<Node> nodes = new ArrayList<>();
+	private final List<Edge> edges = new ArrayList<>();
+
+	// ranges of reserved ids (prior to transformation)
+	private int nextNodeIndex = 0;
+	private int nodeIndexLimit = 0;
+	private int nextEdgeIndex = 0;
+	private int edgeIndexLimit = 0;
+	private int nodeReservation = MIN_RESERVATION;
+	private int edgeReservation = MIN_RESERVATION;
+
+	boolean flushing = false;
+
+	Bulk(Edit edit) {
+		this.edit = edit;
+		space = edit.space;
+	}
+
+	// reserves ids for the specified number of parts in one step
+	// any ids remaining from a previous reservation are discarded
+	public void reserve(int nodeCount, int edgeCount) {
+		if (nodeCount < 0) throw new IllegalArgumentException("negative nodeCount");
+		if (edgeCount < 0) throw new IllegalArgumentException("negative edgeCount");
+		edit.checkMutable();
+		if (nodeCount > 0) {
+			nextNodeIndex = space.reserveNodeIds(nodeCount);
+			nodeIndexLimit = nextNodeIndex + nodeCount;
+		}
+		if (edgeCount > 0) {
+			nextEdgeIndex = space.reserveEdgeIds(edgeCount);
+			edgeIndexLimit = nextEdgeIndex + edgeCount;
+		}
+	}
+
+	public Node createNode() {
+		edit.checkMutable();
+		return edit.createNode(edit.view.identityId, nodeId());
+	}
+
+	public Node createNode(Type type) {
+		if (type == null) throw new IllegalArgumentException("null type");
+		edit.checkAvailable(type);
+		Node node = createNode();
+		node.typeImpl(type);
+		return node;
+	}
+
+	public Node createNode(String typeName) {
+		return createNode(edit.view.type(typeName));
+	}
+
+	public Edge createEdge(Node source, Node target) {
+		edit.checkEdge(source, target);
+		Edge edge = new Edge(edit.view.identityId, edgeId(), source, target);
+		edit.addEdge(edge);
+		return edge;
+	}
+
+	public Edge createEdge(Node source, Node target, Type type) {
+		if (type == null) throw new IllegalArgumentException("null type");
+		edit.checkAvailable(type);
+		Edge edge = createEdge(source, target);
+		edge.typeImpl(type);
+		return edge;
+	}
+
+	public Edge createEdge(Node source, Node target, String typeName) {
+		return createEdge(source, target, edit.view.type(typeName));
+	}
+
+	// the number of parts created since the last flush
+	public int pendingCount() {
+		return nodes.size() + edges.size();
+	}
+
+	// package scoped methods
+
+	void record(Part part) {
+		if (part.isNode()) {
+			nodes.add((Node) part);
+		} else {
+			edges.add((Edge) part);
+		}
+	}
+
+	void flush(Observer observer) {
+		List<Change> changes = new ArrayList<>();
+		flushing = true;
+		try {
+			for (Node node : nodes) {
+				node.cleanData(changes);
+			}
+			for (Edge edge : edges) {
+				edge.cleanData(changes);
+			}
+		} finally {
+			flushing = false;
+		}
+		edit.indices.putAll(nodes, edges, changes);
+		nodes.forEach(observer::observe);
+		edges.forEach(observer::observe);
+		nodes.clear();
+		edges.clear();
+	}
+
+	// private helper methods
+
+	private int nodeId() {
+		if (nextNodeIndex == nodeIndexLimit) {
+			nextNodeIndex = space.reserveNodeIds(nodeReservation);
+			nodeIndexLimit = nextNodeIndex + nodeReservation;
+			nodeReservation = Math.min(nodeReservation * 2, MAX_RESERVATION);
+		}
+		return Space.nodeId(nextNodeIndex++);
+	}
+
+	private int edgeId() {
+		if (nextEdgeIndex == edgeIndexLimit) {
+			nextEdgeIndex = space.reserveEdgeIds(edgeReservation);
+			edgeIndexLimit = nextEdgeIndex + edgeReservation;
+			edgeReservation = Math.min(edgeReservation * 2, MAX_RESERVATION);
+		}
+		return Space.edgeId(nextEdgeIndex++);
+	}
+}
@@ -18,6 +18,8 @@ package com.superdashi.gosper.graphdb;
 
 import java.util.List;
 
+import org.h2.mvstore.MVMap;
+
 interface Change {
 
 	default void record(List<Change> changes) {
@@ -25,4 +27,10 @@ interface Change {
 	}
 
 	void applyTo(Indices indices);
+
+	// the map to which the change is applied
+	MVMap<?, ?> mapIn(Indices indices);
+
+	// the key in the map that the change modifies
+	Object key();
 }
@@ -87,6 +87,8 @@ public final class Edge extends Part {
 
 	@Override EdgeKey edgeKey() { return new EdgeKey(id, sourceId, targetId); }
 
+	@Override Edge previous() { return new Edge(visit, edgeKey(), data.undeleted(), false); }
+
 	@Override
 	void updateIndices(Indices indices) {
 		if (deleted()) {
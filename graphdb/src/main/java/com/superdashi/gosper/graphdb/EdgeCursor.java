@@ -17,6 +17,7 @@
 package com.superdashi.gosper.graphdb;
 
 import java.util.Comparator;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public final class EdgeCursor implements PartCursor<Edge> {
@@ -25,6 +26,8 @@ public final class EdgeCursor implements PartCursor<Edge> {
 	private final Comparator<Part> comparator;
 	private final EdgeSequence seq;
 	private final Resolver resolver;
+	private final int skip;
+	private final int limit; // negative if unlimited
 
 	EdgeCursor(EdgeSequence seq, Resolver resolver) {
 		assert seq != null;
@@ -33,13 +36,26 @@ public final class EdgeCursor implements PartCursor<Edge> {
 		this.resolver = resolver;
 		this.order = Order.INTRINSIC;
 		this.comparator = Order.INTRINSIC_COMPARATOR;
+		this.skip = 0;
+		this.limit = -1;
 	}
 
 	private EdgeCursor(EdgeCursor that, Order order) {
 		this.seq = that.seq;
 		this.resolver = that.resolver;
-		this.order = that.order;
+		this.order = order;
 		this.comparator = order.comparator(resolver.visit);
+		this.skip = that.skip;
+		this.limit = that.limit;
+	}
+
+	private EdgeCursor(EdgeCursor that, int skip, int limit) {
+		this.seq = that.seq;
+		this.resolver = that.resolver;
+		this.order = that.order;
+		this.comparator = that.comparator;
+		this.skip = skip;
+		this.limit = limit;
 	}
 
 	@Override
@@ -58,15 +74,39 @@ public final class EdgeCursor implements PartCursor<Edge> {
 		return order.equals(this.order) ? this : new EdgeCursor(this, order);
 	}
 
+	@Override
+	public EdgeCursor skip(int count) {
+		if (count < 0) throw new IllegalArgumentException("negative count");
+		if (count == 0) return this;
+		// skipping reduces any existing limit
+		return new EdgeCursor(this, skip + count, limit < 0 ? limit : Math.max(0, limit - count));
+	}
+
+	@Override
+	public EdgeCursor limit(int count) {
+		if (count < 0) throw new IllegalArgumentException("negative count");
+		return count == limit ? this : new EdgeCursor(this, skip, limit < 0 ? count : Math.min(limit, count));
+	}
+
 	@Override
 	public Stream<Edge> stream() {
-		Stream<Edge> stream = seq.stream().mapToObj(resolver::resolveEdge);
-		return comparator == Order.INTRINSIC_COMPARATOR ? stream : stream.sorted(comparator);
+		if (comparator == Order.INTRINSIC_COMPARATOR) {
+			LongStream ids = seq.stream();
+			if (skip > 0) ids = ids.skip(skip);
+			if (limit >= 0) ids = ids.limit(limit);
+			return ids.mapToObj(resolver::resolveEdge);
+		}
+		Stream<Edge> stream = seq.stream().mapToObj(resolver::resolveEdge).sorted(comparator);
+		if (skip > 0) stream = stream.skip(skip);
+		if (limit >= 0) stream = stream.limit(limit);
+		return stream;
 	}
 
 	@Override
 	public int count() {
-		return (int) seq.stream().count();
+		// ordering does not affect the count
+		int count = Math.max(0, (int) seq.stream().count() - skip);
+		return limit < 0 ? count : Math.min(count, limit);
 	}
 
 	public EdgeCursor intersect(EdgeCursor that) {
@@ -93,5 +133,6 @@ public final class EdgeCursor implements PartCursor<Edge> {
 		if (this == that) throw new IllegalArgumentException("cannot combine with self");
 		if (!this.resolver.isFromSameVisitAs(that.resolver)) throw new IllegalArgumentException("mismatched visit");
 		if (!this.order().equals(that.order())) throw new IllegalArgumentException("incompatible orders");
+		if (this.skip != 0 || this.limit >= 0 || that.skip != 0 || that.limit >= 0) throw new IllegalArgumentException("cannot combine windowed cursors");
 	}
 }
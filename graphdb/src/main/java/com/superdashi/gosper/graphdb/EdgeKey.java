@@ -16,6 +16,8 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import org.h2.mvstore.MVMap;
+
 import com.superdashi.gosper.item.Value;
 
 final class EdgeKey {
@@ -99,6 +101,16 @@ final class EdgeKey {
 			}
 		}
 
+		@Override
+		public MVMap<?, ?> mapIn(Indices indices) {
+			return indices.edgesByTarget;
+		}
+
+		@Override
+		public Object key() {
+			return key;
+		}
+
 		@Override
 		public String toString() {
 			return (added ? "ADDED " : "REMOVED ") + "TARGET OF " + key;
@@ -16,26 +16,45 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.PrimitiveIterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.LongPredicate;
 import java.util.stream.LongStream;
 import java.util.stream.StreamSupport;
 
 // long contains nodeId (+) edge index
+// iterators yield edge ids in ascending order
 //TODO make functional on stream when moving to Java 9? (can use takeWhile)
 interface EdgeSequence extends Iterable<Long> {
 
-	static final PrimitiveIterator.OfLong emptyIterator = new PrimitiveIterator.OfLong() {
+	// an iterator that can skip forward
+	interface Seeker extends PrimitiveIterator.OfLong {
+
+		// consumes ids up to and including the first that is not less than the specified id
+		// returns that id, or -1 if there is none
+		default long advanceTo(long id) {
+			while (hasNext()) {
+				long next = nextLong();
+				if (next >= id) return next;
+			}
+			return -1;
+		}
+	}
+
+	static final Seeker emptyIterator = new Seeker() {
 		@Override public boolean hasNext() { return false; }
 		@Override public long nextLong() { throw new NoSuchElementException(); }
+		@Override public long advanceTo(long id) { return -1; }
 	};
 
 	static final EdgeSequence empty = () -> emptyIterator;
 
-	static PrimitiveIterator.OfLong singleIterator(long v) {
-		return new PrimitiveIterator.OfLong() {
+	static Seeker singleIterator(long v) {
+		return new Seeker() {
 			private long next = v;
 			@Override public boolean hasNext() { return next >= 0; }
 			@Override public long nextLong() {
@@ -47,6 +66,110 @@ interface EdgeSequence extends Iterable<Long> {
 		};
 	}
 
+	// ids must be sorted and distinct
+	static Seeker sortedIterator(long[] ids, int length) {
+		return new Seeker() {
+			private int index = 0;
+			@Override public boolean hasNext() { return index < length; }
+			@Override public long nextLong() {
+				if (index == length) throw new NoSuchElementException();
+				return ids[index++];
+			}
+			// gallops forward, then binary searches the bracketed range
+			@Override public long advanceTo(long id) {
+				if (index == length) return -1;
+				int lo = index;
+				int step = 1;
+				while (lo + step < length && ids[lo + step] < id) {
+					lo += step;
+					step <<= 1;
+				}
+				int i = Arrays.binarySearch(ids, lo, Math.min(lo + step + 1, length), id);
+				if (i < 0) i = -1 - i;
+				if (i == length) {
+					index = length;
+					return -1;
+				}
+				index = i + 1;
+				return ids[i];
+			}
+		};
+	}
+
+	static Seeker seeker(PrimitiveIterator.OfLong it) {
+		if (it instanceof Seeker) return (Seeker) it;
+		return new Seeker() {
+			@Override public boolean hasNext() { return it.hasNext(); }
+			@Override public long nextLong() { return it.nextLong(); }
+		};
+	}
+
+	// merges the sequences using a heap ordered by their next ids
+	static EdgeSequence union(List<EdgeSequence> seqs) {
+		switch (seqs.size()) {
+		case 0: return empty;
+		case 1: return seqs.get(0);
+		case 2: return seqs.get(0).or(seqs.get(1));
+		}
+		return () -> {
+			return new Seeker() {
+				private final PrimitiveIterator.OfLong[] its = new PrimitiveIterator.OfLong[seqs.size()];
+				private final long[] heads = new long[its.length]; // the next id of each iterator
+				private final int[] heap = new int[its.length]; // indices of iterators, ordered by head
+				private int size = 0;
+
+				{
+					for (EdgeSequence seq : seqs) {
+						PrimitiveIterator.OfLong it = seq.iterator();
+						if (!it.hasNext()) continue;
+						its[size] = it;
+						heads[size] = it.nextLong();
+						heap[size] = size;
+						size++;
+					}
+					for (int i = size / 2 - 1; i >= 0; i--) {
+						siftDown(i);
+					}
+				}
+
+				@Override
+				public boolean hasNext() {
+					return size > 0;
+				}
+
+				@Override
+				public long nextLong() {
+					if (size == 0) throw new NoSuchElementException();
+					long ret = heads[heap[0]];
+					// discard the id from every iterator that supplies it
+					do {
+						int i = heap[0];
+						if (its[i].hasNext()) {
+							heads[i] = its[i].nextLong();
+						} else {
+							heap[0] = heap[--size];
+						}
+						siftDown(0);
+					} while (size > 0 && heads[heap[0]] == ret);
+					return ret;
+				}
+
+				private void siftDown(int k) {
+					int i = heap[k];
+					while (true) {
+						int c = 2 * k + 1;
+						if (c >= size) break;
+						if (c + 1 < size && heads[heap[c + 1]] < heads[heap[c]]) c++;
+						if (heads[i] <= heads[heap[c]]) break;
+						heap[k] = heap[c];
+						k = c;
+					}
+					heap[k] = i;
+				}
+			};
+		};
+	}
+
 	@Override
 	PrimitiveIterator.OfLong iterator();
 
@@ -60,15 +183,14 @@ interface EdgeSequence extends Iterable<Long> {
 		return StreamSupport.longStream(spliterator, false);
 	}
 
+	// leapfrogs the sequences, seeking each to the id found in the other
 	default public EdgeSequence and(EdgeSequence that) {
 		if (that == null) throw new IllegalArgumentException("null that");
 		return () -> {
-			return new PrimitiveIterator.OfLong() {
-				private PrimitiveIterator.OfLong itA = iterator();
-				private PrimitiveIterator.OfLong itB = that.iterator();
-				private long next;
-
-				{ advance(); }
+			return new Seeker() {
+				private final Seeker itA = seeker(iterator());
+				private final Seeker itB = seeker(that.iterator());
+				private long next = itA.hasNext() ? align(itA.nextLong()) : -1;
 
 				@Override
 				public boolean hasNext() {
@@ -78,28 +200,33 @@ interface EdgeSequence extends Iterable<Long> {
 				@Override
 				public long nextLong() {
 					if (next < 0) throw new NoSuchElementException();
+					return consume();
+				}
+
+				@Override
+				public long advanceTo(long id) {
+					if (next >= 0 && next < id) {
+						long a = itA.advanceTo(id);
+						next = a < 0 ? -1 : align(a);
+					}
+					return next < 0 ? -1 : consume();
+				}
+
+				private long consume() {
 					long ret = next;
-					advance();
+					next = itA.hasNext() ? align(itA.nextLong()) : -1;
 					return ret;
 				}
 
-				private void advance() {
-					next = -1;
-					if (!itA.hasNext() || !itB.hasNext()) return;
-					long a = itA.next();
-					long b = itB.next();
+				// finds the first common id not less than a, which has been consumed from itA
+				private long align(long a) {
 					while (true) {
-						int c = Long.compare(a, b);
-						if (c == 0) {
-							next = a;
-							return;
-						} else if (c < 0) {
-							if (!itA.hasNext()) return;
-							a = itA.next();
-						} else {
-							if (!itB.hasNext()) return;
-							b = itB.next();
-						}
+						long b = itB.advanceTo(a);
+						if (b < 0) return -1;
+						if (b == a) return a;
+						a = itA.advanceTo(b);
+						if (a < 0) return -1;
+						if (a == b) return a;
 					}
 				}
 			};
@@ -110,7 +237,7 @@ interface EdgeSequence extends Iterable<Long> {
 	default public EdgeSequence or(EdgeSequence that) {
 		if (that == null) throw new IllegalArgumentException("null that");
 		return () -> {
-			return new PrimitiveIterator.OfLong() {
+			return new Seeker() {
 				private PrimitiveIterator.OfLong itA = iterator();
 				private PrimitiveIterator.OfLong itB = that.iterator();
 				private long nextA = -1;
@@ -152,11 +279,16 @@ interface EdgeSequence extends Iterable<Long> {
 				}
 
 				private void advance() {
-					if (nextA < 0 && itA.hasNext()) nextA = itA.next();
-					if (nextB < 0 && itB.hasNext()) nextB = itB.next();
+					if (nextA < 0 && itA.hasNext()) nextA = itA.nextLong();
+					if (nextB < 0 && itB.hasNext()) nextB = itB.nextLong();
 				}
 			};
 		};
 	}
 
+	default public EdgeSequence filter(LongPredicate predicate) {
+		if (predicate == null) throw new IllegalArgumentException("null predicate");
+		return () -> stream().filter(predicate).iterator();
+	}
+
 }
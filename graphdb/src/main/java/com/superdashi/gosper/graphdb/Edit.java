@@ -35,6 +35,7 @@ public final class Edit extends Visit {
 	private final Set<Part> dirty = new HashSet<>();
 	private DirtyState dirtyState = DirtyState.CLEAN; // we don't mix add+mod / deletes in dirty
 	private boolean changesMade = false;
+	private Bulk bulk = null; // once created, all additions are recorded by the bulk
 
 	Edit(Space space, View view, Indices indices) {
 		super(space, view, indices);
@@ -43,14 +44,21 @@ public final class Edit extends Visit {
 
 	//TODO threading???
 	public boolean flush() {
+		boolean bulkPending = bulk != null && bulk.pendingCount() > 0;
 		if (dirtyState == DirtyState.CLEAN) {
 			assert dirty.isEmpty();
-			return false;
+			if (!bulkPending) return false;
 		}
 		changesMade = true;
+		if (bulkPending) {
+			bulk.flush(enqueuer);
+			if (dirtyState == DirtyState.CLEAN) return true;
+		}
 		List<Change> changes = new ArrayList<>();
 		//TODO should use a while loop?
 		for (Part part : new HashSet<>(dirty)) {
+			// must precede cleaning, which overwrites the previous data
+			enqueuer.observePrevious(part);
 			part.cleanData(changes);
 			//TODO check valid?
 			part.updateIndices(indices);
@@ -63,14 +71,22 @@ public final class Edit extends Visit {
 	public boolean commit() {
 		checkNotClosed();
 		flush(); // ensure any changes are flushed
-		space.commit(changesMade);
+		space.commit(changesMade, enqueuer);
 		closeOnly();
 		if (!changesMade) return false;
 		changesMade = false;
-		enqueuer.commit();
 		return true;
 	}
 
+	// switches the edit into bulk mode, suitable for loading large numbers of parts
+	public Bulk bulk() {
+		checkMutable();
+		if (bulk == null) {
+			bulk = new Bulk(this);
+		}
+		return bulk;
+	}
+
 	public Node createNode() {
 		return createNode(view.identityId);
 	}
@@ -89,13 +105,7 @@ public final class Edit extends Visit {
 
 	@Override
 	public Edge createEdge(Node source, Node target) {
-		if (source == null) throw new IllegalArgumentException("null source");
-		if (source.visit != this) throw new IllegalArgumentException("mismatched graph for source");
-		if (source.deleted()) throw new IllegalArgumentException("source deleted");
-		if (target == null) throw new IllegalArgumentException("null target");
-		if (target.visit != this) throw new IllegalArgumentException("mismatched graph for target");
-		if (target.deleted()) throw new IllegalArgumentException("target deleted");
-		checkMutable();
+		checkEdge(source, target);
 		Edge edge = new Edge(view.identityId, space.allocateEdgeId(), source, target);
 		addEdge(edge);
 		return edge;
@@ -117,8 +127,22 @@ public final class Edit extends Visit {
 		checkNotClosed();
 	}
 
+	void checkEdge(Node source, Node target) {
+		if (source == null) throw new IllegalArgumentException("null source");
+		if (source.visit != this) throw new IllegalArgumentException("mismatched graph for source");
+		if (source.deleted()) throw new IllegalArgumentException("source deleted");
+		if (target == null) throw new IllegalArgumentException("null target");
+		if (target.visit != this) throw new IllegalArgumentException("mismatched graph for target");
+		if (target.deleted()) throw new IllegalArgumentException("target deleted");
+		checkMutable();
+	}
+
 	@Override
 	void recordDirty(Part part) {
+		if (bulk != null && part.added()) {
+			bulk.record(part);
+			return;
+		}
 		switch (dirtyState) {
 		case CLEAN:
 			dirtyState = part.deleted() ? DirtyState.DELETES : (part.added() ? DirtyState.ADDITIONS : DirtyState.CHANGES_ONLY);
@@ -142,6 +166,7 @@ public final class Edit extends Visit {
 
 	@Override
 	void recordClean(Part part) {
+		if (bulk != null && bulk.flushing) return;
 		boolean modified = dirty.remove(part);
 		assert modified;
 		if (dirty.isEmpty()) dirtyState = DirtyState.CLEAN;
@@ -151,7 +176,7 @@ public final class Edit extends Visit {
 	// otherwise node could be created & destroyed in same flush, but we keep only one ref
 	@Override
 	void flushAdditions() {
-		if (dirtyState == DirtyState.ADDITIONS) {
+		if (dirtyState == DirtyState.ADDITIONS || bulk != null && bulk.pendingCount() > 0) {
 			flush();
 		}
 	}
@@ -16,20 +16,29 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 import org.h2.mvstore.Cursor;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVMap.Builder;
 import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.DataType;
 
 import com.superdashi.gosper.framework.Identity;
 import com.superdashi.gosper.framework.Namespace;
 import com.superdashi.gosper.item.Value;
+import com.superdashi.gosper.item.ValueOrder;
 
 final class Indices {
 
@@ -246,6 +255,40 @@ final class Indices {
 		assert modified;
 	}
 
+	// writes new parts, and the changes they produce, to each map in key order
+	void putAll(List<Node> nodes, List<Edge> edges, List<Change> changes) {
+		if (!nodes.isEmpty()) {
+			Node[] array = nodes.toArray(new Node[nodes.size()]);
+			Arrays.sort(array, (a, b) -> Integer.compare(a.id, b.id));
+			for (Node node : array) {
+				putNode(node);
+			}
+		}
+		if (!edges.isEmpty()) {
+			Edge[] array = edges.toArray(new Edge[edges.size()]);
+			// matches the ordering of source keys
+			Arrays.sort(array, (a, b) -> {
+				int c = Integer.compare(a.sourceId, b.sourceId);
+				return c == 0 ? Integer.compare(a.id, b.id) : c;
+			});
+			for (Edge edge : array) {
+				putEdge(edge);
+			}
+		}
+		// group changes by map, then apply in key order
+		Map<MVMap<?, ?>, List<Change>> changesByMap = new IdentityHashMap<>();
+		for (Change change : changes) {
+			changesByMap.computeIfAbsent(change.mapIn(this), m -> new ArrayList<>()).add(change);
+		}
+		changesByMap.forEach((map, list) -> {
+			DataType keyType = map.getKeyType();
+			list.sort((a, b) -> keyType.compare(a.key(), b.key()));
+			for (Change change : list) {
+				change.applyTo(this);
+			}
+		});
+	}
+
 	Node node(Visit visit, int nodeId, boolean knownVisible) {
 		PartData data = nodesById.get(nodeId);
 		if (data == null) throw new ConstraintException(ConstraintException.Type.INTERNAL_ERROR, "no node for id " + nodeId);
@@ -272,6 +315,55 @@ final class Indices {
 		return key == null ? null : new Edge(visit, key, edgesBySource.get(key).clone(), false);
 	}
 
+	// cardinality estimates, used to plan selections
+	// counts are obtained from the positions of keys in the indices, so are exact but cheap
+
+	long countOfNodes() {
+		return nodesById.sizeAsLong();
+	}
+
+	long countOfEdges() {
+		return edgesBySource.sizeAsLong();
+	}
+
+	long countWithOwner(PartIndices partIndices, Identity owner) {
+		long identityId = inventory.identityId(owner);
+		return identityId < 0L ? 0L : partIndices.countOfOwner(identityId);
+	}
+
+	long countWithType(PartIndices partIndices, Type type) {
+		long typeId = inventory.typeId(type);
+		return typeId < 0L ? 0L : partIndices.countOfType(typeId);
+	}
+
+	long countWithPermission(PartIndices partIndices, Identity permission) {
+		long permId = inventory.permId(permission);
+		return permId < 0L ? 0L : partIndices.countOfPerm(permId);
+	}
+
+	long countWithTag(PartIndices partIndices, Tag tag) {
+		long tagId = inventory.tagId(tag);
+		return tagId < 0L ? 0L : partIndices.countOfTag(tagId);
+	}
+
+	// null value indicates any value, the scan count is returned if no index can be used
+	long countWithValue(AttrName attrName, Value value, long scanCount) {
+		Value.Type type = space.types.get(attrName);
+		if (type != null && value != null) {
+			value = value.as(type);
+			if (value.isEmpty()) return 0L;
+		}
+		MVMap<ValueKey, Value> index = indicesByName.get(attrName);
+		if (index == null || (type == Value.Type.EMPTY) != (value == null)) return scanCount;
+		// node and edge values share an index, so this may overestimate
+		if (value == null) return index.sizeAsLong();
+		ValueKey from = index.ceilingKey(new ValueKey(value, 0, Space.NO_EDGE_ID));
+		if (from == null || !from.value.equals(value)) return 0L;
+		ValueKey to = index.ceilingKey(new ValueKey(value, Integer.MAX_VALUE, Space.NO_EDGE_ID));
+		long j = to == null ? index.sizeAsLong() : index.getKeyIndex(to);
+		return j - index.getKeyIndex(from);
+	}
+
 	// node sequences
 
 	NodeSequence allNodes(Resolver resolver) {
@@ -341,10 +433,17 @@ final class Indices {
 	private NodeSequence nodesWithAnyValueViaIndex(Resolver resolver, MVMap<ValueKey, Value> index) {
 		return () -> {
 			resolver.visit.flush(); // using index, needs flush
-			return new MappedIntIterator<>(
-					index.cursor(null),
-					vk -> vk.sourceId,
-					null);
+			// keys are ordered by value, so ids must be sorted
+			int[] ids = new int[16];
+			int length = 0;
+			for (Iterator<ValueKey> it = index.keyIterator(null); it.hasNext(); ) {
+				ValueKey vk = it.next();
+				if (vk.edgeId != Space.NO_EDGE_ID) continue; // key is for an edge
+				if (length == ids.length) ids = Arrays.copyOf(ids, length * 2);
+				ids[length++] = vk.sourceId;
+			}
+			Arrays.sort(ids, 0, length);
+			return NodeSequence.sortedIterator(ids, length);
 		};
 	}
 
@@ -359,7 +458,9 @@ final class Indices {
 			return new MappedIntIterator<>(
 					index.cursor(from),
 					vk -> vk.sourceId,
-					to);
+					to,
+					index,
+					nodeId -> new ValueKey(value, nodeId, Space.NO_EDGE_ID));
 		};
 	}
 
@@ -390,6 +491,40 @@ final class Indices {
 		};
 	}
 
+	// ordered node iteration
+
+	// returns null if the order cannot be supplied by walking an index
+	PrimitiveIterator.OfInt nodesInOrder(Resolver resolver, NodeSequence seq, Order order) {
+		Visit visit = resolver.visit;
+		AttrName attrName = order.attr(visit);
+		if (attrName == null) return null; // not ordered by a single attribute
+		MVMap<ValueKey, Value> index = indicesByName.get(attrName);
+		if (index == null) return null; // no index to walk
+		Value.Type type = space.types.get(attrName);
+		if (type == null || type == Value.Type.EMPTY || type != indexType(index)) return null; // index does not record values
+		ValueOrder valueOrder = order.valueOrder(visit);
+		if (valueOrder.type != type) return null; // values are compared as a different type
+		if (space.defaults.containsKey(attrName)) return null; // parts with default values are absent from the index
+		visit.flush(); // using index, needs flush
+		return new OrderedNodeIterator(index, seq, nodeIndexed(index, attrName, type), valueOrder.ascending, valueOrder.emptyFirst);
+	}
+
+	// tests whether a node has a value in the index, by reading its data
+	private IntPredicate nodeIndexed(MVMap<ValueKey, Value> index, AttrName attrName, Value.Type type) {
+		int nsc = inventory.namespaceLookup.getByObj().getOrDefault(attrName.namespace, -1);
+		if (nsc == -1) return id -> false;
+		String nm = attrName.name;
+		int nmc = inventory.attrNameLookup.getByObj().getOrDefault(nm, -1);
+		return id -> {
+			PartData data = nodesById.get(id);
+			if (data == null) return false;
+			Value v = nmc == -1 ? data.value(nsc, nm) : data.value(nsc, nmc);
+			if (v == null) return false;
+			v = v.as(type);
+			return !v.isEmpty() && index.containsKey(new ValueKey(v, id, Space.NO_EDGE_ID));
+		};
+	}
+
 	// edge sequences
 
 	EdgeSequence allEdges(Resolver resolver) {
@@ -428,7 +563,7 @@ final class Indices {
 			EdgeKey to = index.ceilingKey(new EdgeKey(Integer.MAX_VALUE, sourceId, Integer.MAX_VALUE));
 			Cursor<EdgeKey, PartData> cursor = index.cursor(from);
 			//TODO cannot currently observe edge
-			return new MappedLongIterator<>(cursor, EdgeKey::id, to);
+			return new MappedLongIterator<>(cursor, EdgeKey::id, to, index, id -> new EdgeKey(EdgeKey.edgeId(id), EdgeKey.sourceId(id), 0));
 		};
 	}
 
@@ -455,7 +590,8 @@ final class Indices {
 			if (from == null || from.targetId != targetId) return EdgeSequence.emptyIterator;
 			EdgeKey to = index.ceilingKey(new EdgeKey(Integer.MAX_VALUE, Integer.MAX_VALUE, targetId));
 			Cursor<EdgeKey, Value> cursor = index.cursor(from);
-			return new MappedLongIterator<>(cursor, EdgeKey::id, to);
+			// keys are ordered by edge id, not source, so ids must be sorted
+			return sorted(new MappedLongIterator<>(cursor, EdgeKey::id, to));
 		};
 	}
 
@@ -515,10 +651,17 @@ final class Indices {
 	private EdgeSequence edgesWithAnyValueViaIndex(Resolver resolver, MVMap<ValueKey, Value> index) {
 		return () -> {
 			resolver.visit.flush(); // using index, needs flush
-			return new MappedLongIterator<>(
-					index.cursor(null),
-					ValueKey::id,
-					null);
+			// keys are ordered by value, so ids must be sorted
+			long[] ids = new long[16];
+			int length = 0;
+			for (Iterator<ValueKey> it = index.keyIterator(null); it.hasNext(); ) {
+				ValueKey vk = it.next();
+				if (vk.edgeId == Space.NO_EDGE_ID) continue; // key is for a node
+				if (length == ids.length) ids = Arrays.copyOf(ids, length * 2);
+				ids[length++] = vk.id();
+			}
+			Arrays.sort(ids, 0, length);
+			return EdgeSequence.sortedIterator(ids, length);
 		};
 	}
 
@@ -533,7 +676,9 @@ final class Indices {
 			return new MappedLongIterator<>(
 					index.cursor(from),
 					ValueKey::id,
-					to);
+					to,
+					index,
+					id -> new ValueKey(value, EdgeKey.sourceId(id), EdgeKey.edgeId(id)));
 		};
 	}
 
@@ -565,6 +710,18 @@ final class Indices {
 		};
 	}
 
+	// edge ids are distinct, so need no deduplication
+	private static EdgeSequence.Seeker sorted(PrimitiveIterator.OfLong it) {
+		long[] ids = new long[16];
+		int length = 0;
+		while (it.hasNext()) {
+			if (length == ids.length) ids = Arrays.copyOf(ids, length * 2);
+			ids[length++] = it.nextLong();
+		}
+		Arrays.sort(ids, 0, length);
+		return EdgeSequence.sortedIterator(ids, length);
+	}
+
 	// type sequences
 
 	TypeSequence typesOfNodes(Resolver resolver) {
@@ -16,6 +16,8 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import com.tomgibara.fundament.Consumer;
+
 public interface Inspector {
 
 	AttrName attrName(String name);
@@ -24,4 +26,6 @@ public interface Inspector {
 
 	Inspect inspect();
 
+	Observation observe(Selector selector, Consumer<PartRef> notifier);
+
 }
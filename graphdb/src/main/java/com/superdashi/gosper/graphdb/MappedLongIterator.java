@@ -18,25 +18,41 @@ package com.superdashi.gosper.graphdb;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.PrimitiveIterator;
+import java.util.function.LongFunction;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.type.DataType;
 
 // limit is exclusive
-final class MappedLongIterator<S> implements PrimitiveIterator.OfLong {
+// if supplied, the index is used to reposition the iterator when seeking beyond nearby keys
+final class MappedLongIterator<S> implements EdgeSequence.Seeker {
+
+	// number of keys stepped over before the iterator is repositioned
+	private static final int SEEK_STEPS = 8;
 
 	@FunctionalInterface
 	interface Mapper<S> {
 		long apply(S obj);
 	}
 
-	private final Iterator<S> src;
 	private final Mapper<S> map;
 	private final S lim;
+	private final MVMap<S, ?> index;
+	private final LongFunction<S> keyFor;
+	private Iterator<S> src;
 	private S next;
 
 	MappedLongIterator(Iterator<S> src, Mapper<S> map, S lim) {
+		this(src, map, lim, null, null);
+	}
+
+	// the key for an id must order with the keys mapped to lesser and greater ids
+	MappedLongIterator(Iterator<S> src, Mapper<S> map, S lim, MVMap<S, ?> index, LongFunction<S> keyFor) {
 		this.src = src;
 		this.map = map;
 		this.lim = lim;
+		this.index = index;
+		this.keyFor = keyFor;
 		advance();
 	}
 
@@ -53,6 +69,32 @@ final class MappedLongIterator<S> implements PrimitiveIterator.OfLong {
 		return ret;
 	}
 
+	@Override
+	public long advanceTo(long id) {
+		for (int i = 0; next != null; i++) {
+			if (i == SEEK_STEPS && index != null) {
+				reposition(id);
+				if (next == null) break;
+			}
+			long value = map.apply(next);
+			advance();
+			if (value >= id) return value;
+		}
+		return -1;
+	}
+
+	private void reposition(long id) {
+		S key = keyFor.apply(id);
+		DataType type = index.getKeyType();
+		if (type.compare(key, next) <= 0) return; // already there
+		if (lim != null && type.compare(key, lim) >= 0) {
+			next = null;
+		} else {
+			src = index.cursor(key);
+			advance();
+		}
+	}
+
 	private void advance() {
 		if (src.hasNext()) {
 			next = src.next();
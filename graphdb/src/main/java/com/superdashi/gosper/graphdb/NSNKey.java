@@ -16,6 +16,8 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import org.h2.mvstore.MVMap;
+
 // indicates that the part has the nsn
 // name code can be missing (if only mapped by ns)
 // edge id can be missing (if mapped to node)
@@ -138,6 +140,11 @@ final class NSNKey {
 		PartIndices chooseIndices(Indices indices) {
 			return nsnKey.isEdge() ? indices.edgeIndices : indices.nodeIndices;
 		}
+
+		@Override
+		public Object key() {
+			return nsnKey;
+		}
 	}
 
 	static class OwnerChange extends NSNChange {
@@ -151,6 +158,11 @@ final class NSNKey {
 			chooseIndices(indices).applyOwnerChange(this);
 		}
 
+		@Override
+		public MVMap<?, ?> mapIn(Indices indices) {
+			return chooseIndices(indices).partsByOwner;
+		}
+
 		@Override
 		public String toString() {
 			return (added ? "ADDED " : "REMOVED ") + String.format("OWNER %08x ", nsnKey.nsCode) + (added ? "TO " : "FROM ") + String.format(nsnKey.isEdge() ? "EDGE %08x ON %08x " : "NODE %08x ", nsnKey.sourceId, nsnKey.edgeId);
@@ -169,6 +181,11 @@ final class NSNKey {
 			chooseIndices(indices).applyPermChange(this);
 		}
 
+		@Override
+		public MVMap<?, ?> mapIn(Indices indices) {
+			return chooseIndices(indices).partsByPerm;
+		}
+
 		@Override
 		public String toString() {
 			return (added ? "ADDED " : "REMOVED ") + "PERM KEY " + nsnKey;
@@ -186,6 +203,11 @@ final class NSNKey {
 			chooseIndices(indices).applyTypeChange(this);
 		}
 
+		@Override
+		public MVMap<?, ?> mapIn(Indices indices) {
+			return chooseIndices(indices).partsByType;
+		}
+
 		@Override
 		public String toString() {
 			return (added ? "ADDED " : "REMOVED ") + "TYPE KEY " + nsnKey;
@@ -203,6 +225,11 @@ final class NSNKey {
 			chooseIndices(indices).applyTagChange(this);
 		}
 
+		@Override
+		public MVMap<?, ?> mapIn(Indices indices) {
+			return chooseIndices(indices).partsByTag;
+		}
+
 		@Override
 		public String toString() {
 			return (added ? "ADDED " : "REMOVED ") + "TAG KEY " + nsnKey;
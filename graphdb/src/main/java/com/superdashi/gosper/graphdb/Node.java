@@ -86,6 +86,11 @@ public final class Node extends Part {
 		return null;
 	}
 
+	@Override
+	Node previous() {
+		return new Node(visit, id, data.undeleted(), false);
+	}
+
 	@Override
 	void updateIndices(Indices indices) {
 		if (deleted()) {
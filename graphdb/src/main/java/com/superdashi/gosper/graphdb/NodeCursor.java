@@ -17,7 +17,12 @@
 package com.superdashi.gosper.graphdb;
 
 import java.util.Comparator;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public final class NodeCursor implements PartCursor<Node> {
 
@@ -25,6 +30,8 @@ public final class NodeCursor implements PartCursor<Node> {
 	private final Comparator<Part> comparator;
 	private final NodeSequence seq;
 	private final Resolver resolver;
+	private final int skip;
+	private final int limit; // negative if unlimited
 
 	NodeCursor(NodeSequence seq, Resolver resolver) {
 		assert seq != null;
@@ -33,13 +40,26 @@ public final class NodeCursor implements PartCursor<Node> {
 		this.resolver = resolver;
 		this.order = Order.INTRINSIC;
 		this.comparator = Order.INTRINSIC_COMPARATOR;
+		this.skip = 0;
+		this.limit = -1;
 	}
 
 	private NodeCursor(NodeCursor that, Order order) {
 		this.seq = that.seq;
 		this.resolver = that.resolver;
-		this.order = that.order;
+		this.order = order;
 		this.comparator = order.comparator(resolver.visit);
+		this.skip = that.skip;
+		this.limit = that.limit;
+	}
+
+	private NodeCursor(NodeCursor that, int skip, int limit) {
+		this.seq = that.seq;
+		this.resolver = that.resolver;
+		this.order = that.order;
+		this.comparator = that.comparator;
+		this.skip = skip;
+		this.limit = limit;
 	}
 
 	@Override
@@ -58,15 +78,46 @@ public final class NodeCursor implements PartCursor<Node> {
 		return order.equals(this.order) ? this : new NodeCursor(this, order);
 	}
 
+	@Override
+	public NodeCursor skip(int count) {
+		if (count < 0) throw new IllegalArgumentException("negative count");
+		if (count == 0) return this;
+		// skipping reduces any existing limit
+		return new NodeCursor(this, skip + count, limit < 0 ? limit : Math.max(0, limit - count));
+	}
+
+	@Override
+	public NodeCursor limit(int count) {
+		if (count < 0) throw new IllegalArgumentException("negative count");
+		return count == limit ? this : new NodeCursor(this, skip, limit < 0 ? count : Math.min(limit, count));
+	}
+
 	@Override
 	public Stream<Node> stream() {
-		Stream<Node> stream = seq.stream().mapToObj(resolver::resolveNode);
-		return comparator == Order.INTRINSIC_COMPARATOR ? stream : stream.sorted(comparator);
+		if (comparator == Order.INTRINSIC_COMPARATOR) {
+			return window(seq.stream()).mapToObj(resolver::resolveNode);
+		}
+		// prefer walking an index, so that skipped nodes are never resolved or sorted
+		PrimitiveIterator.OfInt ordered = resolver.visit.indices.nodesInOrder(resolver, seq, order);
+		if (ordered != null) {
+			Spliterator.OfInt spliterator = Spliterators.spliteratorUnknownSize(ordered,
+					Spliterator.DISTINCT  |
+					Spliterator.IMMUTABLE |
+					Spliterator.NONNULL   |
+					Spliterator.ORDERED   );
+			return window(StreamSupport.intStream(spliterator, false)).mapToObj(resolver::resolveNode);
+		}
+		Stream<Node> stream = seq.stream().mapToObj(resolver::resolveNode).sorted(comparator);
+		if (skip > 0) stream = stream.skip(skip);
+		if (limit >= 0) stream = stream.limit(limit);
+		return stream;
 	}
 
 	@Override
 	public int count() {
-		return (int) seq.stream().count();
+		// ordering does not affect the count
+		int count = Math.max(0, (int) seq.stream().count() - skip);
+		return limit < 0 ? count : Math.min(count, limit);
 	}
 
 	public NodeCursor intersect(NodeCursor that) {
@@ -79,11 +130,18 @@ public final class NodeCursor implements PartCursor<Node> {
 		return new NodeCursor(this.seq.or(that.seq), resolver);
 	}
 
+	private IntStream window(IntStream stream) {
+		if (skip > 0) stream = stream.skip(skip);
+		if (limit >= 0) stream = stream.limit(limit);
+		return stream;
+	}
+
 	private void checkThat(NodeCursor that) {
 		if (that == null) throw new IllegalArgumentException("null that");
 		//TODO this actually isn't sufficient
 		if (this == that) throw new IllegalArgumentException("cannot combine with self");
 		if (!this.resolver.isFromSameVisitAs(that.resolver)) throw new IllegalArgumentException("mismatched visit");
 		if (!this.order().equals(that.order())) throw new IllegalArgumentException("incompatible orders");
+		if (this.skip != 0 || this.limit >= 0 || that.skip != 0 || that.limit >= 0) throw new IllegalArgumentException("cannot combine windowed cursors");
 	}
 }
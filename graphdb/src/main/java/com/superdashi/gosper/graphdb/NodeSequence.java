@@ -16,24 +16,42 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.PrimitiveIterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.IntPredicate;
 import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
+// iterators yield node ids in ascending order
 interface NodeSequence extends Iterable<Integer> {
 
-	static final PrimitiveIterator.OfInt emptyIterator = new PrimitiveIterator.OfInt() {
+	// an iterator that can skip forward
+	interface Seeker extends PrimitiveIterator.OfInt {
+
+		// consumes ids up to and including the first that is not less than the specified id
+		// returns that id, or -1 if there is none
+		default int advanceTo(int id) {
+			while (hasNext()) {
+				int next = nextInt();
+				if (next >= id) return next;
+			}
+			return -1;
+		}
+	}
+
+	static final Seeker emptyIterator = new Seeker() {
 		@Override public boolean hasNext() { return false; }
 		@Override public int nextInt() { throw new NoSuchElementException(); }
+		@Override public int advanceTo(int id) { return -1; }
 	};
 
 	static final NodeSequence empty = () -> emptyIterator;
 
-	static PrimitiveIterator.OfInt singleIterator(int i) {
-		return new PrimitiveIterator.OfInt() {
+	static Seeker singleIterator(int i) {
+		return new Seeker() {
 			private int next = i;
 			@Override public boolean hasNext() { return next >= 0; }
 			@Override public int nextInt() {
@@ -45,6 +63,44 @@ interface NodeSequence extends Iterable<Integer> {
 		};
 	}
 
+	// ids must be sorted and distinct
+	static Seeker sortedIterator(int[] ids, int length) {
+		return new Seeker() {
+			private int index = 0;
+			@Override public boolean hasNext() { return index < length; }
+			@Override public int nextInt() {
+				if (index == length) throw new NoSuchElementException();
+				return ids[index++];
+			}
+			// gallops forward, then binary searches the bracketed range
+			@Override public int advanceTo(int id) {
+				if (index == length) return -1;
+				int lo = index;
+				int step = 1;
+				while (lo + step < length && ids[lo + step] < id) {
+					lo += step;
+					step <<= 1;
+				}
+				int i = Arrays.binarySearch(ids, lo, Math.min(lo + step + 1, length), id);
+				if (i < 0) i = -1 - i;
+				if (i == length) {
+					index = length;
+					return -1;
+				}
+				index = i + 1;
+				return ids[i];
+			}
+		};
+	}
+
+	static Seeker seeker(PrimitiveIterator.OfInt it) {
+		if (it instanceof Seeker) return (Seeker) it;
+		return new Seeker() {
+			@Override public boolean hasNext() { return it.hasNext(); }
+			@Override public int nextInt() { return it.nextInt(); }
+		};
+	}
+
 	@Override
 	PrimitiveIterator.OfInt iterator();
 
@@ -58,15 +114,14 @@ interface NodeSequence extends Iterable<Integer> {
 		return StreamSupport.intStream(spliterator, false);
 	}
 
+	// leapfrogs the sequences, seeking each to the id found in the other
 	default public NodeSequence and(NodeSequence that) {
 		if (that == null) throw new IllegalArgumentException("null that");
 		return () -> {
-			return new PrimitiveIterator.OfInt() {
-				private PrimitiveIterator.OfInt itA = iterator();
-				private PrimitiveIterator.OfInt itB = that.iterator();
-				private int next;
-
-				{ advance(); }
+			return new Seeker() {
+				private final Seeker itA = seeker(iterator());
+				private final Seeker itB = seeker(that.iterator());
+				private int next = itA.hasNext() ? align(itA.nextInt()) : -1;
 
 				@Override
 				public boolean hasNext() {
@@ -76,28 +131,33 @@ interface NodeSequence extends Iterable<Integer> {
 				@Override
 				public int nextInt() {
 					if (next < 0) throw new NoSuchElementException();
+					return consume();
+				}
+
+				@Override
+				public int advanceTo(int id) {
+					if (next >= 0 && next < id) {
+						int a = itA.advanceTo(id);
+						next = a < 0 ? -1 : align(a);
+					}
+					return next < 0 ? -1 : consume();
+				}
+
+				private int consume() {
 					int ret = next;
-					advance();
+					next = itA.hasNext() ? align(itA.nextInt()) : -1;
 					return ret;
 				}
 
-				private void advance() {
-					next = -1;
-					if (!itA.hasNext() || !itB.hasNext()) return;
-					int a = itA.next();
-					int b = itB.next();
+				// finds the first common id not less than a, which has been consumed from itA
+				private int align(int a) {
 					while (true) {
-						int c = Integer.compare(a, b);
-						if (c == 0) {
-							next = a;
-							return;
-						} else if (c < 0) {
-							if (!itA.hasNext()) return;
-							a = itA.next();
-						} else {
-							if (!itB.hasNext()) return;
-							b = itB.next();
-						}
+						int b = itB.advanceTo(a);
+						if (b < 0) return -1;
+						if (b == a) return a;
+						a = itA.advanceTo(b);
+						if (a < 0) return -1;
+						if (a == b) return a;
 					}
 				}
 			};
@@ -108,7 +168,7 @@ interface NodeSequence extends Iterable<Integer> {
 	default public NodeSequence or(NodeSequence that) {
 		if (that == null) throw new IllegalArgumentException("null that");
 		return () -> {
-			return new PrimitiveIterator.OfInt() {
+			return new Seeker() {
 				private PrimitiveIterator.OfInt itA = iterator();
 				private PrimitiveIterator.OfInt itB = that.iterator();
 				private int nextA = -1;
@@ -150,11 +210,16 @@ interface NodeSequence extends Iterable<Integer> {
 				}
 
 				private void advance() {
-					if (nextA < 0 && itA.hasNext()) nextA = itA.next();
-					if (nextB < 0 && itB.hasNext()) nextB = itB.next();
+					if (nextA < 0 && itA.hasNext()) nextA = itA.nextInt();
+					if (nextB < 0 && itB.hasNext()) nextB = itB.nextInt();
 				}
 			};
 		};
 	}
 
+	default public NodeSequence filter(IntPredicate predicate) {
+		if (predicate == null) throw new IllegalArgumentException("null predicate");
+		return () -> stream().filter(predicate).iterator();
+	}
+
 }
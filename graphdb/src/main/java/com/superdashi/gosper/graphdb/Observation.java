@@ -25,7 +25,7 @@ import com.tomgibara.fundament.Consumer;
 public final class Observation {
 
 	private final View view;
-	// which parts are observed
+	// which parts are observed, a part is reported if it matches either before or after it changes
 	private final Selector selector;
 	// who gets notified
 	private final Consumer<PartRef> notifier;
@@ -41,10 +41,19 @@ public final class Observation {
 	}
 
 	public void deliver() {
+		deliver(Long.MAX_VALUE);
+	}
+
+	// delivers only the changes committed at or before the specified version, later changes remain queued
+	public void deliver(long version) {
 		List<Queue> queues;
 		synchronized (committed) {
-			queues = new ArrayList<>(committed);
-			committed.clear();
+			int count = 0;
+			// queues are committed in version order
+			while (count < committed.size() && committed.get(count).version <= version) count++;
+			List<Queue> delivered = committed.subList(0, count);
+			queues = new ArrayList<>(delivered);
+			delivered.clear();
 		}
 		queues.stream().flatMap(q -> q.stream()).forEach(notifier::consume);
 	}
@@ -57,14 +66,19 @@ public final class Observation {
 		view.space.deregisterObservation(this);
 	}
 
+	Selector selector() {
+		return selector;
+	}
+
 	void observe(Part part) {
 		if (selector.matches(part)) queue.enqueue(part);
 	}
 
-	void commit() {
+	void commit(long version) {
 		synchronized (committed) {
 			if (!queue.empty()) {
 				queue.compact();
+				queue.version = version;
 				committed.add(queue);
 				queue = new Queue();
 			}
@@ -16,30 +16,90 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.superdashi.gosper.framework.Identity;
 import com.tomgibara.collect.Collect;
 import com.tomgibara.collect.Collect.Sets;
 import com.tomgibara.collect.EquivalenceSet;
 
+// observations are indexed by a property that any part they match must possess
+// this avoids testing every part against every observation
 final class Observer {
 
 	private static final Sets<Observation> sets = Collect.setsOf(Observation.class).underIdentity();
 
+	private static final Observation[] NO_OBSERVATIONS = {};
+
 	private final EquivalenceSet<Observation> set;
 
+	private final Map<String, Observation[]> byType;
+	private final Map<String, Observation[]> byTag;
+	private final Map<Identity, Observation[]> byOwner;
+	private final Map<String, Observation[]> byAttr;
+	// observations with selectors that could not be classified
+	private final Observation[] unclassified;
+
 	Observer() {
 		this.set = sets.emptySet();
+		byType = Collections.emptyMap();
+		byTag = Collections.emptyMap();
+		byOwner = Collections.emptyMap();
+		byAttr = Collections.emptyMap();
+		unclassified = NO_OBSERVATIONS;
 	}
 
 	private Observer(EquivalenceSet<Observation> set) {
 		this.set = set;
+		Map<String, List<Observation>> byType = new HashMap<>();
+		Map<String, List<Observation>> byTag = new HashMap<>();
+		Map<Identity, List<Observation>> byOwner = new HashMap<>();
+		Map<String, List<Observation>> byAttr = new HashMap<>();
+		List<Observation> unclassified = new ArrayList<>();
+		for (Observation obs : set) {
+			List<Selector.Key> keys = obs.selector().keys();
+			if (keys == null) {
+				unclassified.add(obs);
+				continue;
+			}
+			for (Selector.Key key : keys) {
+				switch (key.kind) {
+				case TYPE : byType .computeIfAbsent((String  ) key.value, k -> new ArrayList<>()).add(obs); break;
+				case TAG  : byTag  .computeIfAbsent((String  ) key.value, k -> new ArrayList<>()).add(obs); break;
+				case OWNER: byOwner.computeIfAbsent((Identity) key.value, k -> new ArrayList<>()).add(obs); break;
+				case ATTR : byAttr .computeIfAbsent((String  ) key.value, k -> new ArrayList<>()).add(obs); break;
+				default: throw new IllegalStateException("unexpected key kind");
+				}
+			}
+		}
+		this.byType = toArrays(byType);
+		this.byTag = toArrays(byTag);
+		this.byOwner = toArrays(byOwner);
+		this.byAttr = toArrays(byAttr);
+		this.unclassified = unclassified.toArray(NO_OBSERVATIONS);
 	}
 
 	void observe(Part part) {
-		set.forEach(obs -> obs.observe(part));
+		if (set.isEmpty()) return;
+		// deleted parts are observed in their previous state, before their data is cleaned
+		if (part.deleted()) return;
+		match(part);
 	}
 
-	void commit() {
-		set.forEach(Observation::commit);
+	// observes the part as it was last flushed, so that parts which no longer match are reported
+	void observePrevious(Part part) {
+		if (set.isEmpty() || part.added()) return;
+		match(part.previous());
+	}
+
+	void commit(long version) {
+		set.forEach(obs -> obs.commit(version));
 	}
 
 	void rollback() {
@@ -64,4 +124,39 @@ final class Observer {
 		return set.contains(obs);
 	}
 
+	private void match(Part part) {
+		observe(unclassified, part);
+		if (!byType.isEmpty()) {
+			Type type = part.type();
+			if (type != null) observe(byType.get(type.name), part);
+		}
+		if (!byOwner.isEmpty()) {
+			observe(byOwner.get(part.owner()), part);
+		}
+		if (!byTag.isEmpty()) {
+			part.tags().stream().forEach(tag -> observe(byTag.get(tag.name), part));
+		}
+		if (!byAttr.isEmpty()) {
+			// defaulted attributes are possessed by every part
+			Set<String> names = new HashSet<>();
+			part.attrs().names().forEach(n -> names.add(n.name));
+			part.visit.defaults.keySet().forEach(n -> names.add(n.name));
+			names.forEach(name -> observe(byAttr.get(name), part));
+		}
+	}
+
+	private static void observe(Observation[] observations, Part part) {
+		if (observations == null) return;
+		for (Observation obs : observations) {
+			obs.observe(part);
+		}
+	}
+
+	private static <K> Map<K, Observation[]> toArrays(Map<K, List<Observation>> lists) {
+		if (lists.isEmpty()) return Collections.emptyMap();
+		Map<K, Observation[]> arrays = new HashMap<>();
+		lists.forEach((k, list) -> arrays.put(k, list.toArray(NO_OBSERVATIONS)));
+		return arrays;
+	}
+
 }
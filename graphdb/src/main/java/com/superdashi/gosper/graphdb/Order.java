@@ -27,7 +27,7 @@ public abstract class Order {
 	static final Comparator<Part> INTRINSIC_COMPARATOR = Part::compareTo;
 
 	static final Order INTRINSIC = new Order() {
-		@Override Comparator<Part> comparator(Visit visit) {
+		@Override public Comparator<Part> comparator(Visit visit) {
 			return INTRINSIC_COMPARATOR;
 		}
 	};
@@ -60,7 +60,18 @@ public abstract class Order {
 
 	private Order() {}
 
-	abstract Comparator<Part> comparator(Visit visit);
+	// parts must belong to the supplied visit
+	public abstract Comparator<Part> comparator(Visit visit);
+
+	// the attribute by which parts are ordered, or null if the order is not determined by a single attribute
+	AttrName attr(Visit visit) {
+		return null;
+	}
+
+	// the order applied to attribute values, or null if the order is not determined by a single attribute
+	ValueOrder valueOrder(Visit visit) {
+		return null;
+	}
 
 	private static abstract class Extractive extends Order {
 
@@ -69,7 +80,7 @@ public abstract class Order {
 		abstract Comparator<Part> comparator(); // not null if there is a fixed comparator that can be used
 
 		@Override
-		Comparator<Part> comparator(Visit visit) {
+		public Comparator<Part> comparator(Visit visit) {
 			Comparator<Part> comparator = comparator();
 			return comparator == null ? comparator(visit, order(visit)) : comparator;
 		}
@@ -81,24 +92,32 @@ public abstract class Order {
 		ValueOrder defaultOrder(Visit visit, AttrName attr) {
 			return visit.types.getOrDefault(attr, Value.Type.STRING).order();
 		}
+
+		@Override
+		ValueOrder valueOrder(Visit visit) {
+			return order(visit);
+		}
 	}
 
 	private static final class ByAttr extends Extractive {
 
 		private final AttrName attr;
+		private final ValueOrder order;
 		private final Function<Part, Value> extractor;
 		private final Comparator<Part> comparator;
 
 		ByAttr(AttrName attr, ValueOrder order) {
 			this.attr = attr;
+			this.order = order;
 			extractor = p -> p.attrs().get(attr);
 			// order important, extractor must be set before method call
 			comparator = order == null ? null : comparator(null, order);
 		}
 
 		@Override Function<Part, Value> extractor(Visit visit) { return extractor; }
-		@Override ValueOrder order(Visit visit) { return defaultOrder(visit, attr); }
+		@Override ValueOrder order(Visit visit) { return order == null ? defaultOrder(visit, attr) : order; }
 		@Override Comparator<Part> comparator() { return comparator; }
+		@Override AttrName attr(Visit visit) { return attr; }
 
 	}
 
@@ -127,7 +146,8 @@ public abstract class Order {
 			return order == null ? defaultOrder(visit, attr(visit)) : order;
 		}
 
-		private AttrName attr(Visit visit) {
+		@Override
+		AttrName attr(Visit visit) {
 			return visit.view.attrName(name);
 		}
 	}
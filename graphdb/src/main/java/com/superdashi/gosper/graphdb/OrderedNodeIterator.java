@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.graphdb;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntPredicate;
+
+import org.h2.mvstore.MVMap;
+
+import com.superdashi.gosper.item.Value;
+
+// iterates over node ids in the order of an attribute index, restricted to the nodes of a sequence
+// nodes without an indexed value are reported before or after all others, in id order
+// ties between equal values are always broken by ascending node id, as per Order.INTRINSIC
+// the sequence is read lazily as the index is walked, so a short window does not read the whole sequence
+final class OrderedNodeIterator implements PrimitiveIterator.OfInt {
+
+	private static final int[] NO_IDS = {};
+
+	private final MVMap<ValueKey, Value> index;
+	private final NodeSequence seq;
+	private final IntPredicate indexed; // whether a node has a value in the index
+	private final boolean ascending;
+	private final boolean emptyFirst;
+
+	private PrimitiveIterator.OfInt source = null; // the sequence, read only as far as the walk requires
+	private int[] selected = NO_IDS; // the ids read from the source, in ascending order
+	private int selectedLength = 0;
+	private final BitSet reported = new BitSet(); // positions in selected of the ids reported by walking the index
+	private boolean walked = false; // whether the index walk has completed
+
+	private int phase = 0; // 0 and 1 report either empties or values depending on emptyFirst, 2 indicates completion
+
+	// index walk state
+	private Iterator<ValueKey> keys = null; // used for ascending walks
+	private ValueKey key = null; // used for descending walks
+	private int[] group = NO_IDS; // buffered ids of a group of equal values, used for descending walks
+	private int groupLength = 0;
+	private int groupIndex = 0;
+	private PrimitiveIterator.OfInt empties = null; // the sequence, checked for nodes without values before the walk
+	private int emptyIndex = 0; // the position in selected checked for unreported ids after the walk
+
+	private int next = -1;
+
+	OrderedNodeIterator(MVMap<ValueKey, Value> index, NodeSequence seq, IntPredicate indexed, boolean ascending, boolean emptyFirst) {
+		this.index = index;
+		this.seq = seq;
+		this.indexed = indexed;
+		this.ascending = ascending;
+		this.emptyFirst = emptyFirst;
+		advance();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next >= 0;
+	}
+
+	@Override
+	public int nextInt() {
+		if (next < 0) throw new NoSuchElementException();
+		int ret = next;
+		advance();
+		return ret;
+	}
+
+	private void advance() {
+		while (phase < 2) {
+			boolean empties = (phase == 0) == emptyFirst;
+			next = empties ? nextEmpty() : (ascending ? nextAscending() : nextDescending());
+			if (next >= 0) return;
+			if (!empties) walked = true;
+			phase ++;
+		}
+		next = -1;
+	}
+
+	// returns the id if it is selected, or -1
+	private int selected(ValueKey key) {
+		if (key.edgeId != Space.NO_EDGE_ID) return -1; // indices are shared with edges
+		int id = key.sourceId;
+		int position = position(id);
+		if (position < 0) return -1;
+		reported.set(position);
+		return id;
+	}
+
+	// the position of the id in selected, or a negative value if it is not in the sequence
+	private int position(int id) {
+		if (source == null) source = seq.iterator();
+		while ((selectedLength == 0 || selected[selectedLength - 1] < id) && source.hasNext()) {
+			if (selectedLength == selected.length) {
+				selected = selectedLength == 0 ? new int[16] : Arrays.copyOf(selected, selectedLength * 2);
+			}
+			selected[selectedLength++] = source.nextInt();
+		}
+		return Arrays.binarySearch(selected, 0, selectedLength, id);
+	}
+
+	private int nextEmpty() {
+		if (walked) {
+			// every selected node with a value has been reported, and all of them have been read from the source
+			while (emptyIndex < selectedLength) {
+				int i = emptyIndex++;
+				if (!reported.get(i)) return selected[i];
+			}
+			if (source == null) source = seq.iterator();
+			return source.hasNext() ? source.nextInt() : -1;
+		}
+		if (empties == null) empties = seq.iterator();
+		while (empties.hasNext()) {
+			int id = empties.nextInt();
+			if (!indexed.test(id)) return id;
+		}
+		return -1;
+	}
+
+	private int nextAscending() {
+		if (keys == null) keys = index.keyIterator(null);
+		while (keys.hasNext()) {
+			int id = selected(keys.next());
+			if (id >= 0) return id;
+		}
+		return -1;
+	}
+
+	private int nextDescending() {
+		while (groupIndex == groupLength) {
+			if (!fillGroup()) return -1;
+		}
+		return group[groupIndex++];
+	}
+
+	// walks backwards over a run of keys with equal values, collecting selected ids in ascending order
+	private boolean fillGroup() {
+		key = key == null ? index.lastKey() : index.lowerKey(key);
+		if (key == null) return false;
+		Value value = key.value;
+		groupLength = 0;
+		groupIndex = 0;
+		do {
+			int id = selected(key);
+			if (id >= 0) {
+				if (groupLength == group.length) {
+					group = groupLength == 0 ? new int[16] : Arrays.copyOf(group, groupLength * 2);
+				}
+				group[groupLength++] = id;
+			}
+			ValueKey lower = index.lowerKey(key);
+			if (lower == null || !lower.value.equals(value)) break;
+			key = lower;
+		} while (true);
+		// ids were gathered in descending order
+		for (int i = 0, j = groupLength - 1; i < j; i++, j--) {
+			int t = group[i];
+			group[i] = group[j];
+			group[j] = t;
+		}
+		return true;
+	}
+
+}
@@ -152,6 +152,9 @@ public abstract class Part implements Comparable<Part> {
 
 	abstract EdgeKey edgeKey();
 
+	// a part over the data as it was last flushed, unaffected by any pending changes, including deletion
+	abstract Part previous();
+
 	abstract void updateIndices(Indices indices);
 
 	boolean accessibleByViewer() {
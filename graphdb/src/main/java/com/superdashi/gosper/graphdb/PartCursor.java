@@ -25,4 +25,12 @@ public interface PartCursor<P extends Part> extends Cursor<P> {
 
 	PartCursor<P> order(Order order);
 
+	// windowing
+
+	// skips the first count parts in the order, before they are resolved
+	PartCursor<P> skip(int count);
+
+	// limits the number of parts reported
+	PartCursor<P> limit(int count);
+
 }
@@ -84,6 +84,19 @@ final class PartData implements Cloneable {
 		strings = NO_STRINGS;
 	}
 
+	// shares the state of the supplied data
+	private PartData(PartData that) {
+		owner = that.owner;
+		type = that.type;
+		perms = that.perms;
+		tags = that.tags;
+		namespaces = that.namespaces;
+		names = that.names;
+		values = that.values;
+		strings = that.strings;
+		flags = that.flags;
+	}
+
 	PartData(ByteBuffer b) {
 		// read owner
 		long owner = b.getLong();
@@ -232,6 +245,14 @@ final class PartData implements Cloneable {
 		flags &= ~FLAG_ALL_DIRTY;
 	}
 
+	// the data as it was before the part was deleted
+	PartData undeleted() {
+		if (!isFlagged(FLAG_DELETED)) return this;
+		PartData data = new PartData(this);
+		data.clearFlag(FLAG_DELETED);
+		return data;
+	}
+
 	boolean isFlagged(int flag) {
 		return (flags & flag) != 0;
 	}
@@ -265,7 +286,7 @@ final class PartData implements Cloneable {
 		// record changes
 		int sourceId = part.sourceId();
 		int edgeId = part.edgeId();
-		if (oldType != NO_TYPE) new NSNKey(oldType, sourceId, edgeId).toTagRemoval().record(changes);
+		if (oldType != NO_TYPE) new NSNKey(oldType, sourceId, edgeId).toTypeRemoval().record(changes);
 		if (newType != NO_TYPE) new NSNKey(newType, sourceId, edgeId).toTypeAddition().record(changes);
 
 		// update type
@@ -38,10 +38,10 @@ final class PartIndices {
 	private static final String MAP_NAME_PARTS_BY_PERM  = "partsByPerm" ; // maps owner ns code + perm code to empty
 	private static final String MAP_NAME_PARTS_BY_TAG   = "partsByTag" ; // maps tags + ids to empty
 
-	private final MVMap<NSNKey, Value> partsByOwner; // always maps to empty
-	private final MVMap<NSNKey, Value> partsByType; // always maps to empty
-	private final MVMap<NSNKey, Value> partsByPerm; // always maps to empty
-	private final MVMap<NSNKey, Value> partsByTag; // always maps to empty
+	final MVMap<NSNKey, Value> partsByOwner; // always maps to empty
+	final MVMap<NSNKey, Value> partsByType; // always maps to empty
+	final MVMap<NSNKey, Value> partsByPerm; // always maps to empty
+	final MVMap<NSNKey, Value> partsByTag; // always maps to empty
 
 	private static String rename(String name, String typeName) {
 		return name.replace("part", typeName);
@@ -111,6 +111,22 @@ final class PartIndices {
 	}
 
 
+	long countOfOwner(long identityId) {
+		return count(partsByOwner, identityId);
+	}
+
+	long countOfType(long typeId) {
+		return count(partsByType, typeId);
+	}
+
+	long countOfPerm(long permId) {
+		return count(partsByPerm, permId);
+	}
+
+	long countOfTag(long tagId) {
+		return count(partsByTag, tagId);
+	}
+
 	void applyOwnerChange(OwnerChange change) {
 		applyNSNChange(partsByOwner, change);
 	}
@@ -149,7 +165,9 @@ final class PartIndices {
 		return new MappedIntIterator<>(
 				index.cursor(from),
 				NSNKey::nodeId,
-				to);
+				to,
+				index,
+				nodeId -> new NSNKey(id, nodeId));
 	}
 
 	private PrimitiveIterator.OfLong edgeIterator(MVMap<NSNKey, Value> index, long id) {
@@ -157,11 +175,22 @@ final class PartIndices {
 		if (from == null || from.nsnId() != id) return EdgeSequence.emptyIterator;
 		long idIncr = (int) id == -1 ? 0x200000000L : 1;
 		NSNKey to = index.ceilingKey(new NSNKey(id + idIncr, 0));
-		if (from.equals(to)) return EdgeSequence.singleIterator(from.sourceId);
+		if (from.equals(to)) return EdgeSequence.singleIterator(from.edgeId());
 		return new MappedLongIterator<>(
 				index.cursor(from),
 				NSNKey::edgeId,
-				to);
+				to,
+				index,
+				edgeId -> new NSNKey(id, EdgeKey.sourceId(edgeId), EdgeKey.edgeId(edgeId)));
+	}
+
+	private long count(MVMap<NSNKey, Value> index, long id) {
+		NSNKey from = index.ceilingKey(new NSNKey(id, 0));
+		if (from == null || from.nsnId() != id) return 0L;
+		long idIncr = (int) id == -1 ? 0x200000000L : 1;
+		NSNKey to = index.ceilingKey(new NSNKey(id + idIncr, 0));
+		long j = to == null ? index.sizeAsLong() : index.getKeyIndex(to);
+		return j - index.getKeyIndex(from);
 	}
 
 	private PrimitiveIterator.OfLong keyIterator(MVMap<NSNKey, Value> index) {
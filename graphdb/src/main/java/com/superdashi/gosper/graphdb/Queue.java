@@ -28,6 +28,8 @@ final class Queue {
 
 	private long[] keys = NO_KEYS;
 	private int length = 0;
+	// the version at which the changes were committed
+	long version = -1L;
 
 	void enqueue(Part part) {
 		long key = EdgeKey.id(part.edgeId(), part.sourceId());
@@ -16,6 +16,12 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.stream.Collectors;
+
 import com.superdashi.gosper.framework.Identity;
 import com.superdashi.gosper.item.Value;
 
@@ -25,6 +31,9 @@ import com.superdashi.gosper.item.Value;
 //TODO support anyNode and anyEdge
 public abstract class Selector {
 
+	// conjunctions probe the larger selection when it exceeds the smaller by this factor
+	private static final long PROBE_RATIO = 16L;
+
 	// GENERIC PART
 
 	private static final Selector any = new Selector() {
@@ -44,6 +53,16 @@ public abstract class Selector {
 			return resolver.visit.indices.allEdges(resolver);
 		}
 
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countOfNodes();
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countOfEdges();
+		}
+
 	};
 
 
@@ -54,6 +73,11 @@ public abstract class Selector {
 			return false;
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.emptyList();
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return NodeSequence.empty;
@@ -64,6 +88,16 @@ public abstract class Selector {
 			return EdgeSequence.empty;
 		}
 
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return 0L;
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return 0L;
+		}
+
 	};
 
 	public static Selector any() {
@@ -161,6 +195,11 @@ public abstract class Selector {
 			return owner.equals(part.owner());
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.OWNER, owner));
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return resolver.visit.indices.nodesWithOwner(resolver, owner);
@@ -170,6 +209,16 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithOwner(resolver, owner);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithOwner(resolver.visit.indices.nodeIndices, owner);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithOwner(resolver.visit.indices.edgeIndices, owner);
+		}
 	}
 
 	private static class ByViewer extends Selector {
@@ -191,6 +240,16 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithOwner(resolver, resolver.visit.view.identity);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithOwner(resolver.visit.indices.nodeIndices, resolver.visit.view.identity);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithOwner(resolver.visit.indices.edgeIndices, resolver.visit.view.identity);
+		}
 	}
 
 	private static class ByType extends Selector {
@@ -206,6 +265,11 @@ public abstract class Selector {
 			return type.equals( part.type() );
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.TYPE, type.name));
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return resolver.visit.indices.nodesWithType(resolver, type);
@@ -215,6 +279,16 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithType(resolver, type);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithType(resolver.visit.indices.nodeIndices, type);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithType(resolver.visit.indices.edgeIndices, type);
+		}
 	}
 
 	private static class ByTypeName extends Selector {
@@ -230,6 +304,11 @@ public abstract class Selector {
 			return part.visit.view.type(typeName).equals(part.type());
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.TYPE, localName(typeName)));
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return resolver.visit.indices.nodesWithType(resolver, type(resolver));
@@ -240,6 +319,16 @@ public abstract class Selector {
 			return resolver.visit.indices.edgesWithType(resolver, type(resolver));
 		}
 
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithType(resolver.visit.indices.nodeIndices, type(resolver));
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithType(resolver.visit.indices.edgeIndices, type(resolver));
+		}
+
 		private Type type(Resolver resolver) {
 			return resolver.visit.view.type(typeName);
 		}
@@ -268,6 +357,16 @@ public abstract class Selector {
 			return resolver.visit.indices.edgesWithPermission(resolver, perm);
 		}
 
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithPermission(resolver.visit.indices.nodeIndices, perm);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithPermission(resolver.visit.indices.edgeIndices, perm);
+		}
+
 	}
 
 	private static class ByTag extends Selector {
@@ -283,6 +382,11 @@ public abstract class Selector {
 			return part.tags().contains(tag);
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.TAG, tag.name));
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return resolver.visit.indices.nodesWithTag(resolver, tag);
@@ -292,6 +396,16 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithTag(resolver, tag);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithTag(resolver.visit.indices.nodeIndices, tag);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithTag(resolver.visit.indices.edgeIndices, tag);
+		}
 	}
 
 	private static class ByTagName extends Selector {
@@ -308,6 +422,11 @@ public abstract class Selector {
 			return part.tags().contains( part.visit.newTag(tagName) );
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.TAG, tagName)); // tag names are not parsed for prefixes
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return resolver.visit.indices.nodesWithTag(resolver, new Tag(resolver.visit.view.namespace, tagName));
@@ -317,6 +436,16 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithTag(resolver, new Tag(resolver.visit.view.namespace, tagName));
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithTag(resolver.visit.indices.nodeIndices, new Tag(resolver.visit.view.namespace, tagName));
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithTag(resolver.visit.indices.edgeIndices, new Tag(resolver.visit.view.namespace, tagName));
+		}
 	}
 
 	private static class ByAttr extends Selector {
@@ -332,6 +461,11 @@ public abstract class Selector {
 			return !part.attrs().get(attr).isEmpty();
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.ATTR, attr.name));
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			return resolver.visit.indices.nodesWithValue(resolver, attr, null);
@@ -341,6 +475,21 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithValue(resolver, attr, null);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(attr, null, resolver.visit.indices.countOfNodes());
+		}
+
+		@Override
+		boolean probeable(Resolver resolver) {
+			return !resolver.visit.defaults.containsKey(attr);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(attr, null, resolver.visit.indices.countOfEdges());
+		}
 	}
 
 	private static class ByAttrName extends Selector {
@@ -356,6 +505,11 @@ public abstract class Selector {
 			return !part.attrs().get(name).isEmpty();
 		}
 
+		@Override
+		List<Key> keys() {
+			return Collections.singletonList(new Key(Key.Kind.ATTR, localName(name)));
+		}
+
 		@Override
 		NodeSequence selectNodes(Resolver resolver) {
 			AttrName attrName = resolver.visit.view.attrName(name);
@@ -367,6 +521,21 @@ public abstract class Selector {
 			AttrName attrName = resolver.visit.view.attrName(name);
 			return resolver.visit.indices.edgesWithValue(resolver, attrName, null);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(resolver.visit.view.attrName(name), null, resolver.visit.indices.countOfNodes());
+		}
+
+		@Override
+		boolean probeable(Resolver resolver) {
+			return !resolver.visit.defaults.containsKey(resolver.visit.view.attrName(name));
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(resolver.visit.view.attrName(name), null, resolver.visit.indices.countOfEdges());
+		}
 	}
 
 	private static class ByValue extends Selector {
@@ -381,7 +550,14 @@ public abstract class Selector {
 
 		@Override
 		boolean matches(Part part) {
-			return !part.attrs().get(attr).equals(value);
+			Value selected = coerce(part.visit, attr, value);
+			return selected != null && part.attrs().get(attr).equals(selected);
+		}
+
+		@Override
+		List<Key> keys() {
+			// parts without the attribute match an empty value
+			return value.isEmpty() ? null : Collections.singletonList(new Key(Key.Kind.ATTR, attr.name));
 		}
 
 		@Override
@@ -393,6 +569,21 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			return resolver.visit.indices.edgesWithValue(resolver, attr, value);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(attr, value, resolver.visit.indices.countOfNodes());
+		}
+
+		@Override
+		boolean probeable(Resolver resolver) {
+			return !resolver.visit.defaults.containsKey(attr);
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(attr, value, resolver.visit.indices.countOfEdges());
+		}
 	}
 
 	private static class ByValueName extends Selector {
@@ -407,7 +598,14 @@ public abstract class Selector {
 
 		@Override
 		boolean matches(Part part) {
-			return !part.attrs().get(name).equals(value);
+			Value selected = coerce(part.visit, part.visit.view.attrName(name), value);
+			return selected != null && part.attrs().get(name).equals(selected);
+		}
+
+		@Override
+		List<Key> keys() {
+			// parts without the attribute match an empty value
+			return value.isEmpty() ? null : Collections.singletonList(new Key(Key.Kind.ATTR, localName(name)));
 		}
 
 		@Override
@@ -421,6 +619,21 @@ public abstract class Selector {
 			AttrName attrName = resolver.visit.view.attrName(name);
 			return resolver.visit.indices.edgesWithValue(resolver, attrName, value);
 		}
+
+		@Override
+		long estimateNodes(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(resolver.visit.view.attrName(name), value, resolver.visit.indices.countOfNodes());
+		}
+
+		@Override
+		boolean probeable(Resolver resolver) {
+			return !resolver.visit.defaults.containsKey(resolver.visit.view.attrName(name));
+		}
+
+		@Override
+		long estimateEdges(Resolver resolver) {
+			return resolver.visit.indices.countWithValue(resolver.visit.view.attrName(name), value, resolver.visit.indices.countOfEdges());
+		}
 	}
 
 	private static class BySource extends Selector {
@@ -445,7 +658,8 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			NodeSequence seq = nodes.selectNodes(resolver);
 			Indices indices = resolver.visit.indices;
-			return () -> seq.stream().mapToObj(n -> indices.edgesWithSource(resolver, n)).flatMapToLong(s -> s.stream()).sorted().distinct().iterator();
+			// nodes are ascending and edges are ordered by source, so concatenation preserves order
+			return () -> seq.stream().mapToObj(n -> indices.edgesWithSource(resolver, n)).flatMapToLong(s -> s.stream()).iterator();
 		}
 
 	}
@@ -472,7 +686,7 @@ public abstract class Selector {
 		EdgeSequence selectEdges(Resolver resolver) {
 			NodeSequence seq = nodes.selectNodes(resolver);
 			Indices indices = resolver.visit.indices;
-			return () -> seq.stream().mapToObj(n -> indices.edgesWithTarget(resolver, n)).flatMapToLong(s -> s.stream()).sorted().distinct().iterator();
+			return () -> EdgeSequence.union(seq.stream().mapToObj(n -> indices.edgesWithTarget(resolver, n)).collect(Collectors.toList())).iterator();
 		}
 
 	}
@@ -495,14 +709,83 @@ public abstract class Selector {
 				return Selector.this.matches(part) && that.matches(part);
 			}
 
+			@Override
+			List<Key> keys() {
+				// a part must satisfy either selector, so choose the narrower
+				List<Key> these = Selector.this.keys();
+				List<Key> those = that.keys();
+				if (these == null) return those;
+				if (those == null) return these;
+				return these.size() <= those.size() ? these : those;
+			}
+
+			// drives from the more selective selector, probing the other if it is much less selective
+			// the plan is made once, when the sequence is first iterated
 			@Override
 			NodeSequence selectNodes(Resolver resolver) {
-				return Selector.this.selectNodes(resolver).and(that.selectNodes(resolver));
+				return new NodeSequence() {
+					private NodeSequence planned = null;
+
+					@Override
+					public PrimitiveIterator.OfInt iterator() {
+						if (planned == null) planned = planNodes(resolver);
+						return planned.iterator();
+					}
+				};
 			}
 
 			@Override
 			EdgeSequence selectEdges(Resolver resolver) {
-				return Selector.this.selectEdges(resolver).and(that.selectEdges(resolver));
+				return new EdgeSequence() {
+					private EdgeSequence planned = null;
+
+					@Override
+					public PrimitiveIterator.OfLong iterator() {
+						if (planned == null) planned = planEdges(resolver);
+						return planned.iterator();
+					}
+				};
+			}
+
+			private NodeSequence planNodes(Resolver resolver) {
+				resolver.visit.flush(); // estimates use indices, needs flush
+				long a = Selector.this.estimateNodes(resolver);
+				long b = that.estimateNodes(resolver);
+				Selector driver = a <= b ? Selector.this : that;
+				Selector other = a <= b ? that : Selector.this;
+				NodeSequence seq = driver.selectNodes(resolver);
+				if (probe(Math.min(a, b), Math.max(a, b)) && other.probeable(resolver)) {
+					return seq.filter(id -> other.matches(resolver.resolveNode(id)));
+				}
+				return seq.and(other.selectNodes(resolver));
+			}
+
+			private EdgeSequence planEdges(Resolver resolver) {
+				resolver.visit.flush(); // estimates use indices, needs flush
+				long a = Selector.this.estimateEdges(resolver);
+				long b = that.estimateEdges(resolver);
+				Selector driver = a <= b ? Selector.this : that;
+				Selector other = a <= b ? that : Selector.this;
+				EdgeSequence seq = driver.selectEdges(resolver);
+				if (probe(Math.min(a, b), Math.max(a, b)) && other.probeable(resolver)) {
+					return seq.filter(id -> other.matches(resolver.resolveEdge(id)));
+				}
+				return seq.and(other.selectEdges(resolver));
+			}
+
+			@Override
+			long estimateNodes(Resolver resolver) {
+				return Math.min(Selector.this.estimateNodes(resolver), that.estimateNodes(resolver));
+			}
+
+			@Override
+			long estimateEdges(Resolver resolver) {
+				return Math.min(Selector.this.estimateEdges(resolver), that.estimateEdges(resolver));
+			}
+
+			@Override
+			boolean probeable(Resolver resolver) {
+				return Selector.this.probeable(resolver) && that.probeable(resolver);
 			}
 		};
 	}
@@ -510,7 +793,7 @@ public abstract class Selector {
 	public Selector or(Selector that) {
 		if (that == null) throw new IllegalArgumentException("null that");
 		if (that == any) return any;
-		if (that == none) return none;
+		if (that == none) return this;
 		if (that == this) return this;
 		return new Selector() {
 
@@ -519,6 +802,19 @@ public abstract class Selector {
 				return Selector.this.matches(part) || that.matches(part);
 			}
 
+			@Override
+			List<Key> keys() {
+				// a part may satisfy either selector, so both must be classified
+				List<Key> these = Selector.this.keys();
+				if (these == null) return null;
+				List<Key> those = that.keys();
+				if (those == null) return null;
+				List<Key> keys = new ArrayList<>(these.size() + those.size());
+				keys.addAll(these);
+				keys.addAll(those);
+				return keys;
+			}
+
 			@Override
 			NodeSequence selectNodes(Resolver resolver) {
 				return Selector.this.selectNodes(resolver).or(that.selectNodes(resolver));
@@ -528,6 +824,21 @@ public abstract class Selector {
 			EdgeSequence selectEdges(Resolver resolver) {
 				return Selector.this.selectEdges(resolver).or(that.selectEdges(resolver));
 			}
+
+			@Override
+			long estimateNodes(Resolver resolver) {
+				return Math.min(Selector.this.estimateNodes(resolver) + that.estimateNodes(resolver), resolver.visit.indices.countOfNodes());
+			}
+
+			@Override
+			long estimateEdges(Resolver resolver) {
+				return Math.min(Selector.this.estimateEdges(resolver) + that.estimateEdges(resolver), resolver.visit.indices.countOfEdges());
+			}
+
+			@Override
+			boolean probeable(Resolver resolver) {
+				return Selector.this.probeable(resolver) && that.probeable(resolver);
+			}
 		};
 	}
 
@@ -559,4 +870,70 @@ public abstract class Selector {
 	abstract boolean matches(Part part);
 	abstract NodeSequence selectNodes(Resolver resolver);
 	abstract EdgeSequence selectEdges(Resolver resolver);
+
+	// estimates the number of parts selected, used to plan conjunctions
+	// selectors that cannot use an index estimate every part, since they must scan
+	long estimateNodes(Resolver resolver) {
+		return resolver.visit.indices.countOfNodes();
+	}
+
+	long estimateEdges(Resolver resolver) {
+		return resolver.visit.indices.countOfEdges();
+	}
+
+	// true if matches agrees with the parts selected, so that a conjunction may probe it instead of merging
+	// parts with a defaulted attribute match, but are absent from its index
+	boolean probeable(Resolver resolver) {
+		return true;
+	}
+
+	// true if the larger selection should be probed per part instead of merged
+	private static boolean probe(long smaller, long larger) {
+		return smaller * PROBE_RATIO < larger;
+	}
+
+	// used to dispatch observations, a matching part must possess at least one of the keys
+	// null if the selector cannot be classified in this way
+	List<Key> keys() {
+		return null;
+	}
+
+	// coerces a selected value to the declared type of its attribute, as the indices do
+	// null if the value cannot be coerced, in which case nothing is selected
+	private static Value coerce(Visit visit, AttrName attr, Value value) {
+		Value.Type type = visit.types.get(attr);
+		if (type == null || value.isEmpty()) return value;
+		value = value.as(type);
+		return value.isEmpty() ? null : value;
+	}
+
+	// names may be prefixed, but keys are only concerned with the unqualified name
+	private static String localName(String name) {
+		return name.substring(name.indexOf(':') + 1);
+	}
+
+	// inner classes
+
+	static final class Key {
+
+		enum Kind {
+			TYPE,
+			TAG,
+			OWNER,
+			ATTR,
+		}
+
+		final Kind kind;
+		final Object value; // a name for all kinds except owner, which is an identity
+
+		Key(Kind kind, Object value) {
+			this.kind = kind;
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			return kind + ":" + value;
+		}
+	}
 }
@@ -94,10 +94,10 @@ public final class Space {
 	private final Map<Type, Itemizer> typeItemizers = new HashMap<>();
 
 	private final Indices indices;
-	private Indices readOnlyIndices;
+	private volatile Indices readOnlyIndices;
 
 	private final ReentrantReadWriteLock spaceLock = new ReentrantReadWriteLock();
-	private final ReentrantLock editLock = new ReentrantLock();
+	private final ReentrantLock editLock; // shared with the store, so that compaction never commits a partial edit
 	private Edit currentEdit = null;
 
 	// lock must be taken when mutating node/edge id fields
@@ -115,11 +115,14 @@ public final class Space {
 	public Space(Store storage) {
 		assert storage != null;
 		this.store = storage.store;
+		this.editLock = storage.writeLock;
 		store.setAutoCommitDelay(0);
 		meta = store.openMap(MAP_NAME_META);
 		inventory = new Inventory(store);
 		indices = new Indices(this);
 		readOnlyIndices = indices.snapshot();
+		// compaction commits the store, releasing the chunks of older versions after the retention time
+		storage.compactionListener = () -> readOnlyIndices = indices.snapshot();
 
 		synchronized (idLock) {
 			nextNodeId = (int) meta.getOrDefault(NEXT_NODE_ID, 0);
@@ -238,9 +241,17 @@ public final class Space {
 		return new View(this, viewer);
 	}
 
-	//TODO needs proper lock, or spin trying to observe
-	synchronized void registerObservation(Observation obs) {
-		observer = observer.with(obs);
+	// the edit lock ensures that no edit is underway with a snapshot of the observer that lacks the observation
+	// it is taken before synchronizing, so that edits may cancel observations without deadlocking
+	void registerObservation(Observation obs) {
+		editLock.lock();
+		try {
+			synchronized (this) {
+				observer = observer.with(obs);
+			}
+		} finally {
+			editLock.unlock();
+		}
 	}
 
 	synchronized void deregisterObservation(Observation obs) {
@@ -277,24 +288,52 @@ public final class Space {
 
 	int allocateNodeId() {
 		synchronized (idLock) {
-			int id = nextNodeId ++;
-			id = Integer.reverse(id << 2) << 1;
-			//TODO deal with overflow case
-			assert isNodeId(id);
-			return id;
+			return nodeId(nextNodeId ++);
 		}
 	}
 
 	int allocateEdgeId() {
 		synchronized (idLock) {
-			int id = nextEdgeId ++;
-			id = (Integer.reverse(id << 2) << 1) | 1;
-			//TODO deal with overflow case
-			assert isEdgeId(id);
-			return id;
+			return edgeId(nextEdgeId ++);
+		}
+	}
+
+	// reserves a contiguous range of node ids, returns the first (prior to transformation)
+	int reserveNodeIds(int count) {
+		assert count > 0;
+		synchronized (idLock) {
+			int first = nextNodeId;
+			nextNodeId += count;
+			return first;
+		}
+	}
+
+	// reserves a contiguous range of edge ids, returns the first (prior to transformation)
+	int reserveEdgeIds(int count) {
+		assert count > 0;
+		synchronized (idLock) {
+			int first = nextEdgeId;
+			nextEdgeId += count;
+			return first;
 		}
 	}
 
+	// transforms an allocated index into a node id
+	static int nodeId(int index) {
+		int id = Integer.reverse(index << 2) << 1;
+		//TODO deal with overflow case
+		assert isNodeId(id);
+		return id;
+	}
+
+	// transforms an allocated index into an edge id
+	static int edgeId(int index) {
+		int id = (Integer.reverse(index << 2) << 1) | 1;
+		//TODO deal with overflow case
+		assert isEdgeId(id);
+		return id;
+	}
+
 	Set<Type> availableTypes(Namespace namespace) {
 		return availableTypes.get(namespace);
 	}
@@ -315,9 +354,10 @@ public final class Space {
 		}
 	}
 
-	void commit(boolean changesMade) {
+	void commit(boolean changesMade, Observer observer) {
 		try {
 			if (changesMade) {
+				boolean committed = false;
 				try {
 					// commit changes and possible id lease increment
 					synchronized (idLock) {
@@ -342,9 +382,13 @@ public final class Space {
 						reservedNodeId = newReservedNodeId;
 						reservedEdgeId = newReservedEdgeId;
 					}
+					committed = true;
 				} finally {
 					// clear previous readonly indices
-					readOnlyIndices = indices.snapshot();
+					Indices snapshot = indices.snapshot();
+					// observers are committed first so that no change is inspectable before it can be delivered
+					if (committed) observer.commit(snapshot.version);
+					readOnlyIndices = snapshot;
 				}
 			}
 		} finally {
@@ -18,7 +18,14 @@ package com.superdashi.gosper.graphdb;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+import org.h2.mvstore.FileStore;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStore.Builder;
 import org.h2.mvstore.OffHeapStore;
@@ -27,6 +34,17 @@ public final class Store {
 
 	private static final int FILE_PAGE_SPLIT_SIZE = 4096;
 
+	// the fill rate that on-demand compaction aims for
+	public static final int DEFAULT_TARGET_FILL_RATE = 90;
+
+	// bounds on the bytes written by a single compaction step, while the store is locked
+	private static final long MIN_STEP_SIZE = 16 * 1024L;
+	private static final long MAX_STEP_SIZE = 1024 * 1024L;
+	// a throttled compaction aims to take a step this many times per second
+	private static final int STEPS_PER_SECOND = 4;
+	// guards against steps that never stop reporting progress
+	private static final int MAX_STEPS = 4096;
+
 	private static Path pathFor(MVStore store) {
 		String fileName = store.getFileStore().getFileName();
 		if (fileName == null) return null;
@@ -58,8 +76,26 @@ public final class Store {
 		return new Store(builder.open(), path);
 	}
 
+	private static void checkFillRate(int targetFillRate) {
+		if (targetFillRate < 0 || targetFillRate > 100) throw new IllegalArgumentException("invalid targetFillRate");
+	}
+
 	final MVStore store;
 	final Path path;
+	// held by edits and by compaction steps, since compaction commits the store
+	final ReentrantLock writeLock = new ReentrantLock();
+	// called with the write lock held after each compaction step, so that a space can move to the new version
+	volatile Runnable compactionListener = null;
+
+	// totals over all compactions
+	private long totalBytesReclaimed = 0L;
+	private long totalBytesWritten = 0L;
+	private long totalTimeSpent = 0L;
+	private int totalCompactions = 0;
+
+	// lazily created for background compaction
+	private ScheduledExecutorService scheduler = null;
+	private ScheduledFuture<?> scheduled = null;
 
 	private Store(MVStore store) {
 		this.store = store;
@@ -71,7 +107,186 @@ public final class Store {
 		this.path = path;
 	}
 
-	public void compact() {
-		//TODO
+	// percentage of the store that is occupied by live data
+	public int fillRate() {
+		return store.getCurrentFillRate();
+	}
+
+	// compacts the store immediately, without limiting the rate of writes
+	public CompactionStats compact() {
+		return compact(DEFAULT_TARGET_FILL_RATE, 0L);
+	}
+
+	// compacts the store until the target fill rate is reached or no further progress is possible
+	// writes are limited to the specified number of bytes per second, zero or negative means unlimited
+	// readers are never blocked; edits are only blocked for the duration of each step
+	public CompactionStats compact(int targetFillRate, long bytesPerSecond) {
+		checkFillRate(targetFillRate);
+		try {
+			return performCompaction(targetFillRate, bytesPerSecond);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return compactionStats();
+		}
+	}
+
+	// compacts the store periodically on a background thread, replacing any existing schedule
+	// a compaction that fails stops the schedule, and the failure is passed to the supplied consumer
+	public synchronized void scheduleCompaction(int targetFillRate, long bytesPerSecond, long period, TimeUnit unit, Consumer<RuntimeException> failureHandler) {
+		checkFillRate(targetFillRate);
+		if (period <= 0L) throw new IllegalArgumentException("non-positive period");
+		if (unit == null) throw new IllegalArgumentException("null unit");
+		if (failureHandler == null) throw new IllegalArgumentException("null failureHandler");
+		cancelCompaction();
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "graphdb-compaction");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+		}
+		scheduled = scheduler.scheduleWithFixedDelay(() -> {
+			if (store.isClosed()) {
+				cancelCompaction();
+				return;
+			}
+			try {
+				performCompaction(targetFillRate, bytesPerSecond);
+			} catch (InterruptedException e) {
+				/* cancelled */
+			} catch (RuntimeException e) {
+				cancelCompaction();
+				failureHandler.accept(e);
+			}
+		}, period, period, unit);
+	}
+
+	// stops any background compaction, interrupting a compaction that is underway
+	public synchronized void cancelCompaction() {
+		if (scheduled == null) return;
+		scheduled.cancel(true);
+		scheduled = null;
+	}
+
+	// stops any background compaction and closes the store, waiting for any compaction step to complete
+	public void close() {
+		synchronized (this) {
+			cancelCompaction();
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+		writeLock.lock();
+		try {
+			store.close();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	// the cumulative statistics for all compactions of the store
+	public synchronized CompactionStats compactionStats() {
+		return new CompactionStats(totalCompactions, totalBytesReclaimed, totalBytesWritten, totalTimeSpent, fillRate());
+	}
+
+	private CompactionStats performCompaction(int targetFillRate, long bytesPerSecond) throws InterruptedException {
+		FileStore fileStore = store.getFileStore();
+		long stepSize = bytesPerSecond <= 0L ? MAX_STEP_SIZE : Math.min(Math.max(bytesPerSecond / STEPS_PER_SECOND, MIN_STEP_SIZE), MAX_STEP_SIZE);
+		long startTime = System.nanoTime();
+		long startSize = fileStore.size();
+		long startWrites = fileStore.getWriteBytes();
+
+		// first rewrite sparse chunks, then move chunks to release space at the end of the file
+		for (int phase = 0; phase < 2; phase++) {
+			for (int steps = 0; steps < MAX_STEPS; steps++) {
+				if (store.isClosed() || fillRate(phase) >= targetFillRate) break;
+				boolean progressed;
+				writeLock.lock();
+				try {
+					// the store may have been closed while waiting for the lock
+					if (store.isClosed()) break;
+					progressed = phase == 0 ? store.compact(targetFillRate, (int) stepSize) : store.compactMoveChunks(targetFillRate, stepSize);
+					Runnable listener = compactionListener;
+					if (progressed && listener != null) listener.run();
+				} finally {
+					writeLock.unlock();
+				}
+				if (!progressed) break;
+				if (bytesPerSecond > 0L) {
+					// sleep until the bytes written are within budget
+					long written = fileStore.getWriteBytes() - startWrites;
+					long due = startTime + written * 1000000000L / bytesPerSecond;
+					long delay = due - System.nanoTime();
+					if (delay > 0L) TimeUnit.NANOSECONDS.sleep(delay);
+				} else if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+
+		long bytesReclaimed = Math.max(startSize - fileStore.size(), 0L);
+		long bytesWritten = fileStore.getWriteBytes() - startWrites;
+		long timeSpent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		synchronized (this) {
+			totalCompactions ++;
+			totalBytesReclaimed += bytesReclaimed;
+			totalBytesWritten += bytesWritten;
+			totalTimeSpent += timeSpent;
+		}
+		return new CompactionStats(1, bytesReclaimed, bytesWritten, timeSpent, fillRate());
+	}
+
+	// rewriting is governed by the live data in chunks, moving by the free space in the file
+	private int fillRate(int phase) {
+		return phase == 0 ? store.getCurrentFillRate() : store.getFileStore().getFillRate();
+	}
+
+	public static final class CompactionStats {
+
+		private final int compactions;
+		private final long bytesReclaimed;
+		private final long bytesWritten;
+		private final long timeSpent;
+		private final int fillRate;
+
+		private CompactionStats(int compactions, long bytesReclaimed, long bytesWritten, long timeSpent, int fillRate) {
+			this.compactions = compactions;
+			this.bytesReclaimed = bytesReclaimed;
+			this.bytesWritten = bytesWritten;
+			this.timeSpent = timeSpent;
+			this.fillRate = fillRate;
+		}
+
+		// the number of compactions performed
+		public int compactions() {
+			return compactions;
+		}
+
+		// the reduction in the size of the store
+		public long bytesReclaimed() {
+			return bytesReclaimed;
+		}
+
+		// the bytes written in compacting the store
+		public long bytesWritten() {
+			return bytesWritten;
+		}
+
+		// milliseconds spent compacting, including any throttling
+		public long timeSpent() {
+			return timeSpent;
+		}
+
+		// the fill rate of the store as a percentage, after compaction
+		public int fillRate() {
+			return fillRate;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("compactions: %d, reclaimed: %d bytes, written: %d bytes, time: %dms, fill rate: %d%%", compactions, bytesReclaimed, bytesWritten, timeSpent, fillRate);
+		}
 	}
 }
@@ -105,6 +105,16 @@ final class ValueKey {
 			}
 		}
 
+		@Override
+		public MVMap<?, ?> mapIn(Indices indices) {
+			return indices.indicesById.get(Name.nsnId(nsCode, nmCode));
+		}
+
+		@Override
+		public Object key() {
+			return newValueKey == null ? oldValueKey : newValueKey;
+		}
+
 		@Override
 		public String toString() {
 			String verb;
@@ -127,6 +127,11 @@ public final class View implements Editor {
 				return View.this.inspect();
 			}
 
+			@Override
+			public Observation observe(Selector selector, Consumer<PartRef> notifier) {
+				return View.this.observe(selector, notifier);
+			}
+
 		};
 	}
 
@@ -143,6 +148,11 @@ public final class View implements Editor {
 				return View.this.inspect();
 			}
 
+			@Override
+			public Observation observe(Selector selector, Consumer<PartRef> notifier) {
+				return View.this.observe(selector, notifier);
+			}
+
 			@Override
 			public AttrName attrName(String name) {
 				return View.this.attrName(name);
@@ -160,6 +170,7 @@ public final class View implements Editor {
 		};
 	};
 
+	@Override
 	public Observation observe(Selector selector, Consumer<PartRef> notifier) {
 		if (selector == null) throw new IllegalArgumentException("null selector");
 		if (notifier == null) throw new IllegalArgumentException("null notifier");
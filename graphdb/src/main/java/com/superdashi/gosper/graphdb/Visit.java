@@ -144,7 +144,10 @@ public abstract class Visit implements AutoCloseable {
 
 	Node createNode(long owner) {
 		checkMutable();
-		int id = space.allocateNodeId();
+		return createNode(owner, space.allocateNodeId());
+	}
+
+	Node createNode(long owner, int id) {
 		Node node = new Node(this, owner, id);
 		addNode(node);
 		return node;
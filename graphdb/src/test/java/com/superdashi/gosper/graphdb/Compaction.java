@@ -72,7 +72,7 @@ public class Compaction {
 
 		reportSize.accept("after modifies");
 
-		space.store.compactMoveChunks();
+		System.out.println(store.compact(100, 0L));
 
 		reportSize.accept("after compact rewrite");
 
@@ -26,7 +26,9 @@ import static java.util.stream.Collectors.toSet;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -46,6 +48,7 @@ import org.junit.Test;
 import com.superdashi.gosper.framework.Identity;
 import com.superdashi.gosper.framework.Namespace;
 import com.superdashi.gosper.item.Value;
+import com.superdashi.gosper.item.ValueOrder;
 import com.tomgibara.storage.Stores;
 
 public class GraphTest {
@@ -758,6 +761,228 @@ public class GraphTest {
 		}
 	}
 
+	@Test
+	public void testVersionedObservation() {
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		List<PartRef> refs = new ArrayList<>();
+		Observation obs = view.observe(Selector.ofType(cmpType), refs::add);
+		PartRef first;
+		try (Edit edit = view.edit()) {
+			first = edit.createNode(cmpType).ref();
+			edit.commit();
+		}
+		long version;
+		try (Inspect inspect = view.inspect()) {
+			version = inspect.version();
+		}
+		PartRef second;
+		try (Edit edit = view.edit()) {
+			second = edit.createNode(cmpType).ref();
+			edit.commit();
+		}
+		obs.deliver(version);
+		Assert.assertEquals(Collections.singletonList(first), refs);
+		obs.deliver();
+		Assert.assertEquals(Arrays.asList(first, second), refs);
+	}
+
+	@Test
+	public void testDepartingObservation() {
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		PartRef typed;
+		PartRef tagged;
+		try (Edit edit = view.edit()) {
+			typed = edit.createNode(cmpType).ref();
+			Node node = edit.createNode(empType);
+			node.tags().add(managerTag);
+			tagged = node.ref();
+			edit.commit();
+		}
+		List<PartRef> refs = new ArrayList<>();
+		Observation obs = view.observe(Selector.ofType(cmpType).or(withTag(managerTag)), refs::add);
+		try (Edit edit = view.edit()) {
+			edit.node(typed).get().type(empType);
+			edit.node(tagged).get().tags().remove(managerTag);
+			edit.commit();
+		}
+		obs.deliver();
+		Assert.assertEquals(2, refs.size());
+		Assert.assertTrue(refs.contains(typed));
+		Assert.assertTrue(refs.contains(tagged));
+	}
+
+	@Test
+	public void testIndexedObservation() {
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		List<Selector> selectors = new ArrayList<>();
+		selectors.add(ofType(perType));
+		selectors.add(ofType("Company"));
+		selectors.add(withTag(managerTag));
+		selectors.add(withTag("other"));
+		selectors.add(withAttr("name"));
+		selectors.add(withAttr("defaulted"));
+		selectors.add(withValue("count", Value.ofInteger(3)));
+		selectors.add(withValue("count", Value.empty()));
+		selectors.add(ownedBy(id1));
+		selectors.add(ownedBy(id2));
+		selectors.add(ofType(perType).or(withTag(managerTag)));
+		selectors.add(ofType(perType).and(withTag("other")));
+		selectors.add(Selector.any());
+		selectors.add(Selector.none());
+		List<Set<PartRef>> observed = new ArrayList<>();
+		List<Observation> observations = new ArrayList<>();
+		for (Selector selector : selectors) {
+			Set<PartRef> refs = new HashSet<>();
+			observed.add(refs);
+			observations.add(view.observe(selector, refs::add));
+		}
+
+		Random r = new Random(0L);
+		String[] types = {"Person", "Company", "Employee"};
+		Set<PartRef> changed = new HashSet<>();
+		try (Edit edit = view.edit()) {
+			for (int i = 0; i < 100; i++) {
+				Node node = edit.createNode(types[r.nextInt(types.length)]);
+				if (r.nextBoolean()) node.attrs().string("name", "n" + i);
+				if (r.nextBoolean()) node.attrs().integer("count", r.nextInt(5));
+				if (r.nextInt(4) == 0) node.tags().add(managerTag);
+				if (r.nextInt(4) == 0) node.tags().add("other");
+				changed.add(node.ref());
+			}
+			edit.commit();
+		}
+		checkObservations(view, selectors, observations, observed, matching(view, selectors, Collections.emptySet()), changed);
+
+		// parts that no longer match are observed too
+		List<Set<PartRef>> before = matching(view, selectors, null);
+		changed.clear();
+		try (Edit edit = view.edit()) {
+			for (Node node : edit.graph().nodes().stream().filter(n -> r.nextInt(3) == 0).collect(Collectors.toList())) {
+				boolean change;
+				switch (r.nextInt(4)) {
+				case 0:
+					change = node.type(types[r.nextInt(types.length)]);
+					break;
+				case 1:
+					change = node.tags().remove(managerTag);
+					break;
+				case 2:
+					change = !node.attrs().get("name").isEmpty();
+					if (change) node.attrs().empty(view.attrName("name"));
+					break;
+				default:
+					change = !node.attrs().get("count").equals(Value.ofInteger(3));
+					if (change) node.attrs().integer("count", 3);
+					break;
+				}
+				if (change) changed.add(node.ref());
+			}
+			edit.commit();
+		}
+		checkObservations(view, selectors, observations, observed, before, changed);
+
+		// deleted parts are observed only by the selectors they previously matched
+		before = matching(view, selectors, null);
+		Set<PartRef> deleted = new HashSet<>();
+		try (Edit edit = view.edit()) {
+			for (Node node : edit.graph().nodes().stream().filter(n -> r.nextInt(3) == 0).collect(Collectors.toList())) {
+				deleted.add(node.ref());
+				node.delete();
+			}
+			edit.commit();
+		}
+		Assert.assertFalse(deleted.isEmpty());
+		for (int i = 0; i < selectors.size(); i++) {
+			Set<PartRef> expected = new HashSet<>(before.get(i));
+			expected.retainAll(deleted);
+			observations.get(i).deliver();
+			Assert.assertEquals("selector " + i, expected, observed.get(i));
+		}
+	}
+
+	// the nodes matched by each selector, or the supplied set for every selector if not null
+	private List<Set<PartRef>> matching(View view, List<Selector> selectors, Set<PartRef> set) {
+		List<Set<PartRef>> matching = new ArrayList<>();
+		try (Inspect inspect = view.inspect()) {
+			for (Selector selector : selectors) {
+				matching.add(set == null ? inspect.graph().nodes().stream().filter(n -> n.matches(selector)).map(Node::ref).collect(toSet()) : set);
+			}
+		}
+		return matching;
+	}
+
+	private void checkObservations(View view, List<Selector> selectors, List<Observation> observations, List<Set<PartRef>> observed, List<Set<PartRef>> before, Set<PartRef> changed) {
+		try (Inspect inspect = view.inspect()) {
+			for (int i = 0; i < selectors.size(); i++) {
+				Selector selector = selectors.get(i);
+				Set<PartRef> matched = before.get(i);
+				Set<PartRef> expected = changed.stream().map(ref -> inspect.node(ref).get()).filter(n -> n.matches(selector) || matched.contains(n.ref())).map(Node::ref).collect(toSet());
+				observations.get(i).deliver();
+				Assert.assertEquals("selector " + i, expected, observed.get(i));
+				observed.get(i).clear();
+			}
+		}
+	}
+
+	@Test
+	public void testValueSelection() {
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		try (Edit edit = view.edit()) {
+			Node three = edit.createNode(perType);
+			three.attrs().integer("count", 3);
+			Node four = edit.createNode(perType);
+			four.attrs().integer("count", 4);
+			Assert.assertTrue(three.matches(withValue("count", Value.ofInteger(3))));
+			Assert.assertFalse(four.matches(withValue("count", Value.ofInteger(3))));
+			Assert.assertTrue(three.matches(withValue(view.attrName("count"), Value.ofInteger(3))));
+			Assert.assertFalse(four.matches(withValue(view.attrName("count"), Value.ofInteger(3))));
+			edit.commit();
+		}
+	}
+
+	@Test
+	public void testOrNone() {
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		Selector selector = ofType(perType);
+		Assert.assertSame(selector, selector.or(Selector.none()));
+		try (Edit edit = view.edit()) {
+			Node node = edit.createNode(perType);
+			Assert.assertTrue(node.matches(selector.or(Selector.none())));
+			edit.commit();
+		}
+	}
+
+	@Test
+	public void testTypeChange() {
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		PartRef ref;
+		try (Edit edit = view.edit()) {
+			Node node = edit.createNode(perType);
+			node.tags().add(managerTag);
+			ref = node.ref();
+			edit.commit();
+		}
+		try (Edit edit = view.edit()) {
+			edit.node(ref).get().type(cmpType);
+			edit.commit();
+		}
+		try (Edit edit = view.edit()) {
+			edit.node(ref).get().tags().remove(managerTag);
+			edit.commit();
+		}
+		try (Inspect inspect = view.inspect()) {
+			Assert.assertEquals(0, inspect.graph().nodes(ofType(perType)).count());
+			Assert.assertEquals(1, inspect.graph().nodes(ofType(cmpType)).count());
+			Assert.assertEquals(0, inspect.graph().nodes(withTag(managerTag)).count());
+		}
+	}
+
 	@Test
 	public void testEmptyCommit() {
 		Builder mvBuilder = builder(SType.FILE);
@@ -824,6 +1049,144 @@ public class GraphTest {
 				);
 	}
 
+	@Test
+	public void testIndexedOrdering() {
+		int count = 500;
+		runTest(
+				edit -> {
+					Random r = new Random(0L);
+					for (int i = 0; i < count; i++) {
+						Node node = edit.createNode(i % 3 == 0 ? "Person" : "Company");
+						// leave some nodes without a value, and produce plenty of ties
+						if (i % 7 != 0) node.attrs().integer("index", r.nextInt(50));
+					}
+				},
+				inspect -> {
+					Graph graph = inspect.graph();
+					for (ValueOrder valueOrder : new ValueOrder[] {
+							Value.Type.INTEGER.order(true, false),
+							Value.Type.INTEGER.order(false, false),
+							Value.Type.INTEGER.order(true, true),
+							Value.Type.INTEGER.order(false, true),
+						}) {
+						Order order = Order.byAttr("index", valueOrder);
+						Assert.assertNotNull(inspect.indices.nodesInOrder(new Resolver(graph), NodeSequence.empty, order));
+						for (Selector selector : new Selector[] { Selector.any(), ofType("Person") }) {
+							List<Node> expected = graph.nodes(selector).toList();
+							expected.sort(order.comparator(inspect));
+							NodeCursor cursor = graph.nodes(selector).order(order);
+							Assert.assertEquals(expected, cursor.toList());
+							// short windows are found by probing the selection, longer ones materialize it
+							Assert.assertEquals(expected.subList(0, 5), cursor.limit(5).toList());
+							Assert.assertEquals(expected.subList(40, 60), cursor.skip(40).limit(20).toList());
+							Assert.assertEquals(20, cursor.skip(40).limit(20).count());
+							Assert.assertEquals(expected.subList(expected.size() - 5, expected.size()), cursor.skip(expected.size() - 5).limit(20).toList());
+						}
+					}
+				},
+				id1,
+				stdViewer1
+				);
+	}
+
+	@Test
+	public void testBulk() {
+		int spokeCount = 1000;
+		Builder mvBuilder = builder(SType.OFF_HEAP);
+		View view = buildView(mvBuilder, id1, stdViewer1);
+		List<PartRef> refs = new ArrayList<>();
+		Observation obs = view.observe(Selector.withTag(managerTag), refs::add);
+		try (Edit edit = view.edit()) {
+			Bulk bulk = edit.bulk();
+			bulk.reserve(spokeCount + 1, spokeCount);
+			Node cmp = bulk.createNode(cmpType);
+			cmp.attrs().string("name", "Dashi");
+			for (int i = 0; i < spokeCount; i++) {
+				Node emp = bulk.createNode(empType);
+				emp.attrs().string("name", "Employee " + i);
+				emp.attrs().integer("index", i);
+				if (i % 10 == 0) emp.tags().add(managerTag);
+				bulk.createEdge(emp, cmp, iebType);
+			}
+			// ids are not reserved for these
+			bulk.createNode(perType).attrs().integer("index", -1);
+			edit.createNode(perType).attrs().integer("index", -2);
+			Assert.assertEquals(2 * spokeCount + 3, bulk.pendingCount());
+			// querying flushes the bulk
+			Assert.assertEquals(spokeCount, edit.graph().edgesTo(cmp).count());
+			Assert.assertEquals(0, bulk.pendingCount());
+			// flushed parts are modified and deleted as usual
+			edit.graph().nodes(withValue("index", Value.ofInteger(-2))).unique().delete();
+			cmp.attrs().integer("count", spokeCount);
+			edit.commit();
+		}
+		obs.deliver();
+		// the deleted part was not tagged, so is not reported
+		Assert.assertEquals(spokeCount / 10, refs.size());
+		try (Inspect inspect = view.inspect()) {
+			Graph graph = inspect.graph();
+			Node cmp = graph.nodes(ofType(cmpType)).unique();
+			Assert.assertEquals(spokeCount, cmp.attrs().integer("count"));
+			Assert.assertEquals(spokeCount, graph.edgesTo(cmp).count());
+			Assert.assertEquals(spokeCount / 10, graph.nodes(Selector.withTag(managerTag)).count());
+			Assert.assertEquals(1, graph.nodes(ofType(perType)).count());
+			Assert.assertEquals(spokeCount + 2, graph.nodes(Selector.any()).count());
+			for (int i = 0; i < spokeCount; i += 7) {
+				Node emp = graph.nodes(withValue("index", Value.ofInteger(i))).unique();
+				Assert.assertEquals("Employee " + i, emp.attrs().string("name"));
+				Assert.assertEquals(cmp, graph.edgesFrom(emp).cursor().unique().target());
+				Assert.assertEquals(1, graph.edgesFrom(emp).withTarget(cmp).count());
+			}
+		}
+	}
+
+	@Test
+	public void testSelectionPlanning() {
+		int count = 600;
+		runTest(
+				edit -> {
+					for (int i = 0; i < count; i++) {
+						Node node = edit.createNode(i % 100 == 0 ? "Company" : "Person");
+						node.attrs().integer("index", i % 3);
+						node.attrs().string("label", "Node " + (i % 7)); // not declared, so not indexed
+						if (i % 2 == 0) node.tags().add(managerTag);
+					}
+				},
+				inspect -> {
+					Graph graph = inspect.graph();
+					Resolver resolver = new Resolver(graph);
+					// estimates are exact for indexed selectors
+					Assert.assertEquals(count / 100, ofType(cmpType).estimateNodes(resolver));
+					Assert.assertEquals(count / 2, withTag(managerTag).estimateNodes(resolver));
+					Assert.assertEquals(count / 3, withValue("index", Value.ofInteger(1)).estimateNodes(resolver));
+					Assert.assertEquals(0, withValue("index", Value.ofInteger(3)).estimateNodes(resolver));
+					// unindexed selectors must scan
+					Assert.assertEquals(count, withValue("label", Value.ofString("Node 1")).estimateNodes(resolver));
+					Assert.assertEquals(count / 100, ofType(cmpType).and(withTag(managerTag)).estimateNodes(resolver));
+					// both probed and merged conjunctions agree with matching
+					Selector[] selectors = {
+							ofType(cmpType).and(withValue("label", Value.ofString("Node 1"))),
+							withValue("label", Value.ofString("Node 1")).and(ofType(cmpType)),
+							withTag(managerTag).and(withValue("index", Value.ofInteger(1))),
+							ofType(perType).and(withTag(managerTag)).and(withValue("index", Value.ofInteger(2))),
+							// probed values are coerced as they are by the index
+							ofType(cmpType).and(withValue("index", Value.ofString("1"))),
+					};
+					for (Selector selector : selectors) {
+						List<Node> expected = graph.nodes(Selector.any()).stream().filter(n -> n.matches(selector)).collect(Collectors.toList());
+						Assert.assertFalse(expected.isEmpty());
+						Assert.assertEquals(expected, graph.nodes(selector).toList());
+					}
+					// defaulted attributes are matched by every part, so are not probed
+					Set<Node> defaulted = graph.nodes(withAttr("defaulted")).stream().collect(toSet());
+					List<Node> expected = graph.nodes(ofType(cmpType)).stream().filter(defaulted::contains).collect(Collectors.toList());
+					Assert.assertEquals(expected, graph.nodes(ofType(cmpType).and(withAttr("defaulted"))).toList());
+				},
+				id1,
+				stdViewer1
+				);
+	}
+
 	@Test
 	public void testItemization() {
 		runTest(edit -> {
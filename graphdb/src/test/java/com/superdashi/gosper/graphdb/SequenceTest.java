@@ -16,9 +16,12 @@
  */
 package com.superdashi.gosper.graphdb;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -51,6 +54,34 @@ public class SequenceTest {
 		checkMatch(it, 0,2,3,4,6,8,9,10,12);
 	}
 
+	@Test
+	public void testNodeAnd() {
+		int[] threes = IntStream.range(0, 1000).map(i -> i * 3).toArray();
+		NodeSequence threesSeq = () -> NodeSequence.sortedIterator(threes, threes.length);
+		NodeSequence sevensSeq = () -> IntStream.range(0, 500).map(i -> i * 7).iterator();
+		NodeSequence sparseSeq = () -> NodeSequence.sortedIterator(new int[] {0, 5, 21, 1050, 2100, 2999}, 6);
+		Assert.assertArrayEquals(IntStream.range(0, 143).map(i -> i * 21).toArray(), threesSeq.and(sevensSeq).stream().toArray());
+		Assert.assertArrayEquals(new int[] {0, 21, 1050, 2100}, threesSeq.and(sevensSeq).and(sparseSeq).stream().toArray());
+		Assert.assertArrayEquals(new int[] {0, 21, 1050, 2100}, sparseSeq.and(sevensSeq.and(threesSeq)).stream().toArray());
+		NodeSequence.Seeker seeker = NodeSequence.seeker(threesSeq.and(sevensSeq).iterator());
+		Assert.assertEquals(42, seeker.advanceTo(22));
+		Assert.assertEquals(63, seeker.advanceTo(21)); // 42 has been consumed
+		Assert.assertEquals(-1, seeker.advanceTo(3000));
+		Assert.assertFalse(seeker.hasNext());
+	}
+
+	@Test
+	public void testEdgeUnion() {
+		List<EdgeSequence> seqs = new ArrayList<>();
+		for (int i = 2; i < 7; i++) {
+			long step = i;
+			seqs.add(() -> LongStream.range(0, 20).map(j -> j * step).iterator());
+		}
+		long[] expected = LongStream.range(2, 7).flatMap(i -> LongStream.range(0, 20).map(j -> j * i)).sorted().distinct().toArray();
+		Assert.assertArrayEquals(expected, EdgeSequence.union(seqs).stream().toArray());
+		Assert.assertArrayEquals(new long[0], EdgeSequence.union(new ArrayList<>()).stream().toArray());
+	}
+
 	private void checkMatch(Iterator<Integer> it, int... ints) {
 		for (int i = 0; i < ints.length; i++) {
 			Assert.assertTrue("element " + i + " present", it.hasNext());
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.graphdb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.superdashi.gosper.framework.Identity;
+import com.superdashi.gosper.framework.Namespace;
+import com.superdashi.gosper.item.Value;
+
+public class StoreTest {
+
+	private static final Identity identity = new Identity(new Namespace("www.example.com"), "app");
+
+	@Test
+	public void testCompact() throws IOException, InterruptedException {
+		Path path = Files.createTempFile("graphdb", ".test");
+		try {
+			Store store = Store.fileStore(path);
+			// chunks are only compacted once they are older than the retention time
+			store.store.setRetentionTime(100);
+			Space space = new Space(store);
+			space.associate(Viewer.createBuilder(identity).addType("Node").addAttribute("index", Value.Type.INTEGER, Value.empty(), false).addAttribute("text", Value.Type.STRING, Value.empty(), false).build());
+			space.open();
+			View view = space.view(identity);
+
+			PartRef ref;
+			try (Edit edit = view.edit()) {
+				ref = edit.createNode("Node").ref();
+				edit.commit();
+			}
+			for (int i = 0; i < 500; i++) {
+				try (Edit edit = view.edit()) {
+					edit.node(ref).get().attrs().integer("index", i);
+					edit.commit();
+				}
+			}
+
+			// deleting most nodes leaves the store sparse
+			try (Edit edit = view.edit()) {
+				for (int i = 0; i < 2000; i++) {
+					edit.createNode("Node").attrs().string("text", "some text that is not easily compressed " + Integer.toHexString(i * 0x9e3779b9));
+				}
+				edit.commit();
+			}
+			try (Edit edit = view.edit()) {
+				edit.graph().nodes().stream().filter(n -> !n.ref().equals(ref)).collect(Collectors.toList()).forEach(Node::delete);
+				edit.commit();
+			}
+			Thread.sleep(200L);
+			int fillRate = store.fillRate();
+			long size = Files.size(path);
+
+			Store.CompactionStats stats = store.compact();
+			Assert.assertEquals(1, stats.compactions());
+			Assert.assertTrue(stats.bytesWritten() > 0L);
+			Assert.assertTrue(stats.fillRate() > fillRate);
+			Assert.assertTrue(stats.bytesReclaimed() > 0L);
+			Assert.assertTrue(Files.size(path) < size);
+
+			// compaction doesn't disturb the data
+			try (Inspect inspect = view.inspect()) {
+				Assert.assertEquals(499, inspect.node(ref).get().attrs().integer("index"));
+			}
+
+			// background compaction runs while editing
+			List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+			store.scheduleCompaction(Store.DEFAULT_TARGET_FILL_RATE, 64 * 1024L, 1, TimeUnit.MILLISECONDS, failures::add);
+			for (int i = 0; i < 100; i++) {
+				try (Edit edit = view.edit()) {
+					edit.node(ref).get().attrs().integer("index", i);
+					edit.commit();
+				}
+			}
+			for (int i = 0; i < 100 && store.compactionStats().compactions() < 2; i++) {
+				Thread.sleep(10L);
+			}
+			store.cancelCompaction();
+			Assert.assertTrue(store.compactionStats().compactions() >= 2);
+			Assert.assertTrue(failures.isEmpty());
+			try (Inspect inspect = view.inspect()) {
+				Assert.assertEquals(99, inspect.node(ref).get().attrs().integer("index"));
+			}
+
+			space.close();
+			store.close();
+			Assert.assertTrue(store.store.isClosed());
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+}
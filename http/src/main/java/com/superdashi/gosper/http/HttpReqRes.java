@@ -16,6 +16,8 @@
  */
 package com.superdashi.gosper.http;
 
+import com.tomgibara.streams.ReadStream;
+
 public interface HttpReqRes {
 
 	HttpRequest request();
@@ -26,6 +28,9 @@ public interface HttpReqRes {
 
 	void respondText(int statusCode, String mimeType, String content);
 
+	// the content is sent without buffering, a negative length indicates that it is unknown
+	void respondStream(int statusCode, String mimeType, ReadStream content, long length);
+
 	void respondNotFound();
 
 	void respondOkay();
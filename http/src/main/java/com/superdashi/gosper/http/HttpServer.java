@@ -17,16 +17,19 @@
 package com.superdashi.gosper.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.tomgibara.fundament.Consumer;
 import com.tomgibara.streams.ReadStream;
@@ -40,6 +43,8 @@ import fi.iki.elonen.NanoHTTPD.IHTTPSession;
 import fi.iki.elonen.NanoHTTPD.Response;
 import fi.iki.elonen.NanoHTTPD.Response.IStatus;
 
+// connections are handled by a bounded pool of workers, and are kept alive between requests until idle
+// handlers are selected by the longest matching path prefix
 //TODO what to do about non-standard header capitalization?
 public final class HttpServer {
 
@@ -47,35 +52,43 @@ public final class HttpServer {
 	static final Status OK = new Status(200, "OK");
 	static final Status NOT_FOUND = new Status(404, "Not found");
 
+	private static final int DEFAULT_WORKER_THREADS = 4;
+	// connections waiting beyond this number are refused
+	private static final int WORKER_QUEUE_SIZE = 32;
+	// the time in milliseconds after which an idle connection is closed
+	private static final int KEEP_ALIVE_TIMEOUT = NanoHTTPD.SOCKET_READ_TIMEOUT;
+	// unread request content up to this size is skipped so that the connection may be kept alive
+	private static final long DRAIN_LIMIT = 64 * 1024L;
+
 	private final NanoHTTPD httpd;
-	private final Map<String, Consumer<ReqRes>> handlers = new HashMap<>();
-	private ExecutorService executor = null;
+	private final int workerThreads;
+	private final PathTrie<Consumer<ReqRes>> handlers = new PathTrie<>();
+	private ThreadPoolExecutor workers = null;
 
 	public HttpServer(int port) {
+		this(port, DEFAULT_WORKER_THREADS);
+	}
+
+	public HttpServer(int port, int workerThreads) {
+		if (workerThreads < 1) throw new IllegalArgumentException("non-positive workerThreads");
+		this.workerThreads = workerThreads;
 		httpd = new NanoHTTPD(port) {
 			@Override
 			public Response serve(IHTTPSession session) {
-				String uri = session.getUri();
 				// identify the consumer
-				Consumer<ReqRes> consumer = null;
-				int length = 0;
-				//TODO use something more optimal - eg. a trie
-				for (Entry<String,Consumer<ReqRes>> entry : handlers.entrySet()) {
-					String prefix = entry.getKey();
-					if (uri.startsWith(prefix) && prefix.length() > length) {
-						consumer = entry.getValue();
-						length = prefix.length();
-					}
-				}
+				PathTrie.Match<Consumer<ReqRes>> match = handlers.longestPrefix(session.getUri());
 				SessionReqRes reqres = new SessionReqRes(session);
-				if (consumer != null) {
-					reqres.trimPath(length - 1);
-					consumer.consume(reqres);
+				if (match != null) {
+					reqres.trimPath(match.length - 1);
+					match.value.consume(reqres);
 				}
 				if (reqres.response == null) {
 					reqres.respondNotFound();
 				}
-				return reqres.response.response;
+				Response response = reqres.response.response;
+				// unread content would be read as the next request on the connection
+				if (!reqres.request.content.skipRemaining(DRAIN_LIMIT)) response.closeConnection(true);
+				return response;
 			}
 		};
 		httpd.setAsyncRunner(new Runner());
@@ -98,13 +111,19 @@ public final class HttpServer {
 		handlers.remove(uriPrefix);
 	}
 
-	public void start(ExecutorService executor) {
-		if (executor == null) throw new IllegalArgumentException("null executor");
+	public void start() {
 		if (started()) throw new IllegalStateException("started");
-		this.executor = executor;
+		workers = new ThreadPoolExecutor(workerThreads, workerThreads, KEEP_ALIVE_TIMEOUT, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE), r -> {
+			Thread thread = new Thread(r, "gosper-http-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		workers.allowCoreThreadTimeOut(true);
 		try {
-			httpd.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+			httpd.start(KEEP_ALIVE_TIMEOUT, false);
 		} catch (RuntimeException | IOException e) {
+			workers.shutdownNow();
+			workers = null;
 			throw new RuntimeException("failed to start data server", e);
 		}
 	}
@@ -112,11 +131,12 @@ public final class HttpServer {
 	public void stop() {
 		if (!started()) throw new IllegalStateException("stopped");
 		httpd.stop();
-		this.executor = null;
+		workers.shutdownNow();
+		workers = null;
 	}
 
 	private boolean started() {
-		return executor != null;
+		return workers != null;
 	}
 
 	static class Status implements IStatus {
@@ -193,6 +213,19 @@ public final class HttpServer {
 			response = new SessionResponse(NanoHTTPD.newFixedLengthResponse(new Status(statusCode, null), mimeType, content));
 		}
 
+		@Override
+		public void respondStream(int statusCode, String mimeType, ReadStream content, long length) {
+			if (mimeType == null) throw new IllegalArgumentException("null mimeType");
+			if (content == null) throw new IllegalArgumentException("null content");
+			Status status = new Status(statusCode, null);
+			InputStream in = content.asInputStream();
+			// the stream is closed once the response has been sent
+			response = new SessionResponse(length < 0L ?
+					NanoHTTPD.newChunkedResponse(status, mimeType, in) :
+					NanoHTTPD.newFixedLengthResponse(status, mimeType, in, length)
+					);
+		}
+
 		void respond(Status status) {
 			response = new SessionResponse(NanoHTTPD.newFixedLengthResponse(status, "text/plain", status.message));
 		}
@@ -202,11 +235,21 @@ public final class HttpServer {
 	private static final class SessionRequest implements HttpRequest {
 
 		private final IHTTPSession session;
+		private final ContentStream content;
 		private String path;
 
 		SessionRequest(IHTTPSession session) {
 			this.session = session;
 			this.path = session.getUri();
+			// without a length there can be no content, since chunked requests are not supported
+			String length = session.getHeaders().get("content-length");
+			long contentLength;
+			try {
+				contentLength = length == null ? 0L : Math.max(Long.parseLong(length.trim()), 0L);
+			} catch (NumberFormatException e) {
+				contentLength = 0L;
+			}
+			this.content = new ContentStream(session.getInputStream(), contentLength);
 		}
 
 		@Override
@@ -283,9 +326,10 @@ public final class HttpServer {
 			throw new UnsupportedOperationException();
 		}
 
+		// the content is streamed directly from the connection, it is not buffered
 		@Override
 		public ReadStream contentAsStream() {
-			return Streams.streamInput(session.getInputStream());
+			return Streams.streamInput(content);
 		}
 
 		 void trimPath(int chars) {
@@ -294,6 +338,71 @@ public final class HttpServer {
 
 	}
 
+	// limits reading to the content of a single request, without closing the connection
+	private static final class ContentStream extends InputStream {
+
+		private final InputStream in;
+		private long remaining;
+
+		ContentStream(InputStream in, long length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining == 0L) return -1;
+			int b = in.read();
+			if (b == -1) {
+				remaining = 0L;
+			} else {
+				remaining --;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (remaining == 0L) return -1;
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1) {
+				remaining = 0L;
+			} else {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+
+		@Override
+		public void close() {
+			// the connection may be reused
+		}
+
+		// true if all of the content has been consumed
+		boolean skipRemaining(long limit) {
+			if (remaining > limit) return false;
+			try {
+				while (remaining > 0L) {
+					long skipped = in.skip(remaining);
+					if (skipped <= 0L) {
+						if (in.read() == -1) return false;
+						skipped = 1L;
+					}
+					remaining -= skipped;
+				}
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+
 	private static final class SessionResponse implements HttpResponse {
 
 		private final Response response;
@@ -312,18 +421,23 @@ public final class HttpServer {
 			for (Future<?> future : futures.values()) {
 				future.cancel(true);
 			}
+			futures.clear();
 		}
 
 		@Override
 		synchronized public void closed(ClientHandler code) {
-			Future<?> future = futures.remove(code);
-			if (future != null) future.cancel(true);
+			// called by the handler as it completes
+			futures.remove(code);
 		}
 
 		@Override
 		synchronized public void exec(ClientHandler code) {
-			Future<?> future = executor.submit(code);
-			futures.put(code, future);
+			try {
+				futures.put(code, workers.submit(code));
+			} catch (RejectedExecutionException e) {
+				// too many connections
+				code.close();
+			}
 		}
 
 	}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.http;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// maps path prefixes (that begin and end with '/') to values, one node per path segment
+// a prefix matches any path that starts with it, the longest matching prefix is found in a single pass over the path
+final class PathTrie<V> {
+
+	private final Node<V> root = new Node<>();
+
+	void put(String prefix, V value) {
+		Node<V> node = root;
+		for (int i = 1, j; (j = prefix.indexOf('/', i)) != -1; i = j + 1) {
+			node = node.children.computeIfAbsent(prefix.substring(i, j), s -> new Node<>());
+		}
+		node.value = value;
+	}
+
+	void remove(String prefix) {
+		Node<V> node = root;
+		for (int i = 1, j; (j = prefix.indexOf('/', i)) != -1; i = j + 1) {
+			node = node.children.get(prefix.substring(i, j));
+			if (node == null) return;
+		}
+		node.value = null;
+	}
+
+	// null if no prefix matches
+	Match<V> longestPrefix(String path) {
+		if (!path.startsWith("/")) return null;
+		Node<V> node = root;
+		Match<V> match = node.value == null ? null : new Match<>(node.value, 1);
+		for (int i = 1, j; (j = path.indexOf('/', i)) != -1; i = j + 1) {
+			node = node.children.get(path.substring(i, j));
+			if (node == null) break;
+			if (node.value != null) match = new Match<>(node.value, j + 1);
+		}
+		return match;
+	}
+
+	static final class Match<V> {
+
+		final V value;
+		final int length; // the length of the matched prefix
+
+		private Match(V value, int length) {
+			this.value = value;
+			this.length = length;
+		}
+	}
+
+	private static final class Node<V> {
+
+		final Map<String, Node<V>> children = new HashMap<>();
+		V value = null;
+
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpServerTest {
+
+	private HttpServer server;
+	private int port;
+
+	@Before
+	public void startServer() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		server = new HttpServer(port);
+		server.setHandler("/echo", HttpServerTest::echo);
+		server.setHandler("/ignore", r -> r.respondOkay());
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		try (Socket socket = new Socket("localhost", port)) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+			// unread content is drained so that the next request can be read
+			send(out, "POST /ignore/ HTTP/1.1\r\nHost: localhost\r\nContent-Length: 10\r\n\r\n0123456789");
+			send(out, "POST /echo/ HTTP/1.1\r\nHost: localhost\r\nContent-Length: 3\r\n\r\nabc");
+			Response first = new Response(in);
+			Assert.assertEquals(200, first.status);
+			Assert.assertNotEquals("close", first.headers.get("connection"));
+			Response second = new Response(in);
+			Assert.assertEquals(200, second.status);
+			Assert.assertEquals("abc", second.body);
+		}
+	}
+
+	@Test
+	public void testCloseAboveDrainLimit() throws IOException {
+		try (Socket socket = new Socket("localhost", port)) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+			// too much content to skip, so the connection is closed rather than drained
+			send(out, "POST /ignore/ HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100000\r\n\r\n");
+			out.write(new byte[1024]);
+			out.flush();
+			Response response = new Response(in);
+			Assert.assertEquals(200, response.status);
+			Assert.assertEquals("close", response.headers.get("connection"));
+			Assert.assertEquals(-1, in.read());
+		}
+	}
+
+	// responds with the request content, read until the end of the stream
+	private static void echo(HttpServer.ReqRes reqres) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = reqres.request().contentAsStream().asInputStream()) {
+			for (int b = in.read(); b != -1; b = in.read()) {
+				bytes.write(b);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		reqres.respondText(200, "text/plain", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private static void send(OutputStream out, String request) throws IOException {
+		out.write(request.getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+
+	// a fixed length response read from a connection
+	private static final class Response {
+
+		final int status;
+		final Map<String, String> headers = new HashMap<>();
+		final String body;
+
+		Response(InputStream in) throws IOException {
+			String statusLine = line(in);
+			status = Integer.parseInt(statusLine.split(" ")[1]);
+			for (String line = line(in); !line.isEmpty(); line = line(in)) {
+				int i = line.indexOf(':');
+				headers.put(line.substring(0, i).trim().toLowerCase(), line.substring(i + 1).trim());
+			}
+			byte[] bytes = new byte[Integer.parseInt(headers.get("content-length"))];
+			for (int i = 0; i < bytes.length; i++) {
+				int b = in.read();
+				if (b == -1) throw new IOException("truncated body");
+				bytes[i] = (byte) b;
+			}
+			body = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private static String line(InputStream in) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			while (true) {
+				int b = in.read();
+				if (b == -1) throw new IOException("connection closed");
+				if (b == '\n') break;
+				if (b != '\r') bytes.write(b);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathTrieTest {
+
+	@Test
+	public void testLongestPrefix() {
+		PathTrie<String> trie = new PathTrie<>();
+		Assert.assertNull(trie.longestPrefix("/a/"));
+		trie.put("/a/", "a");
+		trie.put("/a/b/c/", "c");
+
+		checkMatch(trie, "/a/", "a", 3);
+		checkMatch(trie, "/a/x", "a", 3);
+		checkMatch(trie, "/a/b/", "a", 3);
+		checkMatch(trie, "/a/b/c/d", "c", 7);
+		// unknown segments end the walk
+		checkMatch(trie, "/a/x/c/", "a", 3);
+		// a segment must be terminated to match
+		checkMatch(trie, "/a/b/c", "a", 3);
+		Assert.assertNull(trie.longestPrefix("/a"));
+		Assert.assertNull(trie.longestPrefix("/ab/"));
+		Assert.assertNull(trie.longestPrefix("a/"));
+		Assert.assertNull(trie.longestPrefix(""));
+
+		// the root matches every path
+		trie.put("/", "root");
+		checkMatch(trie, "/", "root", 1);
+		checkMatch(trie, "/a", "root", 1);
+		checkMatch(trie, "/x/y/", "root", 1);
+		checkMatch(trie, "/a/b/", "a", 3);
+		Assert.assertNull(trie.longestPrefix("x/"));
+	}
+
+	@Test
+	public void testRemove() {
+		PathTrie<String> trie = new PathTrie<>();
+		trie.put("/", "root");
+		trie.put("/a/", "a");
+		trie.put("/a/b/", "b");
+		trie.put("/a/b/", "B");
+		checkMatch(trie, "/a/b/", "B", 5);
+
+		trie.remove("/a/");
+		checkMatch(trie, "/a/b/", "B", 5);
+		checkMatch(trie, "/a/c/", "root", 1);
+		trie.remove("/a/b/");
+		checkMatch(trie, "/a/b/", "root", 1);
+		// removing an unknown prefix has no effect
+		trie.remove("/x/y/");
+		trie.remove("/");
+		Assert.assertNull(trie.longestPrefix("/a/b/"));
+	}
+
+	private static void checkMatch(PathTrie<String> trie, String path, String value, int length) {
+		PathTrie.Match<String> match = trie.longestPrefix(path);
+		Assert.assertNotNull(match);
+		Assert.assertEquals(value, match.value);
+		Assert.assertEquals(length, match.length);
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+// records entries to a file, accumulating the entries of each batch into a single write
+// the file is rotated by size and/or age, closed segments may be compressed in the background
+// and the oldest segments are deleted to keep the total size within a limit
+// a failure to compress a segment is reported by the next flush, the segment is left uncompressed
+public final class FileLogRecorder implements LogRecorder, Closeable {
+
+	private static final String SUFFIX = ".log";
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final String TIMESTAMP_FORMAT = "yyyyMMdd-HHmmss-SSS";
+	// matches the timestamp of a rotated segment
+	private static final String TIMESTAMP_REGEX = "\\d{8}-\\d{6}-\\d{3}";
+	// a batch is written early if it grows beyond this many characters
+	private static final int BUFFER_LIMIT = 64 * 1024;
+	private static final long COMPRESSION_TIMEOUT = 10000L;
+
+	public static Builder newBuilder(Path directory, String name) {
+		if (directory == null) throw new IllegalArgumentException("null directory");
+		if (name == null) throw new IllegalArgumentException("null name");
+		if (name.isEmpty()) throw new IllegalArgumentException("empty name");
+		return new Builder(directory, name);
+	}
+
+	private final Path directory;
+	private final String name;
+	private final Path path; // the active segment
+	private final Pattern segmentName; // matches the names of rotated segments, compressed or not
+	private final long segmentSize;
+	private final long segmentDuration;
+	private final boolean compress;
+	private final long maxTotalSize;
+	private final LogFormatter formatter;
+
+	private final StringBuilder sb = new StringBuilder();
+	private final LogAppender<StringBuilder> appender = LogAppender.over(sb);
+	private final ExecutorService compressor;
+	// segments awaiting compression, guarded by this
+	private final Set<Path> compressing = new HashSet<>();
+	private volatile IOException compressionFailure = null;
+
+	private FileChannel channel = null;
+	private long size = 0L; // size of the active segment
+	private long opened = 0L; // time at which the active segment was started
+	private long rotated = 0L; // time used to name the last rotated segment
+	private boolean closed = false;
+
+	private FileLogRecorder(Builder builder) {
+		directory = builder.directory;
+		name = builder.name;
+		path = directory.resolve(name + SUFFIX);
+		segmentName = Pattern.compile(Pattern.quote(name + "-") + TIMESTAMP_REGEX + Pattern.quote(SUFFIX) + "(" + Pattern.quote(GZIP_SUFFIX) + ")?");
+		segmentSize = builder.segmentSize;
+		segmentDuration = builder.segmentDuration;
+		compress = builder.compress;
+		maxTotalSize = builder.maxTotalSize;
+		formatter = builder.formatter;
+		compressor = compress ? Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "gosper-log-compression");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+	}
+
+	// accessors
+
+	public Path path() {
+		return path;
+	}
+
+	// recorder methods
+
+	@Override
+	public void record(LogEntry entry) throws IOException {
+		formatter.format(appender, entry);
+		if (sb.length() >= BUFFER_LIMIT) flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		// entries recorded after closing are discarded
+		if (closed) return;
+		reportFailure();
+		if (sb.length() == 0) return;
+		ByteBuffer buffer = StandardCharsets.UTF_8.encode(sb.toString());
+		sb.setLength(0);
+		long now = System.currentTimeMillis();
+		if (channel == null) {
+			open(now);
+		} else if (size > 0L && (size + buffer.remaining() > segmentSize || now - opened >= segmentDuration)) {
+			rotate(now);
+		}
+		while (buffer.hasRemaining()) {
+			size += channel.write(buffer);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		try {
+			flush();
+		} finally {
+			closed = true;
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+			if (compressor != null) {
+				compressor.shutdown();
+				try {
+					compressor.awaitTermination(COMPRESSION_TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		reportFailure();
+	}
+
+	// private helper methods
+
+	private void open(long now) throws IOException {
+		Files.createDirectories(directory);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		size = channel.size();
+		// an existing file is treated as having been started now
+		opened = now;
+	}
+
+	private void rotate(long now) throws IOException {
+		channel.close();
+		channel = null;
+		// segment names must be unique and ordered, even if rotations occur within a millisecond
+		rotated = Math.max(now, rotated + 1L);
+		Path segment = directory.resolve(name + "-" + new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date(rotated)) + SUFFIX);
+		Files.move(path, segment);
+		if (compress) {
+			synchronized (this) {
+				compressing.add(segment);
+			}
+			compressor.execute(() -> {
+				try {
+					compress(segment);
+				} catch (IOException e) {
+					compressionFailure = e;
+				} finally {
+					synchronized (this) {
+						compressing.remove(segment);
+					}
+				}
+				try {
+					trim();
+				} catch (IOException e) {
+					compressionFailure = e;
+				}
+			});
+		} else {
+			trim();
+		}
+		open(now);
+	}
+
+	private static void compress(Path segment) throws IOException {
+		Path compressed = segment.resolveSibling(segment.getFileName() + GZIP_SUFFIX);
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+			Files.copy(segment, out);
+		} catch (IOException e) {
+			// the segment is retained uncompressed
+			Files.deleteIfExists(compressed);
+			throw e;
+		}
+		Files.delete(segment);
+	}
+
+	private void reportFailure() throws IOException {
+		IOException failure = compressionFailure;
+		if (failure == null) return;
+		compressionFailure = null;
+		throw failure;
+	}
+
+	// deletes the oldest closed segments until the total size is within the limit
+	// room is always reserved for a full active segment
+	private synchronized void trim() throws IOException {
+		if (maxTotalSize == Long.MAX_VALUE) return;
+		List<Path> segments = new ArrayList<>();
+		// the segments of other recorders may share a prefix with this name
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, p -> segmentName.matcher(p.getFileName().toString()).matches())) {
+			stream.forEach(segments::add);
+		}
+		// names are timestamped, so they sort chronologically
+		Collections.sort(segments);
+		long limit = Math.max(maxTotalSize - segmentSize, 0L);
+		long total = 0L;
+		for (Path segment : segments) {
+			total += Files.size(segment);
+		}
+		for (Path segment : segments) {
+			if (total <= limit) break;
+			// skip a segment that is being compressed, uncompressed segments are otherwise stale or failed
+			if (compressing.contains(segment)) continue;
+			total -= Files.size(segment);
+			Files.delete(segment);
+		}
+	}
+
+	// inner classes
+
+	public static final class Builder {
+
+		private final Path directory;
+		private final String name;
+		private long segmentSize = 1024 * 1024L;
+		private long segmentDuration = Long.MAX_VALUE;
+		private boolean compress = false;
+		private long maxTotalSize = Long.MAX_VALUE;
+		private LogFormatter formatter = Logging.simpleFormatter;
+
+		private Builder(Path directory, String name) {
+			this.directory = directory;
+			this.name = name;
+		}
+
+		// the size in bytes beyond which the file is rotated
+		public Builder segmentSize(long segmentSize) {
+			if (segmentSize <= 0L) throw new IllegalArgumentException("non-positive segmentSize");
+			this.segmentSize = segmentSize;
+			return this;
+		}
+
+		// the time in milliseconds after which the file is rotated
+		public Builder segmentDuration(long segmentDuration) {
+			if (segmentDuration <= 0L) throw new IllegalArgumentException("non-positive segmentDuration");
+			this.segmentDuration = segmentDuration;
+			return this;
+		}
+
+		// whether rotated segments are gzipped
+		public Builder compress(boolean compress) {
+			this.compress = compress;
+			return this;
+		}
+
+		// the maximum number of bytes occupied by all segments, including the active one
+		// the active segment may exceed the segment size by the size of one batch
+		public Builder maxTotalSize(long maxTotalSize) {
+			if (maxTotalSize <= 0L) throw new IllegalArgumentException("non-positive maxTotalSize");
+			this.maxTotalSize = maxTotalSize;
+			return this;
+		}
+
+		public Builder formatter(LogFormatter formatter) {
+			if (formatter == null) throw new IllegalArgumentException("null formatter");
+			this.formatter = formatter;
+			return this;
+		}
+
+		public FileLogRecorder build() {
+			return new FileLogRecorder(this);
+		}
+	}
+}
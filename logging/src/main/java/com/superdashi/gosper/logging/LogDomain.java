@@ -18,7 +18,9 @@ package com.superdashi.gosper.logging;
 
 import java.io.IOException;
 import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 
@@ -143,6 +145,7 @@ public final class LogDomain {
 	public void processLogEntries() throws InterruptedException {
 		checkWorking();
 		PriorityQueue<LogEntry> entries = new PriorityQueue<>(entryComparator);
+		List<LoggerRef> refs = new ArrayList<>();
 		while (true) {
 			synchronized (work) {
 				while (work.isEmpty() && !workFinishing) {
@@ -153,18 +156,34 @@ public final class LogDomain {
 					work.notifyAll(); // we notify here to communicate finish to stopper
 					return;
 				}
-				work.forEach(ref -> ref.logQueue.removeAll(entries));
+				refs.addAll(work);
 				work.clear(); // we promise to do all the work
 			}
+			// queues are drained without holding the lock, so loggers are never blocked
+			for (LoggerRef ref : refs) {
+				if (ref.logQueue.removeAll(entries)) {
+					// an entry was added but not yet linked, so no notification was made for it
+					synchronized (work) {
+						work.add(ref);
+					}
+				}
+			}
+			refs.clear();
 			while (true) {
 				LogEntry entry = entries.poll();
 				if (entry == null) break;
 				try {
+					// entries resolve lazily, so recorders may record the raw values
 					recorder.record(entry);
 				} catch (RuntimeException | IOException e) {
 					e.printStackTrace();
 				}
 			}
+			try {
+				recorder.flush();
+			} catch (RuntimeException | IOException e) {
+				e.printStackTrace();
+			}
 		}
 	}
 
@@ -30,6 +30,11 @@ public final class LogEntry {
 	int lineNumber;
 	String message;
 	List<String> stacktrace;
+	// retained until resolved, so that formatting is performed off the logging thread
+	Object[] values;
+	Throwable throwable;
+	// links entries in a log queue
+	volatile LogEntry next;
 
 	LogEntry(LogIdentity logger, long id, LogLevel level) {
 		this.logger = logger;
@@ -64,18 +69,31 @@ public final class LogEntry {
 	}
 
 	public String message() {
+		resolve();
 		return message;
 	}
 
 	public List<String> stacktrace() {
+		resolve();
 		return stacktrace;
 	}
 
 	// package scoped methods
 
 	void ensureTimestamp() {
-		if (timestamp == -1L);
-		timestamp = System.currentTimeMillis();
+		if (timestamp == -1L) timestamp = System.currentTimeMillis();
+	}
+
+	// substitutes values into the message and converts any stacktrace
+	void resolve() {
+		if (throwable != null) {
+			stacktrace = Logger.convert(throwable);
+			throwable = null;
+		}
+		if (values != null) {
+			message = Logger.format(message, values);
+			values = null;
+		}
 	}
 
 	// object methods
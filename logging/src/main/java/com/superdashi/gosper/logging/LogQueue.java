@@ -16,45 +16,45 @@
  */
 package com.superdashi.gosper.logging;
 
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+// a bounded queue that is lock-free for producers and supports a single consumer
+// entries are linked through their next field, so adding an entry allocates nothing
+// the initial size is retained for compatibility with policies but is not needed
 class LogQueue {
 
 	// fields
 
 	private final Runnable notifier;
 	private final int maxSize;
-	private LogEntry[] entries;
-	// equality of tail and head indicates either full or empty
-	private int head = 0; // index of oldest entry
-	private int tail = 0; // index where next entry is to be added
-	private long count = 0L; // total number of entries added to this queue
+	// the most recently added entry, exchanged by producers
+	private final AtomicReference<LogEntry> tail;
+	// the most recently removed entry (or the stub), only accessed by the consumer
+	private LogEntry head;
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong count = new AtomicLong(); // total number of entries added to this queue
 
 	// constructors
 
 	LogQueue(Runnable notifier, int initialSize, int maxSize) {
 		this.notifier = notifier;
 		this.maxSize = maxSize;
-		entries = new LogEntry[initialSize];
+		head = new LogEntry(null, -1L, null);
+		tail = new AtomicReference<>(head);
 	}
 
 	// accessors
 
 	int capacity() {
-		synchronized (this) {
-			return entries.length;
-		}
+		return maxSize;
 	}
 
 	int size() {
-		synchronized (this) {
-			if (head == tail) return entries[head] == null ? 0 : entries.length;
-			if (head < tail) return tail - head;
-			return entries.length + tail - head;
-		}
+		return size.get();
 	}
 
 	int maxSize() {
@@ -62,7 +62,7 @@ class LogQueue {
 	}
 
 	long count() {
-		return count;
+		return count.get();
 	}
 
 	// queue access
@@ -70,63 +70,43 @@ class LogQueue {
 	// returns false if overflowed
 	boolean add(LogEntry entry) {
 		if (entry == null) throw new IllegalArgumentException("null entry");
-		boolean wasEmpty;
-		synchronized (this) {
-			count++;
-			if (tail == head && entries[tail] != null) { // we're full
-				int capacity = Math.min(entries.length * 2, maxSize);
-				if (capacity == maxSize) return false; // overflow
-				LogEntry[] newEntries = new LogEntry[capacity];
-				System.arraycopy(entries, head, newEntries, 0, entries.length - head);
-				System.arraycopy(entries, 0, newEntries, entries.length - head, head);
-				head = 0;
-				tail = entries.length;
-				entries = newEntries;
-			}
-			entries[tail] = entry;
-			wasEmpty = head == tail;
-			tail = advance(tail);
+		count.incrementAndGet();
+		int newSize = size.incrementAndGet();
+		if (newSize > maxSize) { // overflow
+			size.decrementAndGet();
+			return false;
 		}
-		// notification made outside of sync block to remove possibility of deadlocks
-		if (wasEmpty) {
+		// publish the entry: it is only visible to the consumer once linked
+		LogEntry previous = tail.getAndSet(entry);
+		previous.next = entry;
+		// notify when the queue becomes non-empty
+		// notification made outside of any lock to remove possibility of deadlocks
+		if (newSize == 1) {
 			notifier.run();
 		}
 		return true;
 	}
 
+	// must only be called by the consumer
 	Optional<LogEntry> remove() {
-		LogEntry entry;
-		synchronized (this) {
-			entry = entries[head];
-			if (entry == null) return Optional.empty(); // underflow
-			entries[head] = null;
-			head = advance(head);
-		}
+		LogEntry entry = head.next;
+		if (entry == null) return Optional.empty(); // underflow, or an entry is yet to be linked
+		head.next = null;
+		head = entry;
+		size.decrementAndGet();
 		return Optional.of(entry);
 	}
 
-	// note, does not guarantee order
-	void removeAll(Collection<LogEntry> target) {
-		synchronized (this) {
-			if (head == tail) {
-				if (entries[head] == null) return; // empty case - do nothing
-				target.addAll(Arrays.asList(entries)); // full case - add everything
-			} else {
-				List<LogEntry> list = Arrays.asList(entries);
-				if (head < tail) { // unified slice case
-					target.addAll(list.subList(head, tail));
-				} else { // split slice case
-					target.addAll(list.subList(head, list.size()));
-					target.addAll(list.subList(0, tail));
-				}
-			}
-			head = tail;
-			Arrays.fill(entries, null);
+	// must only be called by the consumer, returns true if entries remain to be linked
+	boolean removeAll(Collection<LogEntry> target) {
+		int removed = 0;
+		for (LogEntry entry = head.next; entry != null; entry = entry.next) {
+			head.next = null;
+			head = entry;
+			target.add(entry);
+			removed++;
 		}
-	}
-
-	private int advance(int index) {
-		return ++index == entries.length ? 0 : index;
+		return size.addAndGet(-removed) > 0;
 	}
 
 }
@@ -49,4 +49,7 @@ public interface LogRecorder {
 	}
 
 	void record(LogEntry entry) throws IOException;
+
+	// called after each batch of entries has been recorded
+	default void flush() throws IOException { }
 }
@@ -23,6 +23,8 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -42,13 +44,26 @@ public final class Logger {
 
 	private static final Pattern LINE_SPLITTER = Pattern.compile("\\r?\\n");
 
-	private static String valueToString(Object value) {
+	// parsed message templates, bounded in case messages are generated dynamically
+	private static final int SUB_CACHE_LIMIT = 512;
+	private static final Map<String, Sub> subs = new ConcurrentHashMap<>();
+
+	private static Sub sub(String message) {
+		Sub sub = subs.get(message);
+		if (sub == null) {
+			sub = new Sub(message);
+			if (subs.size() < SUB_CACHE_LIMIT) subs.putIfAbsent(message, sub);
+		}
+		return sub;
+	}
+
+	static String valueToString(Object value) {
 		if (value == null) return "null";
 		if (value.getClass().isArray()) return Stores.values(value).toString();
 		return value.toString();
 	}
 
-	private static List<String> convert(Throwable stacktrace) {
+	static List<String> convert(Throwable stacktrace) {
 		if (stacktrace == null) return null;
 		StringWriter sw = new StringWriter();
 		PrintWriter pw = new PrintWriter(sw);
@@ -58,7 +73,14 @@ public final class Logger {
 
 	// method exposed to perform substitution directly
 	static String substitute(String message, Object... values) {
-		return new Sub(message).apply(values);
+		return sub(message).apply(values);
+	}
+
+	// formats the values into the message, or joins them if there is no message
+	static String format(String message, Object... values) {
+		if (values.length == 0) return message;
+		if (message == null) return Arrays.stream(values).map(Logger::valueToString).collect(Collectors.joining(" "));
+		return sub(message).apply(values);
 	}
 
 	private final Logging noLogging = new Logging();
@@ -187,22 +209,15 @@ public final class Logger {
 			return this;
 		}
 
-		//TODO can defer substitution?
+		// substitution and stacktrace conversion are deferred to the thread that processes entries
+		// so values should not be mutated after they are logged
 		public boolean log() {
 			// check if this is already rejected
 			if (this == noLogging) return false;
 			// ensure the entry has a timestamp
 			entry.ensureTimestamp();
-			// convert the stacktrace
-			entry.stacktrace = convert(stacktrace);
-			// substitute values into message if necessary
-			if (values != null && values.length != 0) {
-				if (entry.message == null) {
-					entry.message = Arrays.stream(values).map(Logger::valueToString).collect(Collectors.joining(" "));
-				} else {
-					entry.message = new Sub(entry.message).apply(values);
-				}
-			}
+			entry.throwable = stacktrace;
+			entry.values = values;
 			return logQueue.add(entry);
 		}
 
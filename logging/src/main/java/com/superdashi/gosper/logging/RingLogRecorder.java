@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// records entries in a compact binary form into a fixed size memory-mapped file used as a ring
+// writes to the mapping are retained by the operating system, so the most recent entries survive the JVM crashing
+// identities, message templates and file paths are written once as definitions and referenced by id thereafter
+// ids are never reused within a file, and a definition is rewritten if it is evicted while retained entries use it
+// argument values are stored unformatted, formatting is deferred until the file is decoded
+//
+// layout: a header of magic, version, capacity, oldest record offset (-1 if empty) and write offset
+// followed by the ring, in which every record is prefixed by its length
+// a zero length (or too little space for a length) indicates that the ring wraps to its start
+public final class RingLogRecorder implements LogRecorder, Closeable {
+
+	private static final int MAGIC = 0x474c4f47; // GLOG
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int OFFSET_CAPACITY = 8;
+	private static final int OFFSET_OLDEST = 12;
+	private static final int OFFSET_WRITE = 16;
+
+	public static final int MIN_CAPACITY = 64 * 1024;
+	public static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+	private static final byte TAG_DEFINITION = 1;
+	private static final byte TAG_ENTRY = 2;
+
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_STRING = 1;
+	private static final byte VALUE_INT = 2;
+	private static final byte VALUE_LONG = 3;
+	private static final byte VALUE_FLOAT = 4;
+	private static final byte VALUE_DOUBLE = 5;
+	private static final byte VALUE_TRUE = 6;
+	private static final byte VALUE_FALSE = 7;
+
+	// limits that bound the size of a record well below the minimum capacity
+	private static final int MAX_STRING_LENGTH = 256;
+	private static final int MAX_VALUES = 16;
+	private static final int MAX_STACK_LINES = 16;
+	// the number of strings for which ids are retained
+	private static final int MAX_DEFINITIONS = 4096;
+
+	private static final int NO_ID = -1;
+	// offset of the ids referenced by an entry, relative to its tag
+	private static final int ENTRY_IDS = 1 + 1 + 8 + 8;
+
+	public static RingLogRecorder open(Path path) throws IOException {
+		return open(path, DEFAULT_CAPACITY);
+	}
+
+	// continues an existing ring with the same capacity, otherwise the file is reinitialized
+	public static RingLogRecorder open(Path path, int capacity) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		if (capacity < MIN_CAPACITY) throw new IllegalArgumentException("capacity too small");
+		return new RingLogRecorder(path, capacity);
+	}
+
+	// renders the entries of the ring, oldest first, to the supplied recorder
+	public static void decode(Path path, LogRecorder recorder) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		if (recorder == null) throw new IllegalArgumentException("null recorder");
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0L, channel.size());
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("not a log ring");
+		if (buffer.getInt(4) != VERSION) throw new IOException("unsupported version");
+		int capacity = buffer.getInt(OFFSET_CAPACITY);
+		int oldest = buffer.getInt(OFFSET_OLDEST);
+		int write = buffer.getInt(OFFSET_WRITE);
+		if (!valid(capacity, oldest, write) || buffer.capacity() < HEADER_SIZE + capacity) throw new IOException("corrupt header");
+		ByteBuffer ring = slice(buffer, capacity);
+
+		// definitions may follow the entries that use them
+		Map<Integer, String> definitions = new HashMap<>();
+		walk(ring, oldest, write, (sequence, tag) -> {
+			if (tag == TAG_DEFINITION) {
+				int id = ring.getInt();
+				definitions.put(id, readString(ring));
+			}
+		});
+		walk(ring, oldest, write, (sequence, tag) -> {
+			if (tag == TAG_ENTRY) recorder.record(readEntry(ring, definitions));
+		});
+		recorder.flush();
+	}
+
+	// decodes a ring to standard out: the path of the file is the only argument
+	public static void main(String... args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("usage: RingLogRecorder <path>");
+			System.exit(1);
+		}
+		decode(Paths.get(args[0]), LogRecorder.sysout());
+	}
+
+	private final int capacity;
+	private final MappedByteBuffer buffer;
+	private final ByteBuffer ring;
+	private final ByteBuffer scratch;
+
+	// ids assigned to recently recorded strings
+	private final Map<String, Integer> ids = new HashMap<>();
+	// the strings of all ids that are assigned, defined in the ring, or used by retained entries
+	private final Map<Integer, String> strings = new HashMap<>();
+	// the ids that have a definition retained in the ring
+	private final Set<Integer> defined = new HashSet<>();
+	// the sequence of the last entry to use each id
+	private final Map<Integer, Long> lastUse = new HashMap<>();
+	// ids with definitions evicted while reserving space
+	private final Set<Integer> evicted = new HashSet<>();
+	private int nextId = 0;
+
+	// offsets into the ring
+	private int oldest;
+	private int write;
+	// the number of bytes consumed from the ring, at the write offset and at the oldest record
+	private long sequence = 0L;
+	private long oldestSequence = 0L;
+	private boolean closed = false;
+
+	private RingLogRecorder(Path path, int capacity) throws IOException {
+		this.capacity = capacity;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			boolean resume = channel.size() == HEADER_SIZE + capacity;
+			buffer = channel.map(MapMode.READ_WRITE, 0L, HEADER_SIZE + capacity);
+			resume = resume
+					&& buffer.getInt(0) == MAGIC
+					&& buffer.getInt(4) == VERSION
+					&& buffer.getInt(OFFSET_CAPACITY) == capacity
+					&& valid(capacity, buffer.getInt(OFFSET_OLDEST), buffer.getInt(OFFSET_WRITE));
+			if (resume) {
+				oldest = buffer.getInt(OFFSET_OLDEST);
+				write = buffer.getInt(OFFSET_WRITE);
+			} else {
+				oldest = -1;
+				write = 0;
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(OFFSET_CAPACITY, capacity);
+				buffer.putInt(OFFSET_OLDEST, oldest);
+				buffer.putInt(OFFSET_WRITE, write);
+			}
+		}
+		ring = slice(buffer, capacity);
+		scratch = ByteBuffer.allocate(MIN_CAPACITY / 2);
+		if (oldest != -1) resume();
+	}
+
+	// recorder methods
+
+	@Override
+	public void record(LogEntry entry) throws IOException {
+		if (closed) throw new IOException("closed");
+		// take the raw values from the entry, avoiding any formatting
+		int identityId = id(entry.logger.toString());
+		int templateId = entry.message == null ? NO_ID : id(entry.message);
+		int fileId = entry.filePath == null ? NO_ID : id(entry.filePath);
+		List<String> stacktrace = entry.throwable == null ? entry.stacktrace : Logger.convert(entry.throwable);
+
+		scratch.clear();
+		scratch.putInt(0);
+		scratch.put(TAG_ENTRY);
+		scratch.put((byte) entry.level.ordinal());
+		scratch.putLong(entry.timestamp);
+		scratch.putLong(entry.id);
+		scratch.putInt(identityId);
+		scratch.putInt(templateId);
+		scratch.putInt(fileId);
+		scratch.putInt(entry.lineNumber);
+		Object[] values = entry.values;
+		int valueCount = values == null ? 0 : Math.min(values.length, MAX_VALUES);
+		scratch.put((byte) valueCount);
+		for (int i = 0; i < valueCount; i++) {
+			writeValue(scratch, values[i]);
+		}
+		int lineCount = stacktrace == null ? -1 : Math.min(stacktrace.size(), MAX_STACK_LINES);
+		scratch.put((byte) lineCount);
+		for (int i = 0; i < lineCount; i++) {
+			writeString(scratch, stacktrace.get(i));
+		}
+		scratch.putInt(0, scratch.position());
+		scratch.flip();
+
+		// reserve space for the entry and the definitions that must be written alongside it
+		// reserving space may evict definitions, so repeat until the required definitions are stable
+		int[] required = { identityId, templateId, fileId };
+		Set<Integer> missing = new TreeSet<>();
+		evicted.clear();
+		int length;
+		int start;
+		while (true) {
+			length = scratch.remaining();
+			for (int id : missing) {
+				length += definitionLength(strings.get(id));
+			}
+			if (length > capacity) throw new IOException("record too large");
+			start = reserve(length);
+			int size = missing.size();
+			for (int id : required) {
+				if (id != NO_ID && !defined.contains(id)) missing.add(id);
+			}
+			for (int id : evicted) {
+				if (oldest != -1 && lastUse.getOrDefault(id, -1L) >= oldestSequence) missing.add(id);
+			}
+			if (missing.size() == size) break;
+		}
+		// forget evicted ids that are no longer needed
+		for (int id : evicted) {
+			if (missing.contains(id)) continue;
+			if (oldest == -1 || lastUse.getOrDefault(id, -1L) < oldestSequence) lastUse.remove(id);
+			if (!lastUse.containsKey(id) && !ids.containsKey(strings.get(id))) strings.remove(id);
+		}
+
+		// evictions are committed before the ring is overwritten
+		buffer.putInt(OFFSET_OLDEST, oldest);
+		if (start != write && write + 4 <= capacity) ring.putInt(write, 0);
+		if (start != write) sequence += capacity - write;
+		ring.position(start);
+		for (int id : missing) {
+			String str = strings.get(id);
+			ring.putInt(definitionLength(str));
+			ring.put(TAG_DEFINITION);
+			ring.putInt(id);
+			writeString(ring, str);
+			defined.add(id);
+		}
+		long entrySequence = sequence + ring.position() - start;
+		for (int id : required) {
+			if (id != NO_ID) lastUse.put(id, entrySequence);
+		}
+		ring.put(scratch);
+		if (oldest == -1) {
+			oldest = start;
+			oldestSequence = sequence;
+		}
+		write = start + length;
+		sequence += length;
+		buffer.putInt(OFFSET_WRITE, write);
+		buffer.putInt(OFFSET_OLDEST, oldest);
+	}
+
+	// the mapping is not forced on flush, the operating system retains it if the JVM fails
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		buffer.force();
+	}
+
+	// private helper methods
+
+	// recovers the definitions and their uses from an existing ring
+	private void resume() throws IOException {
+		walk(ring, oldest, write, (sequence, tag) -> {
+			if (tag == TAG_DEFINITION) {
+				int id = ring.getInt();
+				String str = readString(ring);
+				strings.put(id, str);
+				ids.put(str, id);
+				defined.add(id);
+				nextId = Math.max(nextId, id + 1);
+			} else {
+				ring.position(ring.position() + ENTRY_IDS);
+				for (int i = 0; i < 3; i++) {
+					int id = ring.getInt();
+					if (id != NO_ID) lastUse.put(id, sequence);
+				}
+			}
+		});
+		// no ids have been defined before the oldest record
+		sequence = write > oldest ? write - oldest : capacity - oldest + write;
+		oldestSequence = 0L;
+		if (ids.size() > MAX_DEFINITIONS) ids.clear();
+	}
+
+	private int id(String str) {
+		Integer id = ids.get(str);
+		if (id != null) return id;
+		if (ids.size() == MAX_DEFINITIONS) {
+			// ids are not reused, the strings of previous ids are retained while needed
+			for (int old : ids.values()) {
+				if (!defined.contains(old) && !lastUse.containsKey(old)) strings.remove(old);
+			}
+			ids.clear();
+		}
+		id = nextId++;
+		ids.put(str, id);
+		strings.put(id, str);
+		return id;
+	}
+
+	// evicts records to make contiguous room for the given number of bytes, returning where they may be written
+	private int reserve(int length) {
+		int start = write;
+		if (start + length > capacity) {
+			evict(start, capacity);
+			start = 0;
+		}
+		evict(start, start + length);
+		return start;
+	}
+
+	// advances the oldest record until it lies outside the range
+	private void evict(int from, int to) {
+		while (oldest != -1 && oldest >= from && oldest < to) {
+			int length = ring.getInt(oldest);
+			if (ring.get(oldest + 4) == TAG_DEFINITION) {
+				int id = ring.getInt(oldest + 5);
+				defined.remove(id);
+				evicted.add(id);
+			}
+			int next = oldest + length;
+			if (next == write) {
+				oldest = -1;
+			} else {
+				oldest = normalize(ring, next);
+				oldestSequence += oldest == next ? length : length + capacity - next;
+			}
+		}
+	}
+
+	// statics
+
+	private static boolean valid(int capacity, int oldest, int write) {
+		return capacity >= MIN_CAPACITY
+				&& oldest >= -1 && oldest < capacity
+				&& write >= 0 && write <= capacity;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int capacity) {
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(HEADER_SIZE).limit(HEADER_SIZE + capacity);
+		return dup.slice();
+	}
+
+	// moves past any wrap marker
+	private static int normalize(ByteBuffer ring, int position) {
+		return position + 4 > ring.capacity() || ring.getInt(position) == 0 ? 0 : position;
+	}
+
+	// visits the records from oldest to newest, the ring is positioned after the tag of each record
+	private static void walk(ByteBuffer ring, int oldest, int write, Visitor visitor) throws IOException {
+		if (oldest == -1) return;
+		int capacity = ring.capacity();
+		int position = oldest;
+		long sequence = 0L;
+		// bounds the number of records in case the ring is corrupt
+		for (int count = capacity / 5; count > 0; count--) {
+			int length = ring.getInt(position);
+			if (length < 5 || position + length > capacity) throw new IOException("corrupt record at " + position);
+			ring.position(position + 4);
+			byte tag = ring.get();
+			if (tag != TAG_DEFINITION && tag != TAG_ENTRY) throw new IOException("unknown tag " + tag);
+			visitor.visit(sequence, tag);
+			int next = position + length;
+			if (next == write) return;
+			position = normalize(ring, next);
+			sequence += position == next ? length : length + capacity - next;
+		}
+		throw new IOException("unterminated ring");
+	}
+
+	private static int definitionLength(String str) {
+		return 4 + 1 + 4 + 2 + encode(str).length;
+	}
+
+	private static byte[] encode(String str) {
+		if (str.length() > MAX_STRING_LENGTH) str = str.substring(0, MAX_STRING_LENGTH);
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(ByteBuffer buffer, String str) {
+		byte[] bytes = encode(str);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// primitives are stored as such, other values are converted to strings
+	private static void writeValue(ByteBuffer buffer, Object value) {
+		if (value == null) {
+			buffer.put(VALUE_NULL);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			buffer.put(VALUE_INT).putInt(((Number) value).intValue());
+		} else if (value instanceof Long) {
+			buffer.put(VALUE_LONG).putLong((Long) value);
+		} else if (value instanceof Float) {
+			buffer.put(VALUE_FLOAT).putFloat((Float) value);
+		} else if (value instanceof Double) {
+			buffer.put(VALUE_DOUBLE).putDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			buffer.put((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+		} else {
+			buffer.put(VALUE_STRING);
+			writeString(buffer, Logger.valueToString(value));
+		}
+	}
+
+	private static Object readValue(ByteBuffer buffer) throws IOException {
+		byte type = buffer.get();
+		switch (type) {
+		case VALUE_NULL: return null;
+		case VALUE_STRING: return readString(buffer);
+		case VALUE_INT: return buffer.getInt();
+		case VALUE_LONG: return buffer.getLong();
+		case VALUE_FLOAT: return buffer.getFloat();
+		case VALUE_DOUBLE: return buffer.getDouble();
+		case VALUE_TRUE: return true;
+		case VALUE_FALSE: return false;
+		default: throw new IOException("unknown value type " + type);
+		}
+	}
+
+	private static LogEntry readEntry(ByteBuffer buffer, Map<Integer, String> definitions) throws IOException {
+		int ordinal = buffer.get();
+		LogLevel[] levels = LogLevel.values();
+		if (ordinal < 0 || ordinal >= levels.length) throw new IOException("unknown level " + ordinal);
+		long timestamp = buffer.getLong();
+		long id = buffer.getLong();
+		String identity = definition(definitions, buffer.getInt());
+		String template = definition(definitions, buffer.getInt());
+		String filePath = definition(definitions, buffer.getInt());
+		int lineNumber = buffer.getInt();
+		Object[] values = new Object[buffer.get()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readValue(buffer);
+		}
+		int lineCount = buffer.get();
+		List<String> stacktrace = null;
+		if (lineCount >= 0) {
+			stacktrace = new ArrayList<>(lineCount);
+			for (int i = 0; i < lineCount; i++) {
+				stacktrace.add(readString(buffer));
+			}
+			stacktrace = Collections.unmodifiableList(stacktrace);
+		}
+
+		LogEntry entry = new LogEntry(identity == null ? LogIdentity.create("unknown") : LogIdentity.fromString(identity), id, levels[ordinal]);
+		entry.timestamp = timestamp;
+		entry.filePath = filePath;
+		entry.lineNumber = lineNumber;
+		entry.message = template;
+		entry.values = values.length == 0 ? null : values;
+		entry.stacktrace = stacktrace;
+		return entry;
+	}
+
+	private static String definition(Map<Integer, String> definitions, int id) throws IOException {
+		if (id == NO_ID) return null;
+		String str = definitions.get(id);
+		if (str == null) throw new IOException("undefined id " + id);
+		return str;
+	}
+
+	// inner classes
+
+	private interface Visitor {
+
+		void visit(long sequence, byte tag) throws IOException;
+
+	}
+}
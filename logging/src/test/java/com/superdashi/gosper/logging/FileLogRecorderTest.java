@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.logging;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileLogRecorderTest {
+
+	private static final LogIdentity identity = LogIdentity.create("test");
+
+	@Test
+	public void testRotation() throws IOException {
+		Path dir = Files.createTempDirectory("logs");
+		try {
+			FileLogRecorder recorder = FileLogRecorder.newBuilder(dir, "test").segmentSize(1000L).maxTotalSize(5000L).build();
+			for (int i = 0; i < 100; i++) {
+				recorder.record(entry(i));
+				if (i % 5 == 4) recorder.flush();
+			}
+			recorder.close();
+			List<Path> files = list(dir);
+			Assert.assertTrue(files.size() > 2);
+			long total = 0L;
+			for (Path file : files) {
+				total += Files.size(file);
+			}
+			Assert.assertTrue(total <= 5000L);
+			// the most recent entry is in the active file
+			Assert.assertTrue(new String(Files.readAllBytes(recorder.path()), "UTF-8").contains("message 99"));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testCompression() throws IOException {
+		Path dir = Files.createTempDirectory("logs");
+		try {
+			FileLogRecorder recorder = FileLogRecorder.newBuilder(dir, "test").segmentSize(500L).compress(true).build();
+			for (int i = 0; i < 20; i++) {
+				recorder.record(entry(i));
+				recorder.flush();
+			}
+			recorder.close();
+			List<Path> files = list(dir);
+			Assert.assertTrue(files.stream().anyMatch(p -> p.toString().endsWith(".log.gz")));
+			Assert.assertEquals(1, files.stream().filter(p -> p.toString().endsWith(".log")).count());
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testStaleSegments() throws IOException {
+		Path dir = Files.createTempDirectory("logs");
+		try {
+			// an uncompressed segment left by an earlier failure or run
+			Path stale = dir.resolve("test-20180101-000000-000.log");
+			Files.write(stale, new byte[3000]);
+			FileLogRecorder recorder = FileLogRecorder.newBuilder(dir, "test").segmentSize(500L).compress(true).maxTotalSize(2000L).build();
+			for (int i = 0; i < 20; i++) {
+				recorder.record(entry(i));
+				recorder.flush();
+			}
+			recorder.close();
+			Assert.assertFalse(Files.exists(stale));
+			Assert.assertTrue(list(dir).stream().anyMatch(p -> p.toString().endsWith(".log.gz")));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testSharedPrefix() throws IOException {
+		Path dir = Files.createTempDirectory("logs");
+		try {
+			// a segment of another recorder whose name extends this one
+			Path other = dir.resolve("test-x-20180101-000000-000.log");
+			Files.write(other, new byte[3000]);
+			FileLogRecorder recorder = FileLogRecorder.newBuilder(dir, "test").segmentSize(500L).maxTotalSize(2000L).build();
+			for (int i = 0; i < 20; i++) {
+				recorder.record(entry(i));
+				recorder.flush();
+			}
+			recorder.close();
+			Assert.assertTrue(Files.exists(other));
+			// flushing a closed recorder has no effect
+			recorder.flush();
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static LogEntry entry(int i) {
+		LogEntry entry = new LogEntry(identity, i, LogLevel.INFO);
+		entry.ensureTimestamp();
+		entry.message = "message " + i;
+		return entry;
+	}
+
+	private static List<Path> list(Path dir) throws IOException {
+		List<Path> list = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			stream.forEach(list::add);
+		}
+		return list;
+	}
+
+	private static void delete(Path dir) throws IOException {
+		for (Path file : list(dir)) {
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+}
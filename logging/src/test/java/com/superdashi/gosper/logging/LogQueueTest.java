@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.logging;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogQueueTest {
+
+	private static final LogIdentity identity = LogIdentity.create("test");
+
+	@Test
+	public void testBounded() {
+		AtomicInteger notifications = new AtomicInteger();
+		LogQueue queue = new LogQueue(notifications::incrementAndGet, 2, 4);
+		for (int i = 0; i < 4; i++) {
+			Assert.assertTrue(queue.add(new LogEntry(identity, i, LogLevel.INFO)));
+		}
+		Assert.assertFalse(queue.add(new LogEntry(identity, 4, LogLevel.INFO)));
+		Assert.assertEquals(1, notifications.get());
+		Assert.assertEquals(4, queue.size());
+		Assert.assertEquals(5L, queue.count());
+		Assert.assertEquals(0L, queue.remove().get().id());
+		List<LogEntry> list = new ArrayList<>();
+		Assert.assertFalse(queue.removeAll(list));
+		Assert.assertEquals(3, list.size());
+		Assert.assertEquals(0, queue.size());
+		Assert.assertFalse(queue.remove().isPresent());
+		queue.add(new LogEntry(identity, 5, LogLevel.INFO));
+		Assert.assertEquals(2, notifications.get());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		int threadCount = 4;
+		int perThread = 10000;
+		LogQueue queue = new LogQueue(() -> {}, 8, threadCount * perThread);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			int base = t * perThread;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < perThread; i++) {
+					queue.add(new LogEntry(identity, base + i, LogLevel.INFO));
+				}
+			});
+			threads[t].start();
+		}
+		Set<Long> ids = new HashSet<>();
+		List<LogEntry> list = new ArrayList<>();
+		while (ids.size() < threadCount * perThread) {
+			queue.removeAll(list);
+			for (LogEntry entry : list) {
+				Assert.assertTrue(ids.add(entry.id()));
+			}
+			list.clear();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(0, queue.size());
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.logging;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingLogRecorderTest {
+
+	private static final LogIdentity identity = LogIdentity.create("test", "ring");
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Path file = Files.createTempFile("ring", ".log");
+		try {
+			List<String> expected = new ArrayList<>();
+			try (RingLogRecorder recorder = RingLogRecorder.open(file, RingLogRecorder.MIN_CAPACITY)) {
+				LogEntry[] entries = {
+						entry(0, "plain"),
+						entry(1, "values {} {} {} {} {} {}", 1, 2L, 1.5f, 2.5, true, null),
+						entry(2, "object {}", new StringBuilder("sb")),
+						entry(3, null, "joined", 3),
+						entry(4, "failed {}", "badly"),
+				};
+				entries[4].throwable = new IllegalStateException("boom");
+				entries[4].filePath = "/some/file";
+				entries[4].lineNumber = 7;
+				for (LogEntry entry : entries) {
+					recorder.record(entry);
+				}
+				recorder.flush();
+				for (LogEntry entry : entries) {
+					expected.add(entry.toString());
+				}
+			}
+			List<LogEntry> decoded = decode(file);
+			Assert.assertEquals(expected.size(), decoded.size());
+			for (int i = 0; i < decoded.size(); i++) {
+				LogEntry entry = decoded.get(i);
+				Assert.assertEquals(identity, entry.logger());
+				Assert.assertEquals(i, entry.id());
+				if (i < 4) Assert.assertEquals(expected.get(i), entry.toString());
+			}
+			LogEntry failed = decoded.get(4);
+			Assert.assertEquals("failed badly", failed.message());
+			Assert.assertEquals("/some/file", failed.filePath());
+			Assert.assertEquals(7, failed.lineNumber());
+			Assert.assertTrue(failed.stacktrace().get(0).contains("boom"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testWrapping() throws IOException {
+		Path file = Files.createTempFile("ring", ".log");
+		try {
+			int count = 10000;
+			try (RingLogRecorder recorder = RingLogRecorder.open(file, RingLogRecorder.MIN_CAPACITY)) {
+				for (int i = 0; i < count / 2; i++) {
+					recorder.record(entry(i, "message {} of {}", i, count));
+				}
+			}
+			// reopening continues the ring
+			try (RingLogRecorder recorder = RingLogRecorder.open(file, RingLogRecorder.MIN_CAPACITY)) {
+				for (int i = count / 2; i < count; i++) {
+					recorder.record(entry(i, "message {} of {}", i, count));
+				}
+			}
+			List<LogEntry> decoded = decode(file);
+			Assert.assertTrue(decoded.size() > 100);
+			Assert.assertTrue(decoded.size() < count);
+			// the most recent entries are retained in order
+			long id = count - decoded.size();
+			for (LogEntry entry : decoded) {
+				Assert.assertEquals(id, entry.id());
+				Assert.assertEquals("message " + id + " of " + count, entry.message());
+				id++;
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static LogEntry entry(long id, String message, Object... values) {
+		LogEntry entry = new LogEntry(identity, id, LogLevel.INFO);
+		entry.ensureTimestamp();
+		entry.message = message;
+		entry.values = values.length == 0 ? null : values;
+		return entry;
+	}
+
+	private static List<LogEntry> decode(Path file) throws IOException {
+		List<LogEntry> entries = new ArrayList<>();
+		RingLogRecorder.decode(file, entries::add);
+		return entries;
+	}
+}
@@ -396,6 +396,10 @@ public class ActivityContext {
 		return manager.resourceCache.frame(environment, res.uri());
 	}
 
+	void loadEnvImage(Image res, Consumer<Frame> consumer, Consumer<RuntimeException> failure) {
+		manager.resourceCache.frame(environment, res.uri(), consumer, failure);
+	}
+
 	Frame loadResImage(String res) {
 		InputStream stream = getClass().getClassLoader().getResourceAsStream(res);
 		if (stream == null) throw new ResourceException("resource not found: " + res);
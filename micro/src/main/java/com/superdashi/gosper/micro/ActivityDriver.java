@@ -207,6 +207,13 @@ class ActivityDriver {
 	// must have lock and be called via executor
 	boolean checkRedraw() {
 		if (state != State.ACTIVE) return false; // we only draw in an active state
+		FrameClock clock = manager.frameClock();
+		long now = System.currentTimeMillis();
+		if (!clock.ready(now)) {
+			// a frame was pushed too recently, coalesce with any other redraws before the next frame
+			if (display.redrawPending(now)) scheduleRedrawAt(now, clock.nextFrame(now));
+			return false;
+		}
 		return performRedraw();
 	}
 
@@ -463,6 +470,7 @@ class ActivityDriver {
 			recordActivityException(e);
 		} finally {
 			ActivityContext.clearCurrent();
+			context.models().release();
 			context = null;
 			setState(State.CONSTRUCTED);
 		}
@@ -518,7 +526,15 @@ class ActivityDriver {
 
 	private boolean performRedraw() {
 		if (manager.halting()) return false;
+		long start = System.currentTimeMillis();
 		boolean result = display.render(manager.screen);
+		if (result) {
+			FrameClock clock = manager.frameClock();
+			long skipped = clock.framesSkipped();
+			clock.frame(start, System.currentTimeMillis());
+			skipped = clock.framesSkipped() - skipped;
+			if (skipped > 0L) logger.debug().message("screen update overran, skipping {} frames").values(skipped).log();
+		}
 		scheduleDelayedRedraw();
 		return result;
 	}
@@ -527,24 +543,25 @@ class ActivityDriver {
 		if (state == State.ACTIVE) {
 			long now = System.currentTimeMillis();
 			long delay = display.nextRedrawDelay(now);
-			if (delay == 0L) {
-				manager.perform(this::checkRedraw);
-			} else if (delay < Long.MAX_VALUE) {
-				long then = now + delay;
-				if (futureRedraw != null && futureRedrawTime > then) {
-					futureRedraw.cancel(true);
-					futureRedraw = null;
-				}
-				if (futureRedraw == null) {
-					futureRedraw = manager.schedule(this::checkRedrawScheduled, delay);
-					futureRedrawTime = then;
-				}
+			if (delay < Long.MAX_VALUE) {
+				// align with frames so that redraws requested by different components are coalesced
+				scheduleRedrawAt(now, manager.frameClock().nextFrame(now + delay));
 			} else {
 				/* nothing to do - nothing animating */
 			}
 		}
 	}
 
+	private void scheduleRedrawAt(long now, long then) {
+		if (futureRedraw != null) {
+			if (futureRedrawTime <= then) return; // the redraw will be performed with the one already scheduled
+			futureRedraw.cancel(true);
+			futureRedraw = null;
+		}
+		futureRedraw = manager.schedule(this::checkRedrawScheduled, then - now);
+		futureRedrawTime = then;
+	}
+
 	private ActivityDriver ancestorWithActivityIdentity(Identity actIdentity) {
 		ActivityDriver driver = this;
 		do {
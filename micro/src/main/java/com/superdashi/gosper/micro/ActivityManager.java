@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -48,8 +49,13 @@ class ActivityManager {
 	final Logger logger;
 	final Logger uiLogger;
 	private final Producer<List<Event>> eventSource;
-	private final ScheduledFuture<?> eventPolling;
+	private final ScheduledExecutorService eventPolling; // null unless the device must be polled
+	// events awaiting delivery to the ui thread, guards the delivery too
+	private final PendingEvents pendingEvents = new PendingEvents();
+	private Future<?> eventDelivery = null; // non-null while a delivery is pending
 	private DeviceSpec deviceSpec;
+	// paces redraws across all activities, since they share the screen
+	private FrameClock frameClock;
 
 	private int nextDriverInstanceId = 1;
 	ActivityDriver rootDriver;
@@ -68,6 +74,7 @@ class ActivityManager {
 		// default the spec based on the one defined by the runtime
 		Device device = face.device;
 		deviceSpec = device.getSpec();
+		frameClock = FrameClock.withMaxFrameRate(deviceSpec.maxFrameRate);
 		// assign ourselves a logger, using the runtime loggers
 		logger = face.logger.child("act-man");
 		uiLogger = logger.child("ui");
@@ -86,8 +93,13 @@ class ActivityManager {
 			device.setEventConsumer(this::deliverEvent);
 			eventPolling = null;
 		} else {
-			// manager must poll device
-			eventPolling = executor.scheduleWithFixedDelay(this::pollForEvents, 0L, EVENT_POLL_DELAY, TimeUnit.MILLISECONDS);
+			// manager must poll device, but not on the ui thread, which only wakes for events
+			eventPolling = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "gosper-events");
+				thread.setDaemon(true);
+				return thread;
+			});
+			eventPolling.scheduleWithFixedDelay(this::pollForEvents, 0L, EVENT_POLL_DELAY, TimeUnit.MILLISECONDS);
 		}
 		if (face.scriptSession != null) face.scriptSession.eventConsumer(this::deliverEvent);
 	}
@@ -96,22 +108,21 @@ class ActivityManager {
 		if (deviceSpec == null) throw new IllegalArgumentException("null deviceSpec");
 		synchronized (lock) {
 			this.deviceSpec = deviceSpec;
+			frameClock = FrameClock.withMaxFrameRate(deviceSpec.maxFrameRate);
 		}
 	}
 
+	// events are queued and delivered in batches, with redundant events coalesced
 	public Future<?> deliverEvent(Event event) {
 		if (event == null) throw new IllegalArgumentException("null event");
 		logger.debug().message("manager received event {}").values(event).log();
 		if (halting) return null; // we're halting
-		return perform(() -> {
-			if (halting) return; // we're halting
-			if (activeDriver == null) return; // we just shutdown the last activity?
-			boolean eventSent = activeDriver.deliver(event);
-			if (eventSent) {
-				activeDriver.checkRedraw();
-				activeDriver.checkConclusionAndOrLaunch();
+		synchronized (pendingEvents) {
+			if (pendingEvents.add(event)) {
+				eventDelivery = perform(this::deliverPendingEvents);
 			}
-		});
+			return eventDelivery;
+		}
 	}
 
 	public boolean launchApplication(AppInstance appInstance) throws InterruptedException {
@@ -156,6 +167,7 @@ class ActivityManager {
 				concludeCurrentActivity(null);
 			}
 		});
+		if (eventPolling != null) eventPolling.shutdown();
 		executor.shutdown();
 		executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
 		screen.blank();
@@ -244,6 +256,11 @@ class ActivityManager {
 		return deviceSpec;
 	}
 
+	// must be called on executor and with lock
+	FrameClock frameClock() {
+		return frameClock;
+	}
+
 	boolean halting() {
 		return halting;
 	}
@@ -356,21 +373,38 @@ class ActivityManager {
 		return nextDriverInstanceId++;
 	}
 
+	// called on the polling thread
 	private void pollForEvents() {
-		uiLogger.debug().message("polling for events").log();
-		synchronized (lock) {
-			if (halting || activeDriver == null) return; // we're halting or we just shutdown the last activity?
-			List<Event> events = eventSource.produce();
-			uiLogger.debug().message("received {} events").values(events.size()).log();
-			if (events.isEmpty()) return; // no events
-			boolean eventsSent = false;
-			for (Event event : events) {
-				eventsSent = activeDriver.deliver(event) | eventsSent;
-			}
-			if (eventsSent) {
-				activeDriver.checkRedraw();
-				activeDriver.checkConclusionAndOrLaunch();
-			}
+		if (halting) return;
+		List<Event> events;
+		try {
+			events = eventSource.produce();
+		} catch (RuntimeException e) {
+			logger.error().message("failed to poll for events").stacktrace(e).log();
+			return;
+		}
+		if (events.isEmpty()) return; // no events
+		uiLogger.debug().message("received {} events").values(events.size()).log();
+		for (Event event : events) {
+			deliverEvent(event);
+		}
+	}
+
+	// must be called on executor and with lock
+	private void deliverPendingEvents() {
+		List<Event> events;
+		synchronized (pendingEvents) {
+			events = pendingEvents.take();
+			eventDelivery = null;
+		}
+		if (halting || activeDriver == null) return; // we're halting or we just shutdown the last activity?
+		boolean eventsSent = false;
+		for (Event event : events) {
+			eventsSent = activeDriver.deliver(event) | eventsSent;
+		}
+		if (eventsSent) {
+			activeDriver.checkRedraw();
+			activeDriver.checkConclusionAndOrLaunch();
 		}
 	}
 	// inner classes
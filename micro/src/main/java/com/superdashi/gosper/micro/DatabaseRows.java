@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.superdashi.gosper.graphdb.Inspect;
+import com.superdashi.gosper.graphdb.Inspector;
+import com.superdashi.gosper.graphdb.Node;
+import com.superdashi.gosper.graphdb.Observation;
+import com.superdashi.gosper.graphdb.Order;
+import com.superdashi.gosper.graphdb.Part;
+import com.superdashi.gosper.graphdb.PartRef;
+import com.superdashi.gosper.graphdb.Selector;
+import com.superdashi.gosper.micro.Table.Row;
+
+// caches the ordered ids of the selected nodes
+// changes are applied incrementally using the parts reported by an observation
+// only changes committed by the inspected version are delivered, so the ids always reflect a single version
+// the graph is only queried when its version has changed
+// the revision only advances when the selected nodes or their order have changed
+// the observation is cancelled on release, and registered again if the rows are subsequently used
+final class DatabaseRows implements Rows {
+
+	private static final long[] NO_IDS = {};
+
+	// changes beyond this proportion of the cached ids trigger a full refresh
+	private static final int REFRESH_RATIO = 8;
+	// changes up to this number are always applied incrementally
+	private static final int REFRESH_MINIMUM = 32;
+
+	private final Inspector inspector;
+	private final Selector selector;
+	private final Order order;
+	private final Function<Node, Row> mapping;
+
+	// populated on first use, to avoid observing rows that are never displayed
+	private Observation observation = null;
+	// accumulates changes as they are delivered
+	private final Set<PartRef> changes = new HashSet<>();
+	private boolean overflowed = false;
+
+	private long[] ids = null; // the ids of the selected nodes in order, null if not yet populated
+	private long version = -1L; // the graph version reflected by the ids
+	private long revision = 0L;
+
+	DatabaseRows(Inspector inspector, Selector selector, Order order, Function<Node, Row> mapping) {
+		this.inspector = inspector;
+		this.selector = selector;
+		this.order = order;
+		this.mapping = mapping;
+	}
+
+	@Override
+	public long revision() {
+		refresh();
+		return revision;
+	}
+
+	@Override
+	public int size(long revision) {
+		refresh();
+		return revision == this.revision ? ids.length : -1;
+	}
+
+	@Override
+	public void release() {
+		if (observation == null) return;
+		observation.cancel();
+		observation = null;
+		changes.clear();
+		overflowed = false;
+		ids = null;
+		version = -1L;
+	}
+
+	@Override
+	public boolean populateRows(long revision, int index, DisplayColumns columns, Row[] rows) {
+		refresh();
+		if (revision != this.revision) return false;
+		int count = Math.max(Math.min(rows.length, ids.length - index), 0);
+		try (Inspect inspect = inspector.inspect()) {
+			// a commit since the refresh may have changed the nodes, so the rows must be refreshed
+			if (inspect.version() != version) return false;
+			for (int i = 0; i < count; i++) {
+				Optional<Node> node = inspect.node(PartRef.fromId(ids[index + i]));
+				// the node has been deleted and the change is yet to be delivered
+				if (!node.isPresent()) return false;
+				rows[i] = mapping.apply(node.get());
+			}
+		}
+		Arrays.fill(rows, count, rows.length, null);
+		return true;
+	}
+
+	private void refresh() {
+		if (observation == null) {
+			// register before populating so that no change can be missed
+			observation = inspector.observe(selector, this::record);
+		}
+		try (Inspect inspect = inspector.inspect()) {
+			long version = inspect.version();
+			// nothing has been committed since the ids were populated
+			if (ids != null && version == this.version) return;
+			// changes committed after the inspected version are left for a later refresh
+			observation.deliver(version);
+			this.version = version;
+			// nothing has changed that affects the selection
+			if (ids != null && !overflowed && changes.isEmpty()) return;
+			if (ids == null) {
+				changes.clear();
+				ids = select(inspect);
+				revision++;
+			} else if (overflowed) {
+				changes.clear();
+				overflowed = false;
+				if (reselect(inspect)) revision++;
+			} else {
+				if (apply(inspect)) revision++;
+				changes.clear();
+			}
+		}
+	}
+
+	private void record(PartRef ref) {
+		if (overflowed) return;
+		changes.add(ref);
+		if (changes.size() > Math.max(REFRESH_MINIMUM, ids == null ? 0 : ids.length / REFRESH_RATIO)) {
+			overflowed = true;
+			changes.clear();
+		}
+	}
+
+	private long[] select(Inspect inspect) {
+		return inspect.graph().nodes(selector).order(order).stream().mapToLong(n -> n.ref().id()).toArray();
+	}
+
+	// returns true if the ids were modified
+	private boolean reselect(Inspect inspect) {
+		long[] ids = select(inspect);
+		if (Arrays.equals(this.ids, ids)) return false;
+		this.ids = ids;
+		return true;
+	}
+
+	// merges changed nodes into the ordered ids, returns true if the ids were modified
+	private boolean apply(Inspect inspect) {
+		// identify the changed nodes and those which remain selected
+		Set<Long> changed = new HashSet<>();
+		List<Node> inserts = new ArrayList<>();
+		for (PartRef ref : changes) {
+			Optional<Node> node = inspect.node(ref);
+			// edges may be reported too, but since their ids are never cached they are harmless
+			changed.add(ref.id());
+			if (node.isPresent() && node.get().matches(selector)) inserts.add(node.get());
+		}
+		if (changed.isEmpty()) return false;
+
+		// remove any changed nodes, they will be reinserted if still selected
+		int length = 0;
+		long[] retained = ids.length == 0 ? NO_IDS : new long[ids.length];
+		for (long id : ids) {
+			if (!changed.contains(id)) retained[length++] = id;
+		}
+		if (length == ids.length && inserts.isEmpty()) return false;
+
+		// merge in the inserted nodes
+		Comparator<Part> comparator = order.comparator(inspect);
+		inserts.sort(comparator);
+		long[] ids = new long[length + inserts.size()];
+		int i = 0; // index into retained
+		int j = 0; // index into ids
+		for (Node insert : inserts) {
+			int position = position(inspect, comparator, retained, i, length, insert);
+			// a retained node is missing from the inspected version, which should not occur
+			if (position < 0) return reselect(inspect);
+			System.arraycopy(retained, i, ids, j, position - i);
+			j += position - i;
+			i = position;
+			ids[j++] = insert.ref().id();
+		}
+		System.arraycopy(retained, i, ids, j, length - i);
+
+		if (Arrays.equals(this.ids, ids)) return false;
+		this.ids = ids;
+		return true;
+	}
+
+	// binary search for the first position in [from, to) that orders after the node, -1 if a node is missing
+	// order comparators break ties by id, so this matches the position the node has in a full ordered selection
+	private static int position(Inspect inspect, Comparator<Part> comparator, long[] ids, int from, int to, Node node) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			Optional<Node> other = inspect.node(PartRef.fromId(ids[mid]));
+			if (!other.isPresent()) return -1;
+			if (comparator.compare(other.get(), node) < 0) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+}
@@ -372,6 +372,11 @@ public final class Display {
 		return delay;
 	}
 
+	// whether rendering may change what is displayed
+	boolean redrawPending(long now) {
+		return dirtySurfaces || nextRedrawDelay(now) == 0L || isDirty();
+	}
+
 	boolean isDirty() {
 		//TODO need a better algorithm for this
 		for (Situation sit : situations) {
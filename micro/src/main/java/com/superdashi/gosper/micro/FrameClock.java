@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+// paces the frames pushed to a screen
+// deferred frames start on ticks, which are multiples of the frame interval
+// a frame is never started while the previous frame is still being transmitted, any ticks missed are skipped
+final class FrameClock {
+
+	static FrameClock withMaxFrameRate(int maxFrameRate) {
+		if (maxFrameRate < 0) throw new IllegalArgumentException("negative maxFrameRate");
+		return new FrameClock(maxFrameRate == 0 ? 0L : Math.max(1L, 1000L / maxFrameRate));
+	}
+
+	private final long interval; // in milliseconds, zero if unlimited
+	private long lastStart = Long.MIN_VALUE; // when the last frame started
+	private long lastFinish = Long.MIN_VALUE; // when the last frame finished transmitting
+	private long framesSkipped = 0L;
+
+	private FrameClock(long interval) {
+		this.interval = interval;
+	}
+
+	long interval() {
+		return interval;
+	}
+
+	long framesSkipped() {
+		return framesSkipped;
+	}
+
+	// the first tick at or after the given time at which a frame may start
+	long nextFrame(long time) {
+		return tick(Math.max(time, earliest()));
+	}
+
+	// whether a frame may start immediately, an idle screen need not wait for a tick
+	boolean ready(long now) {
+		return now >= earliest();
+	}
+
+	// rounds the time up to the next tick
+	long tick(long time) {
+		if (interval <= 1L) return time;
+		long remainder = time % interval;
+		return remainder == 0L ? time : time + interval - remainder;
+	}
+
+	// records a frame that was pushed to the screen
+	void frame(long start, long finish) {
+		if (interval > 0L) {
+			// count the ticks that will pass while the frame is being transmitted
+			long missed = (tick(finish) - tick(start + interval)) / interval;
+			if (missed > 0L) framesSkipped += missed;
+		}
+		lastStart = start;
+		lastFinish = finish;
+	}
+
+	// private helper methods
+
+	private long earliest() {
+		return lastStart == Long.MIN_VALUE ? Long.MIN_VALUE : Math.max(lastStart + interval, lastFinish);
+	}
+
+}
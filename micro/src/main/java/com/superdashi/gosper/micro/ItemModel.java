@@ -193,11 +193,13 @@ public final class ItemModel extends Model {
 	// private utility methods
 
 	//TODO - should loading be started lazily?
+	// cached images are delivered synchronously, so this may complete loading before the constructor returns
+	// each count is incremented before the request so that a synchronous delivery can reduce it
 	private void startLoading() {
-		if (picture == null) item.picture()                             .ifPresent(res -> { backgroundLoad(res, this::loadImage, this::picture); outstanding ++; } );
-		if (icon    == null) item.icon   ()                             .ifPresent(res -> { backgroundLoad(res, this::loadImage, this::icon   ); outstanding ++; } );
-		if (badge   == null) item.value("gosper:badge") .optionalImage().ifPresent(res -> { backgroundLoad(res, this::loadImage, this::badge  ); outstanding ++; } );
-		if (symbol  == null) item.value("gosper:symbol").optionalImage().ifPresent(res -> { backgroundLoad(res, this::loadImage, this::symbol ); outstanding ++; } );
+		if (picture == null) item.picture()                             .ifPresent(res -> { outstanding ++; loadImage(res, this::picture); } );
+		if (icon    == null) item.icon   ()                             .ifPresent(res -> { outstanding ++; loadImage(res, this::icon   ); } );
+		if (badge   == null) item.value("gosper:badge") .optionalImage().ifPresent(res -> { outstanding ++; loadImage(res, this::badge  ); } );
+		if (symbol  == null) item.value("gosper:symbol").optionalImage().ifPresent(res -> { outstanding ++; loadImage(res, this::symbol ); } );
 	}
 
 	private void picture(Frame picture) {
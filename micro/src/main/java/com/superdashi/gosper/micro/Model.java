@@ -50,6 +50,14 @@ public abstract class Model {
 		return context.loadEnvImage(res);
 	}
 
+	// does not block, the consumer may be called from a background thread once the image is decoded
+	// a cached image is supplied to the consumer before this method returns
+	protected void loadImage(Image res, Consumer<Frame> consumer) {
+		if (res == null) throw new IllegalArgumentException("null res");
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		context.loadEnvImage(res, consumer, this::recordFailure);
+	}
+
 	protected <X,Y> void backgroundLoad(X address, Function<X, Y> loader, Consumer<Y> consumer) {
 		if (address == null) throw new IllegalArgumentException("null address");
 		if (loader == null) throw new IllegalArgumentException("null loader");
@@ -16,7 +16,9 @@
  */
 package com.superdashi.gosper.micro;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import com.superdashi.gosper.item.Item;
 
@@ -26,6 +28,8 @@ public final class Models {
 
 	// cached instances
 	private TableModel emptyTableModel = null;
+	// rows supplied to table models, released with the context
+	private final List<Rows> rows = new ArrayList<>();
 
 	Models(ActivityContext context) {
 		this.context = context;
@@ -102,6 +106,7 @@ public final class Models {
 
 	public TableModel tableModel(Rows rows) {
 		if (rows == null) throw new IllegalArgumentException("null rows");
+		this.rows.add(rows);
 		return new TableModel(context, rows, new Mutations());
 	}
 
@@ -119,4 +124,9 @@ public final class Models {
 		return new ItemModel(context, item, mutations);
 	}
 
+	void release() {
+		rows.forEach(Rows::release);
+		rows.clear();
+	}
+
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.superdashi.gosper.device.Event;
+
+// accumulates events for delivery to the ui thread in batches
+// an event replaces the immediately preceding event if it coalesces with it, otherwise order is preserved
+final class PendingEvents {
+
+	private final List<Event> events = new ArrayList<>();
+
+	// true if the event starts a new batch
+	synchronized boolean add(Event event) {
+		int last = events.size() - 1;
+		if (last >= 0 && event.coalescesWith(events.get(last))) {
+			events.set(last, event);
+			return false;
+		}
+		events.add(event);
+		return last < 0;
+	}
+
+	// removes the events of the current batch
+	synchronized List<Event> take() {
+		List<Event> batch = new ArrayList<>(events);
+		events.clear();
+		return batch;
+	}
+
+}
@@ -19,7 +19,13 @@ package com.superdashi.gosper.micro;
 import java.io.IOException;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import com.superdashi.gosper.logging.Logger;
 import com.superdashi.gosper.studio.Frame;
@@ -27,11 +33,29 @@ import com.superdashi.gosper.studio.Surface;
 import com.tomgibara.fundament.Producer;
 import com.tomgibara.streams.ReadStream;
 
-//TODO synchronization
+// a least-recently-used cache of decoded resources, bounded by the bytes required for their pixels
+// concurrent requests for an uncached resource share a single decoding
 final class ResourceCache {
 
 	private static final boolean DELAY_LOADING = "true".equalsIgnoreCase(System.getProperty("com.superdashi.gosper.micro.ResourceCache.DELAY_LOADING"));
 	private static final long DELAY = 1000L;
+	private static final long CAPACITY = Long.getLong("com.superdashi.gosper.micro.ResourceCache.CAPACITY", 16L * 1024 * 1024);
+	// decoded frames are accounted as ARGB
+	private static final int BYTES_PER_PIXEL = 4;
+
+	private static long weigh(Frame frame) {
+		return (long) frame.dimensions().area() * BYTES_PER_PIXEL;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw e;
+		}
+	}
 
 	private enum Type {
 		FRAME;
@@ -72,17 +96,116 @@ final class ResourceCache {
 	}
 
 	private final Logger logger;
-	private final Map<Key, Object> entries = new HashMap<>();
+	private final long capacity;
+	// all guarded by this
+	private final LinkedHashMap<Key, Frame> entries = new LinkedHashMap<>(16, 0.75f, true); // access ordered
+	private final Map<Key, CompletableFuture<Frame>> loading = new HashMap<>();
+	private long size = 0L; // total weight of entries
 
 	ResourceCache(Logger logger) {
+		this(logger, CAPACITY);
+	}
+
+	ResourceCache(Logger logger, long capacity) {
+		if (capacity < 0L) throw new IllegalArgumentException("negative capacity");
 		this.logger = logger;
+		this.capacity = capacity;
 	}
 
+	// blocks until the frame is decoded, which may be by another thread
 	Frame frame(Environment env, URI uri) {
-		Producer<ReadStream> source = env.requestReadStream(uri); // we have to do this first to ensure the caller has privileges
+		// we have to do this first to ensure the caller has privileges
+		return frame(uri, env.requestReadStream(uri));
+	}
+
+	// decodes the frame on a background thread, if it is not already cached or loading
+	// the consumer is called before this method returns if the frame is cached or has just finished loading
+	// otherwise it is called on the thread that decodes the frame
+	void frame(Environment env, URI uri, Consumer<Frame> consumer, Consumer<RuntimeException> failure) {
+		// we have to do this first to ensure the caller has privileges
+		frame(uri, env.requestReadStream(uri), env::executeInBackground, consumer, failure);
+	}
+
+	synchronized long size() {
+		return size;
+	}
+
+	// package scoped for testing
+
+	Frame frame(URI uri, Producer<ReadStream> source) {
+		Key key = new Key(Type.FRAME, uri);
+		CompletableFuture<Frame> future;
+		synchronized (this) {
+			Frame frame = entries.get(key);
+			if (frame != null) return frame;
+			future = loading.get(key);
+			if (future == null) {
+				future = new CompletableFuture<>();
+				loading.put(key, future);
+			} else {
+				source = null; // another thread is loading
+			}
+		}
+		if (source != null) load(uri, key, source, future);
+		return await(future);
+	}
+
+	void frame(URI uri, Producer<ReadStream> source, Executor executor, Consumer<Frame> consumer, Consumer<RuntimeException> failure) {
 		Key key = new Key(Type.FRAME, uri);
-		Frame frame = (Frame) entries.get(key);
-		if (frame != null) return frame;
+		CompletableFuture<Frame> future;
+		boolean loader;
+		Frame cached;
+		synchronized (this) {
+			cached = entries.get(key);
+			future = cached == null ? loading.get(key) : null;
+			loader = cached == null && future == null;
+			if (loader) {
+				future = new CompletableFuture<>();
+				loading.put(key, future);
+			}
+		}
+		// consumers are never called with the lock held
+		if (cached != null) {
+			consumer.accept(cached);
+			return;
+		}
+		future.whenComplete((frame, e) -> {
+			if (e == null) {
+				consumer.accept(frame);
+			} else {
+				failure.accept(e instanceof RuntimeException ? (RuntimeException) e : new ResourceException("failed to load image", e));
+			}
+		});
+		if (loader) {
+			CompletableFuture<Frame> f = future;
+			executor.execute(() -> load(uri, key, source, f));
+		}
+	}
+
+	// private helper methods
+
+	private void load(URI uri, Key key, Producer<ReadStream> source, CompletableFuture<Frame> future) {
+		Frame frame;
+		try {
+			frame = decode(uri, source);
+		} catch (Throwable e) {
+			// waiters must always be released
+			synchronized (this) {
+				loading.remove(key);
+			}
+			future.completeExceptionally(e);
+			if (e instanceof Error) throw (Error) e;
+			return;
+		}
+		synchronized (this) {
+			loading.remove(key);
+			store(key, frame);
+		}
+		future.complete(frame);
+	}
+
+	private Frame decode(URI uri, Producer<ReadStream> source) {
+		Frame frame;
 		try {
 			frame = Surface.decode(source.produce()).immutableView();
 		} catch (IOException e) {
@@ -90,15 +213,31 @@ final class ResourceCache {
 			throw new ResourceException("failed to read image", e);
 		}
 		if (DELAY_LOADING) try {
-			logger.debug().message("delaying loading for app {}").values(env.appInstance.instanceId).filePath(uri).log();
+			logger.debug().message("delaying loading").filePath(uri).log();
 			Thread.sleep(DELAY);
 		} catch (InterruptedException e) {
 			/* ignored */
 		}
+		return frame;
+	}
+
+	// must hold lock
+	private void store(Key key, Frame frame) {
+		long weight = weigh(frame);
+		if (weight > capacity) {
+			logger.debug().message("frame too large to cache").filePath(key.uri).log();
+			return;
+		}
 		//TODO need to record date on entry?
 		//TODO need to sort entries by qualification, so that they can be flushed on runtime changes
-		entries.put(key, frame);
-		return frame;
+		Frame previous = entries.put(key, frame);
+		if (previous != null) size -= weigh(previous);
+		size += weight;
+		// evict least recently used entries
+		for (Iterator<Frame> i = entries.values().iterator(); size > capacity && i.hasNext(); ) {
+			size -= weigh(i.next());
+			i.remove();
+		}
 	}
 
 }
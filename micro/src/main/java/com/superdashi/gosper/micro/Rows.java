@@ -20,7 +20,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import com.superdashi.gosper.graphdb.Inspect;
 import com.superdashi.gosper.graphdb.Inspector;
@@ -183,32 +182,7 @@ public interface Rows {
 		if (selector == null) throw new IllegalArgumentException("null selector");
 		if (order == null) throw new IllegalArgumentException("null order");
 		if (mapping == null) throw new IllegalArgumentException("null mapping");
-		return new Rows() {
-
-			@Override
-			public long revision() {
-				try (Inspect inspect = inspector.inspect()) {
-					return inspect.version();
-				}
-			}
-
-			@Override
-			public int size(long revision) {
-				try (Inspect inspect = inspector.inspect()) {
-					if (inspect.version() != revision) return -1;
-					return inspect.graph().nodes(selector).count();
-				}
-			}
-
-			@Override
-			public boolean populateRows(long revision, int index, DisplayColumns columns, Row[] rows) {
-				try (Inspect inspect = inspector.inspect()) {
-					if (inspect.version() != revision) return false;
-					inspect.graph().nodes(selector).order(order).stream().skip(index).limit(rows.length).map(mapping::apply).collect(Collectors.toList()).toArray(rows);
-					return true;
-				}
-			}
-		};
+		return new DatabaseRows(inspector, selector, order, mapping);
 	}
 
 	// non-negative monotonic
@@ -221,4 +195,7 @@ public interface Rows {
 	//TODO doesn't have visual context
 	boolean populateRows(long revision, int index, DisplayColumns columns, Row[] rows);
 
+	// frees any resources held to track changes, rows remain usable but may need to be repopulated
+	default void release() { }
+
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.superdashi.gosper.framework.Identity;
+import com.superdashi.gosper.framework.Namespace;
+import com.superdashi.gosper.graphdb.Edit;
+import com.superdashi.gosper.graphdb.Inspect;
+import com.superdashi.gosper.graphdb.Node;
+import com.superdashi.gosper.graphdb.Order;
+import com.superdashi.gosper.graphdb.Selector;
+import com.superdashi.gosper.graphdb.Space;
+import com.superdashi.gosper.graphdb.Store;
+import com.superdashi.gosper.graphdb.View;
+import com.superdashi.gosper.graphdb.Viewer;
+import com.superdashi.gosper.item.Item;
+import com.superdashi.gosper.item.Value;
+import com.superdashi.gosper.micro.Table.Row;
+
+public class DatabaseRowsTest {
+
+	private static final Identity identity = new Identity(new Namespace("www.superdashi.com"), "app");
+
+	private static final Selector selector = Selector.ofType("Person");
+	private static final Order order = Order.byAttr("rank");
+	private static final Function<Node, Row> mapping = n -> new Row(Item.newBuilder().label(n.attrs().string("name")).build(), false, false, null);
+
+	@Test
+	public void testIncrementalRefresh() {
+		View view = buildView();
+		try (Edit edit = view.edit()) {
+			for (int i = 0; i < 100; i++) {
+				Node node = edit.createNode("Person");
+				node.attrs().string("name", "p" + i);
+				node.attrs().integer("rank", (i * 37) % 100);
+			}
+			edit.commit();
+		}
+		Rows rows = Rows.databaseRows(view, selector, order, mapping);
+		long revision = rows.revision();
+		checkRows(view, rows, revision);
+
+		// unrelated changes don't advance the revision
+		try (Edit edit = view.edit()) {
+			edit.createNode("Company").attrs().string("name", "Dashi");
+			edit.commit();
+		}
+		Assert.assertEquals(revision, rows.revision());
+
+		// reordering
+		try (Edit edit = view.edit()) {
+			edit.graph().nodes(selector).stream().filter(n -> n.attrs().integer("rank") == 50).findFirst().get().attrs().integer("rank", -1);
+			edit.commit();
+		}
+		Assert.assertNotEquals(revision, revision = rows.revision());
+		checkRows(view, rows, revision);
+
+		// additions and deletions
+		try (Edit edit = view.edit()) {
+			edit.graph().nodes(selector).stream().filter(n -> n.attrs().integer("rank") % 10 == 0).collect(Collectors.toList()).forEach(Node::delete);
+			Node node = edit.createNode("Person");
+			node.attrs().string("name", "new");
+			node.attrs().integer("rank", 55);
+			edit.commit();
+		}
+		Assert.assertNotEquals(revision, revision = rows.revision());
+		checkRows(view, rows, revision);
+		Assert.assertEquals(92, rows.size(revision));
+
+		// enough changes to require a full refresh
+		try (Edit edit = view.edit()) {
+			edit.graph().nodes(selector).stream().collect(Collectors.toList()).forEach(n -> n.attrs().integer("rank", -n.attrs().integer("rank")));
+			edit.commit();
+		}
+		Assert.assertNotEquals(revision, revision = rows.revision());
+		checkRows(view, rows, revision);
+	}
+
+	@Test
+	public void testDuplicateRanks() {
+		View view = buildView();
+		try (Edit edit = view.edit()) {
+			for (int i = 0; i < 60; i++) {
+				Node node = edit.createNode("Person");
+				node.attrs().string("name", "p" + i);
+				node.attrs().integer("rank", i % 5);
+			}
+			edit.commit();
+		}
+		Rows rows = Rows.databaseRows(view, selector, order, mapping);
+		long revision = rows.revision();
+		checkRows(view, rows, revision);
+
+		// nodes moved among others of equal rank are positioned as a full ordering would place them
+		try (Edit edit = view.edit()) {
+			edit.graph().nodes(selector).stream().filter(n -> n.attrs().string("name").endsWith("7")).collect(Collectors.toList()).forEach(n -> n.attrs().integer("rank", 3));
+			for (int i = 0; i < 5; i++) {
+				Node node = edit.createNode("Person");
+				node.attrs().string("name", "new" + i);
+				node.attrs().integer("rank", i);
+			}
+			edit.commit();
+		}
+		Assert.assertNotEquals(revision, revision = rows.revision());
+		checkRows(view, rows, revision);
+
+		// unchanged versions leave the revision unchanged
+		Assert.assertEquals(revision, rows.revision());
+	}
+
+	@Test
+	public void testDepartures() {
+		View view = buildView();
+		try (Edit edit = view.edit()) {
+			for (int i = 0; i < 10; i++) {
+				Node node = edit.createNode("Person");
+				node.attrs().string("name", "p" + i);
+				node.attrs().integer("rank", i);
+			}
+			edit.commit();
+		}
+		Rows rows = Rows.databaseRows(view, selector, order, mapping);
+		long revision = rows.revision();
+		checkRows(view, rows, revision);
+
+		// nodes that no longer match the selector are removed
+		try (Edit edit = view.edit()) {
+			edit.graph().nodes(selector).stream().filter(n -> n.attrs().integer("rank") == 5).findFirst().get().type("Company");
+			edit.commit();
+		}
+		Assert.assertNotEquals(revision, revision = rows.revision());
+		checkRows(view, rows, revision);
+		Assert.assertEquals(9, rows.size(revision));
+
+		// released rows are repopulated when next used
+		rows.release();
+		try (Edit edit = view.edit()) {
+			edit.graph().nodes(selector).stream().filter(n -> n.attrs().integer("rank") == 2).findFirst().get().type("Company");
+			edit.commit();
+		}
+		Assert.assertNotEquals(revision, revision = rows.revision());
+		checkRows(view, rows, revision);
+		Assert.assertEquals(8, rows.size(revision));
+	}
+
+	private void checkRows(View view, Rows rows, long revision) {
+		List<String> expected;
+		try (Inspect inspect = view.inspect()) {
+			expected = inspect.graph().nodes(selector).order(order).stream().map(n -> n.attrs().string("name")).collect(Collectors.toList());
+		}
+		Assert.assertEquals(expected.size(), rows.size(revision));
+		List<String> actual = new ArrayList<>();
+		Row[] page = new Row[10];
+		for (int i = 0; i < expected.size(); i += page.length) {
+			Assert.assertTrue(rows.populateRows(revision, i, null, page));
+			for (Row row : page) {
+				if (row != null) actual.add(row.toString());
+			}
+		}
+		Assert.assertEquals(expected, actual);
+	}
+
+	private View buildView() {
+		Viewer viewer = Viewer.createBuilder(identity)
+				.addType("Person")
+				.addType("Company")
+				.addAttribute("name", Value.Type.STRING, Value.empty(), false)
+				.addAttribute("rank", Value.Type.INTEGER, Value.empty(), true)
+				.build();
+		Space space = new Space(Store.newMemStore());
+		space.associate(viewer);
+		space.open();
+		return space.view(identity);
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameClockTest {
+
+	@Test
+	public void testPacing() {
+		FrameClock clock = FrameClock.withMaxFrameRate(20);
+		Assert.assertEquals(50L, clock.interval());
+		// no frame yet, ready immediately
+		Assert.assertTrue(clock.ready(1010L));
+		clock.frame(1010L, 1020L);
+		// redraws within the interval are deferred to the next tick
+		Assert.assertFalse(clock.ready(1030L));
+		Assert.assertEquals(1100L, clock.nextFrame(1030L));
+		Assert.assertEquals(1100L, clock.nextFrame(1061L));
+		Assert.assertTrue(clock.ready(1100L));
+		// timers are aligned to ticks
+		Assert.assertEquals(1150L, clock.nextFrame(1101L));
+		Assert.assertEquals(0L, clock.framesSkipped());
+	}
+
+	@Test
+	public void testSkipping() {
+		FrameClock clock = FrameClock.withMaxFrameRate(20);
+		// transmission overruns two ticks
+		clock.frame(1000L, 1120L);
+		Assert.assertEquals(2L, clock.framesSkipped());
+		Assert.assertFalse(clock.ready(1100L));
+		Assert.assertEquals(1150L, clock.nextFrame(1060L));
+	}
+
+	@Test
+	public void testUnlimited() {
+		FrameClock clock = FrameClock.withMaxFrameRate(0);
+		Assert.assertEquals(0L, clock.interval());
+		clock.frame(1000L, 1005L);
+		Assert.assertEquals(1005L, clock.nextFrame(1001L));
+		Assert.assertTrue(clock.ready(1005L));
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.superdashi.gosper.device.Event;
+
+public class PendingEventsTest {
+
+	@Test
+	public void testMovesCoalesce() {
+		PendingEvents pending = new PendingEvents();
+		Event m1 = Event.newMoveEvent(Event.KEY_MOUSE_1, 1, 1, true, false);
+		Event m2 = Event.newMoveEvent(Event.KEY_MOUSE_1, 2, 2, true, false);
+		Event m3 = Event.newMoveEvent(Event.KEY_MOUSE_1, 3, 3, true, false);
+		Assert.assertTrue(pending.add(m1));
+		Assert.assertFalse(pending.add(m2));
+		Assert.assertFalse(pending.add(m3));
+		List<Event> batch = pending.take();
+		Assert.assertEquals(1, batch.size());
+		Assert.assertSame(m3, batch.get(0));
+
+		// the next event starts a new batch
+		Assert.assertTrue(pending.take().isEmpty());
+		Assert.assertTrue(pending.add(m1));
+	}
+
+	@Test
+	public void testOrderPreserved() {
+		PendingEvents pending = new PendingEvents();
+		Event down = Event.newKeyEvent(Event.KEY_DOWN, true);
+		Event up = Event.newKeyEvent(Event.KEY_DOWN, false);
+		Event m1 = Event.newMoveEvent(Event.KEY_MOUSE_1, 1, 1, true, false);
+		Event m2 = Event.newMoveEvent(Event.KEY_MOUSE_1, 2, 2, true, false);
+		Event m3 = Event.newMoveEvent(Event.KEY_MOUSE_2, 3, 3, true, false);
+		Event m4 = Event.newMoveEvent(Event.KEY_MOUSE_2, 4, 4, false, false);
+		Event point = Event.newPointEvent(Event.KEY_MOUSE_1, 5, 5);
+		Event m5 = Event.newMoveEvent(Event.KEY_MOUSE_1, 6, 6, true, false);
+		Event m6 = Event.newMoveEvent(Event.KEY_MOUSE_1, 7, 7, true, false);
+
+		Assert.assertTrue(pending.add(down));
+		// a move after a key event is retained
+		Assert.assertFalse(pending.add(m1));
+		Assert.assertFalse(pending.add(m2));
+		// moves of a different key or state do not coalesce
+		Assert.assertFalse(pending.add(m3));
+		Assert.assertFalse(pending.add(m4));
+		// key and point events never coalesce
+		Assert.assertFalse(pending.add(up));
+		Assert.assertFalse(pending.add(up));
+		Assert.assertFalse(pending.add(point));
+		Assert.assertFalse(pending.add(m5));
+		Assert.assertFalse(pending.add(m6));
+		Assert.assertEquals(Arrays.asList(down, m2, m3, m4, up, up, point, m6), pending.take());
+	}
+
+}
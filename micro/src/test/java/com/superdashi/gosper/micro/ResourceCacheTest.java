@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.micro;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.superdashi.gosper.logging.LogDomain;
+import com.superdashi.gosper.logging.Logger;
+import com.superdashi.gosper.studio.Frame;
+import com.tomgibara.fundament.Producer;
+import com.tomgibara.streams.ReadStream;
+import com.tomgibara.streams.Streams;
+
+public class ResourceCacheTest {
+
+	// a 10x10 frame is accounted as 400 bytes
+	private static final long FRAME_SIZE = 400L;
+
+	private static final Logger logger = new LogDomain(e -> {}).loggers().loggerFor("test");
+
+	@Test
+	public void testEviction() throws IOException {
+		ResourceCache cache = new ResourceCache(logger, 3 * FRAME_SIZE);
+		Source a = new Source();
+		Source b = new Source();
+		Source c = new Source();
+		Source d = new Source();
+		cache.frame(uri("a"), a);
+		cache.frame(uri("b"), b);
+		cache.frame(uri("c"), c);
+		Assert.assertEquals(3 * FRAME_SIZE, cache.size());
+
+		// a is used, so b becomes the least recently used
+		cache.frame(uri("a"), a);
+		Assert.assertEquals(1, a.count.get());
+		cache.frame(uri("d"), d);
+		Assert.assertEquals(3 * FRAME_SIZE, cache.size());
+
+		cache.frame(uri("a"), a);
+		cache.frame(uri("c"), c);
+		cache.frame(uri("d"), d);
+		Assert.assertEquals(1, a.count.get());
+		Assert.assertEquals(1, c.count.get());
+		Assert.assertEquals(1, d.count.get());
+		cache.frame(uri("b"), b);
+		Assert.assertEquals(2, b.count.get());
+		Assert.assertEquals(3 * FRAME_SIZE, cache.size());
+
+		// frames larger than the capacity are not cached
+		ResourceCache small = new ResourceCache(logger, FRAME_SIZE - 1);
+		small.frame(uri("a"), a);
+		Assert.assertEquals(0L, small.size());
+	}
+
+	@Test
+	public void testSingleLoad() throws IOException, InterruptedException {
+		ResourceCache cache = new ResourceCache(logger, 3 * FRAME_SIZE);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Source source = new Source() {
+			@Override
+			public ReadStream produce() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return super.produce();
+			}
+		};
+		List<Frame> frames = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				Frame frame = cache.frame(uri("a"), source);
+				synchronized (frames) {
+					frames.add(frame);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+			if (i == 0) Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+		}
+		// wait until every thread is blocked on the load
+		for (Thread thread : threads) {
+			while (thread.getState() != Thread.State.WAITING) Thread.sleep(1L);
+		}
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join(1000L);
+		}
+		Assert.assertEquals(4, frames.size());
+		Assert.assertEquals(1, source.count.get());
+		for (Frame frame : frames) {
+			Assert.assertSame(frames.get(0), frame);
+		}
+	}
+
+	@Test
+	public void testAsyncDelivery() throws IOException {
+		ResourceCache cache = new ResourceCache(logger, 3 * FRAME_SIZE);
+		Source source = new Source();
+		List<Runnable> tasks = new ArrayList<>();
+		List<Frame> frames = new ArrayList<>();
+		List<RuntimeException> failures = new ArrayList<>();
+
+		// loading is performed by the executor
+		cache.frame(uri("a"), source, tasks::add, frames::add, failures::add);
+		cache.frame(uri("a"), source, tasks::add, frames::add, failures::add);
+		Assert.assertEquals(1, tasks.size());
+		Assert.assertTrue(frames.isEmpty());
+		tasks.remove(0).run();
+		Assert.assertEquals(2, frames.size());
+		Assert.assertEquals(1, source.count.get());
+
+		// cached frames are delivered immediately
+		cache.frame(uri("a"), source, tasks::add, frames::add, failures::add);
+		Assert.assertTrue(tasks.isEmpty());
+		Assert.assertEquals(3, frames.size());
+
+		// failures are reported and not cached
+		Producer<ReadStream> broken = () -> Streams.bytes(new byte[] {1, 2, 3}).readStream();
+		cache.frame(uri("b"), broken, tasks::add, frames::add, failures::add);
+		tasks.remove(0).run();
+		Assert.assertEquals(1, failures.size());
+		Assert.assertEquals(FRAME_SIZE, cache.size());
+		Assert.assertEquals(3, frames.size());
+	}
+
+	private static URI uri(String name) {
+		return URI.create("test:" + name);
+	}
+
+	private static class Source implements Producer<ReadStream> {
+
+		private static final byte[] png;
+
+		static {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), "png", out);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			png = out.toByteArray();
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public ReadStream produce() {
+			count.incrementAndGet();
+			return Streams.bytes(png).readStream();
+		}
+	}
+}
@@ -220,6 +220,8 @@ public class CAP1166 {
 
 	private I2CDevice i2c = null;
 	private ScheduledFuture<?> polling;
+	// notified on the bus thread when events are recorded
+	private volatile Runnable eventListener = null;
 
 	private final Object eventLock = new Object();
 	// events are packed as:
@@ -281,6 +283,10 @@ public class CAP1166 {
 		i2c = null;
 	}
 
+	public void setEventListener(Runnable eventListener) {
+		this.eventListener = eventListener;
+	}
+
 	public Optional<TouchEvent> pollForEvent() {
 		synchronized (eventLock) {
 			if (firstEvent == finalEvent) return Optional.empty();
@@ -337,15 +343,20 @@ public class CAP1166 {
 		int state = i2c.readByte(R_INPUT_STATUS) & 0xff;
 		// diff against previous state to populate event queue
 		long timestamp = System.currentTimeMillis();
+		boolean recorded = false;
 		for (int i = 0; i < numberOfInputs; i++) {
 			int mask = 1 << i;
 			boolean pressedNow = (state & mask) != 0;
 			boolean pressedThen = (previousState & mask) != 0;
 			if (pressedNow == pressedThen) continue;
 			recordEvent(i, pressedNow, timestamp);
+			recorded = true;
 		}
 		// record state as previous state
 		previousState = state;
+		// signal any listener
+		Runnable listener = eventListener;
+		if (recorded && listener != null) listener.run();
 	}
 
 	private void setHoldDelay(int ms) {
@@ -144,12 +144,13 @@ public final class PimoroniGfxHat implements Device {
 
 	@Override
 	public Optional<Producer<List<Event>>> events() {
-		return Optional.of(this::pollEvents);
+		// events are pushed to the consumer
+		return Optional.empty();
 	}
 
 	@Override
 	public void setEventConsumer(Consumer<Event> eventConsumer) {
-		// noop
+		cap1166.setEventListener(eventConsumer == null ? null : () -> pollEvents().forEach(eventConsumer));
 	}
 
 	@Override
@@ -21,6 +21,7 @@ import java.util.EnumSet;
 import java.util.Set;
 
 import com.superdashi.gosper.color.Argb;
+import com.superdashi.gosper.device.BitPages;
 import com.superdashi.gosper.device.DeviceException;
 import com.superdashi.gosper.device.Screen;
 import com.superdashi.gosper.logging.Logger;
@@ -55,8 +56,11 @@ class PimoroniGfxHatScreen implements Screen {
 	private final SN3218 sn3218;
 	private final byte[] bitmap = new byte[dimensions.area() / 8];
 	private final byte[] buffer = new byte[dimensions.area() / 8];
-	private final Target target = Target.toByteBitmap(dimensions, bitmap);
+	// the pages last transmitted to the controller
+	private final byte[] transmitted = new byte[dimensions.area() / 8];
+	private final Target target = Target.toPackedBits(dimensions, bitmap);
 	private final Object bufferLock = new Object();
+	private boolean transmittedValid = false; // false when the controller memory is unknown
 
 	private float brightness = 0f;
 	private int leftColor = Argb.BLACK;
@@ -125,6 +129,9 @@ class PimoroniGfxHatScreen implements Screen {
 		sn3218.enable();
 		update(0.8f, Argb.WHITE, Argb.WHITE);
 		st7567.setUp();
+		synchronized (bufferLock) {
+			transmittedValid = false;
+		}
 		debugLog("begun");
 	}
 
@@ -140,6 +147,9 @@ class PimoroniGfxHatScreen implements Screen {
 	@Override
 	public void reset() throws DeviceException {
 		debugLog("resetting");
+		synchronized (bufferLock) {
+			transmittedValid = false;
+		}
 		st7567.reset();
 		debugLog("reset");
 	}
@@ -150,43 +160,18 @@ class PimoroniGfxHatScreen implements Screen {
 		synchronized (bufferLock) {
 			Arrays.fill(buffer, (byte) 0);
 		}
+		// the buffer no longer matches the bitmap
+		target.invalidate();
 		debugLog("cleared");
 	}
 
 	@Override
 	public void composite(Composition composition) {
 		debugLog("compositing");
-		composition.compositeTo(target);
-		synchronized (bufferLock) {
-			for (int ty = 0; ty < 8; ty++) {
-				for (int tx = 0; tx < 16; tx++) {
-					int i = tx + (ty * 8) * 16;
-					byte b0 = bitmap[i      ];
-					byte b1 = bitmap[i +  16];
-					byte b2 = bitmap[i +  32];
-					byte b3 = bitmap[i +  48];
-					byte b4 = bitmap[i +  64];
-					byte b5 = bitmap[i +  80];
-					byte b6 = bitmap[i +  96];
-					byte b7 = bitmap[i + 112];
-					byte c0 = (byte) (((b0 & 0x80) >> 7) | ((b1 & 0x80) >> 6) | ((b2 & 0x80) >> 5) | ((b3 & 0x80) >> 4) | ((b4 & 0x80) >> 3) | ((b5 & 0x80) >> 2) | ((b6 & 0x80) >> 1) | ((b7 & 0x80)     ) );
-					byte c1 = (byte) (((b0 & 0x40) >> 6) | ((b1 & 0x40) >> 5) | ((b2 & 0x40) >> 4) | ((b3 & 0x40) >> 3) | ((b4 & 0x40) >> 2) | ((b5 & 0x40) >> 1) | ((b6 & 0x40)     ) | ((b7 & 0x40) << 1) );
-					byte c2 = (byte) (((b0 & 0x20) >> 5) | ((b1 & 0x20) >> 4) | ((b2 & 0x20) >> 3) | ((b3 & 0x20) >> 2) | ((b4 & 0x20) >> 1) | ((b5 & 0x20)     ) | ((b6 & 0x20) << 1) | ((b7 & 0x20) << 2) );
-					byte c3 = (byte) (((b0 & 0x10) >> 4) | ((b1 & 0x10) >> 3) | ((b2 & 0x10) >> 2) | ((b3 & 0x10) >> 1) | ((b4 & 0x10)     ) | ((b5 & 0x10) << 1) | ((b6 & 0x10) << 2) | ((b7 & 0x10) << 3) );
-					byte c4 = (byte) (((b0 & 0x08) >> 3) | ((b1 & 0x08) >> 2) | ((b2 & 0x08) >> 1) | ((b3 & 0x08)     ) | ((b4 & 0x08) << 1) | ((b5 & 0x08) << 2) | ((b6 & 0x08) << 3) | ((b7 & 0x08) << 4) );
-					byte c5 = (byte) (((b0 & 0x04) >> 2) | ((b1 & 0x04) >> 1) | ((b2 & 0x04)     ) | ((b3 & 0x04) << 1) | ((b4 & 0x04) << 2) | ((b5 & 0x04) << 3) | ((b6 & 0x04) << 4) | ((b7 & 0x04) << 5) );
-					byte c6 = (byte) (((b0 & 0x02) >> 1) | ((b1 & 0x02)     ) | ((b2 & 0x02) << 1) | ((b3 & 0x02) << 2) | ((b4 & 0x02) << 3) | ((b5 & 0x02) << 4) | ((b6 & 0x02) << 5) | ((b7 & 0x02) << 6) );
-					byte c7 = (byte) (((b0 & 0x01)     ) | ((b1 & 0x01) << 1) | ((b2 & 0x01) << 2) | ((b3 & 0x01) << 3) | ((b4 & 0x01) << 4) | ((b5 & 0x01) << 5) | ((b6 & 0x01) << 6) | ((b7 & 0x01) << 7) );
-					int j = (tx * 8) + (ty * 8) * 16;
-					buffer[j    ] = c0;
-					buffer[j + 1] = c1;
-					buffer[j + 2] = c2;
-					buffer[j + 3] = c3;
-					buffer[j + 4] = c4;
-					buffer[j + 5] = c5;
-					buffer[j + 6] = c6;
-					buffer[j + 7] = c7;
-				}
+		// the buffer already matches the bitmap if nothing was composited
+		if (composition.compositeTo(target).isPresent()) {
+			synchronized (bufferLock) {
+				BitPages.toPages(bitmap, ST7567.WIDTH, ST7567.HEIGHT, buffer);
 			}
 		}
 		debugLog("composited");
@@ -197,8 +182,9 @@ class PimoroniGfxHatScreen implements Screen {
 		debugLog("blanking");
 		synchronized (bufferLock) {
 			Arrays.fill(buffer, (byte) 0);
-			st7567.update(buffer);
+			transmitAll();
 		}
+		target.invalidate();
 		debugLog("blanked");
 	}
 
@@ -206,7 +192,11 @@ class PimoroniGfxHatScreen implements Screen {
 	public void update() {
 		debugLog("updating");
 		synchronized (bufferLock) {
-			st7567.update(buffer);
+			if (transmittedValid) {
+				transmitChanges();
+			} else {
+				transmitAll();
+			}
 		}
 		debugLog("updated");
 	}
@@ -266,6 +256,25 @@ class PimoroniGfxHatScreen implements Screen {
 		this.rightColor = rightColor;
 	}
 
+	// must hold buffer lock
+	private void transmitAll() {
+		st7567.update(buffer);
+		System.arraycopy(buffer, 0, transmitted, 0, buffer.length);
+		transmittedValid = true;
+	}
+
+	// must hold buffer lock
+	private void transmitChanges() {
+		for (int page = 0; page < ST7567.HEIGHT / 8; page++) {
+			int offset = page * ST7567.WIDTH;
+			int first = BitPages.firstDifference(buffer, transmitted, offset, offset + ST7567.WIDTH);
+			if (first < 0) continue; // page unchanged
+			int last = BitPages.lastDifference(buffer, transmitted, first, offset + ST7567.WIDTH);
+			st7567.update(buffer, page, first - offset, last + 1 - offset);
+			System.arraycopy(buffer, first, transmitted, first, last + 1 - first);
+		}
+	}
+
 	private int mask(Set<Led> leds) {
 		int mask = 0;
 		for (Led led : leds) {
@@ -177,6 +177,19 @@ public class ST7567 {
 		command(ST7567_EXIT_RMWMODE);
 	}
 
+	// transmits the columns [from, to) of a single page
+	public void update(byte[] buffer, int page, int from, int to) {
+		if (spi == null) throw new IllegalStateException();
+		if (page < 0 || page >= HEIGHT / 8) throw new IllegalArgumentException("invalid page");
+		if (from < 0 || to > WIDTH || from >= to) throw new IllegalArgumentException("invalid columns");
+		command(
+				(byte) (ST7567_SETPAGESTART | (page & ST7567_PAGESTART_MASK)),
+				(byte) (ST7567_SETCOLL | (from & ST7567_COLL_MASK)),
+				(byte) (ST7567_SETCOLH | ((from >> 4) & ST7567_COLH_MASK))
+				);
+		data(buffer, page * ST7567_PAGESIZE + from, to - from);
+	}
+
 //	public void setPixel(int x, int y, boolean b) {
 //		int offset = (y >> 3) * WIDTH + x;
 //		int mask = 1 << (y & 0x7);
@@ -16,11 +16,15 @@
  */
 package com.superdashi.gosper.studio;
 
+import java.util.Optional;
+
 import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
 
 public interface Composition extends Destroyable {
 
-	void compositeTo(Target target);
+	// returns the region of the target that was modified, empty if nothing needed compositing
+	Optional<IntRect> compositeTo(Target target);
 
 	Panel createPanel(IntDimensions dimensions, boolean opaque);
 
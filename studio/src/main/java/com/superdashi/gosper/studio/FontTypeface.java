@@ -30,12 +30,15 @@ import java.text.AttributedString;
 import java.text.BreakIterator;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
+import com.superdashi.gosper.color.Argb;
 import com.superdashi.gosper.layout.Style;
 import com.superdashi.gosper.layout.StyledText;
 import com.superdashi.gosper.layout.StyledText.Segment;
 import com.superdashi.gosper.layout.StyledText.Span;
+import com.superdashi.gosper.studio.Canvas.State;
 
 final class FontTypeface extends Typeface {
 
@@ -57,10 +60,17 @@ final class FontTypeface extends Typeface {
 		return value > 0;
 	}
 
+	// styles combine colors src-over, so a transparent foreground leaves the current color in effect
+	private static boolean hasColor(int argb) {
+		return !Argb.isTransparent(argb);
+	}
+
 	private final Font regularFont;
 	private final Font boldFont;
 	private final Font italicFont;
 	private final Font boldItalicFont;
+	// glyph caches are created on first use, null values record fonts that can't be cached
+	private final Map<Font, GlyphCache> caches = new IdentityHashMap<>();
 
 	FontTypeface(Font font) {
 		regularFont    = font;
@@ -96,6 +106,27 @@ final class FontTypeface extends Typeface {
 		}
 	}
 
+	// selects fonts consistently with the attributes of converted text
+	private Font font(Style style) {
+		Font font = regularFont;
+		if (hasFlag(style.textWeight())) {
+			font = flag(style.textWeight()) ? boldFont : regularFont;
+		}
+		if (hasFlag(style.textItalic())) {
+			font = flag(style.textItalic()) ? italicFont : regularFont;
+		}
+		return font;
+	}
+
+	private synchronized GlyphCache cache(Font font) {
+		GlyphCache cache = caches.get(font);
+		if (cache == null && !caches.containsKey(font)) {
+			cache = GlyphCache.of(font);
+			caches.put(font, cache);
+		}
+		return cache;
+	}
+
 	private Map<Attribute, Object> attributes(Style style) {
 		Map<Attribute, Object> map = Collections.emptyMap();
 		if (hasFlag(style.textWeight())) {
@@ -109,8 +140,7 @@ final class FontTypeface extends Typeface {
 		if (hasFlag(style.textUnderline())) {
 			map = addAttribute(map, TextAttribute.UNDERLINE, flag(style.textUnderline()) ? TextAttribute.UNDERLINE_ON : -1);
 		}
-		//TODO need a way of identifying if color has been set
-		if (style.colorFg() != 0) {
+		if (hasColor(style.colorFg())) {
 			map = addAttribute(map, TextAttribute.FOREGROUND, new Color(style.colorFg(), true));
 		}
 		return map;
@@ -152,6 +182,11 @@ final class FontTypeface extends Typeface {
 
 		@Override
 		public void renderChar(int x, int y, TextStyle style, int c) {
+			GlyphCache cache = cache(font(style));
+			if (cache != null && GlyphCache.isSimple(c)) {
+				cache.renderChar(x, y, c, canvas.intOps());
+				return;
+			}
 			// not in the BMP so fall back to string rendering
 			if (Character.isBmpCodePoint(c) ) {
 				// try something that should be a mite faster
@@ -170,6 +205,7 @@ final class FontTypeface extends Typeface {
 
 		@Override
 		public void renderString(int x, int y, String str) {
+			if (renderCached(x, y, TextStyle.regular(), str)) return;
 			configure(TextStyle.regular());
 			canvas.doGraphics(g -> { g.drawString(str, x, y); } );
 		}
@@ -182,6 +218,7 @@ final class FontTypeface extends Typeface {
 
 		@Override
 		public void renderString(int x, int y, TextStyle style, String str) {
+			if (renderCached(x, y, style, str)) return;
 			configure(style);
 			canvas.doGraphics(g -> {
 				g.drawString(str, x, y);
@@ -200,6 +237,7 @@ final class FontTypeface extends Typeface {
 
 		@Override
 		public void renderText(int x, int y, Style style, StyledText text) {
+			if (renderCached(x, y, style, text)) return;
 			AttributedString as = convert(style, text);
 			canvas.doGraphics(g -> {
 				g.drawString(as.getIterator(), x, y);
@@ -214,6 +252,63 @@ final class FontTypeface extends Typeface {
 			});
 		}
 
+		// returns false if the string cannot be rendered from the glyph cache
+		private boolean renderCached(int x, int y, TextStyle style, String str) {
+			Font font = font(style);
+			GlyphCache cache = cache(font);
+			if (cache == null || !cache.supports(str)) return false;
+			cache.renderString(x, y, -1, str, canvas.intOps());
+			if (style.underlined) {
+				canvas.applyFont(font);
+				canvas.doGraphics(g -> underline(g, x, y, str));
+			}
+			return true;
+		}
+
+		// returns false if the text cannot be rendered from the glyph caches
+		private boolean renderCached(int x, int y, Style style, StyledText text) {
+			Iterable<Segment> segments = text.segments(style);
+			for (Segment segment : segments) {
+				GlyphCache cache = cache(font(segment.style));
+				if (cache == null || !cache.supports(segment.text)) return false;
+			}
+			// the canvas color is only changed when it differs from that of the previous segment
+			State state = null;
+			int color = 0;
+			GlyphCache previous = null;
+			int p = -1;
+			for (Segment segment : segments) {
+				// skip empty segments
+				if (segment.text.length() == 0) continue;
+				int colorFg = segment.style.colorFg();
+				if (!hasColor(colorFg)) {
+					if (state != null) {
+						state.restore();
+						state = null;
+					}
+				} else if (state == null || colorFg != color) {
+					if (state == null) state = canvas.recordState();
+					canvas.color(colorFg);
+				}
+				color = colorFg;
+				Font font = font(segment.style);
+				GlyphCache cache = cache(font);
+				// glyphs are only kerned within a font
+				if (cache != previous) p = -1;
+				int startX = x;
+				x = cache.renderString(x, y, p, segment.text, canvas.intOps());
+				if (flag(segment.style.textUnderline())) {
+					String str = segment.text.toString();
+					canvas.applyFont(font);
+					canvas.doGraphics(g -> underline(g, startX, y, str));
+				}
+				p = segment.text.charAt(segment.text.length() - 1);
+				previous = cache;
+			}
+			if (state != null) state.restore();
+			return true;
+		}
+
 		private void underline(Graphics2D g, float x, float y, String str) {
 			FontMetrics metrics = g.getFontMetrics();
 			LineMetrics lm = metrics.getLineMetrics(str, g);
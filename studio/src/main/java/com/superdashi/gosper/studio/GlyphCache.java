@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.studio;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextAttribute;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.superdashi.gosper.studio.Canvas.IntOps;
+import com.tomgibara.intgeom.IntCoords;
+import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
+
+// lazily rasterizes the glyphs of a font into pages of masks, so that text can be rendered with mask fills
+// glyphs are positioned using integral advances, which matches Java2D when fractional metrics are off
+// fonts that request ligatures or other layout features, and text from scripts that may need shaping, are not supported
+// the cache is bounded: when its pages are exhausted, all glyphs are discarded and rasterized again on use
+final class GlyphCache {
+
+	// statics
+
+	// the width and height of each page
+	private static final int PAGE_SIZE = 256;
+	// the number of pages filled before the cache is cleared
+	private static final int MAX_PAGES = 4;
+	// glyphs for codepoints below this limit are held in an array
+	private static final int DIRECT_LIMIT = 256;
+	// the number of kerning pairs recorded before they are cleared
+	private static final int MAX_KERNINGS = 4096;
+
+	// true if the codepoint is from a script that is laid out one glyph per char
+	// conservatively, this covers Latin, Greek and Cyrillic excluding combining marks
+	static boolean isSimple(int c) {
+		return c < 0x0300 || c >= 0x0370 && c < 0x0590;
+	}
+
+	static GlyphCache of(Font font) {
+		Map<TextAttribute, ?> attrs = font.getAttributes();
+		boolean kerned = TextAttribute.KERNING_ON.equals(attrs.get(TextAttribute.KERNING));
+		if (font.hasLayoutAttributes()) {
+			// kerning is the only layout attribute supported
+			if (TextAttribute.LIGATURES_ON.equals(attrs.get(TextAttribute.LIGATURES))) return null;
+			Object tracking = attrs.get(TextAttribute.TRACKING);
+			if (tracking != null && ((Number) tracking).floatValue() != 0f) return null;
+		}
+		return new GlyphCache(font, kerned);
+	}
+
+	// fields
+
+	private final Font font;
+	private final boolean kerned;
+	private final FontMetrics metrics;
+	private final FontRenderContext frc;
+
+	private final Glyph[] direct = new Glyph[DIRECT_LIMIT];
+	private final Map<Integer, Glyph> indirect = new HashMap<>();
+	private final Map<Integer, Integer> kernings;
+
+	private ImageMask page = null;
+	private Graphics2D graphics = null;
+	private int pageCount = 0;
+	// the shelf onto which glyphs are currently being placed
+	private int shelfX = 0;
+	private int shelfY = 0;
+	private int shelfHeight = 0;
+
+	// constructors
+
+	private GlyphCache(Font font, boolean kerned) {
+		this.font = font;
+		this.kerned = kerned;
+		metrics = ImageUtil.fontMetrics(font);
+		frc = metrics.getFontRenderContext();
+		kernings = kerned ? new HashMap<>() : null;
+	}
+
+	// methods
+
+	// true if every codepoint in the string can be rendered from the cache
+	boolean supports(CharSequence str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (!isSimple(str.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	// renders the character with its baseline origin at (x, y), returning the advanced x coordinate
+	int renderChar(int x, int y, int c, IntOps ops) {
+		Glyph glyph = glyph(c);
+		if (glyph.mask != null) {
+			ops.fillFrame(glyph.mask, IntCoords.at(x + glyph.left, y + glyph.top));
+		}
+		return x + glyph.advance;
+	}
+
+	// renders the string with its baseline origin at (x, y), returning the advanced x coordinate
+	// p is the preceding codepoint for kerning, or -1 if there is none
+	int renderString(int x, int y, int p, CharSequence str, IntOps ops) {
+		for (int i = 0; i < str.length(); i++) {
+			int c = str.charAt(i);
+			if (p != -1) x += kerning(p, c);
+			x = renderChar(x, y, c, ops);
+			p = c;
+		}
+		return x;
+	}
+
+	synchronized Glyph glyph(int c) {
+		Glyph glyph;
+		if (c < DIRECT_LIMIT) {
+			glyph = direct[c];
+			if (glyph == null) direct[c] = glyph = rasterize(c);
+		} else {
+			glyph = indirect.get(c);
+			if (glyph == null) indirect.put(c, glyph = rasterize(c));
+		}
+		return glyph;
+	}
+
+	// the adjustment to the advance of p when followed by c
+	synchronized int kerning(int p, int c) {
+		if (!kerned || p > 0xffff || c > 0xffff) return 0;
+		Integer key = p << 16 | c;
+		Integer kerning = kernings.get(key);
+		if (kerning == null) {
+			char[] chars = { (char) p, (char) c };
+			GlyphVector gv = font.layoutGlyphVector(frc, chars, 0, 2, Font.LAYOUT_LEFT_TO_RIGHT);
+			kerning = (int) Math.round(gv.getGlyphPosition(1).getX()) - metrics.charWidth(p);
+			// pairs can accumulate without any new glyphs being rasterized
+			if (kernings.size() == MAX_KERNINGS) kernings.clear();
+			kernings.put(key, kerning);
+		}
+		return kerning;
+	}
+
+	// private helper methods
+
+	private Glyph rasterize(int c) {
+		int advance = metrics.charWidth(c);
+		GlyphVector gv = font.createGlyphVector(frc, Character.toChars(c));
+		Rectangle bounds = gv.getPixelBounds(frc, 0f, 0f);
+		if (bounds.isEmpty()) return new Glyph(null, 0, 0, advance);
+		int width = bounds.width;
+		int height = bounds.height;
+		if (width > PAGE_SIZE || height > PAGE_SIZE) {
+			// too large to share a page
+			ImageMask mask = new ImageMask(IntDimensions.of(width, height));
+			Graphics2D g = createGraphics(mask);
+			g.drawGlyphVector(gv, -bounds.x, -bounds.y);
+			g.dispose();
+			return new Glyph(mask, bounds.x, bounds.y, advance);
+		}
+		if (shelfX + width > PAGE_SIZE) {
+			shelfX = 0;
+			shelfY += shelfHeight;
+			shelfHeight = 0;
+		}
+		if (page == null || shelfY + height > PAGE_SIZE) newPage();
+		int x = shelfX;
+		int y = shelfY;
+		graphics.drawGlyphVector(gv, x - bounds.x, y - bounds.y);
+		shelfX += width;
+		shelfHeight = Math.max(shelfHeight, height);
+		return new Glyph(page.view(IntRect.rectangle(x, y, width, height)), bounds.x, bounds.y, advance);
+	}
+
+	private void newPage() {
+		if (pageCount == MAX_PAGES) {
+			// masks of discarded glyphs retain their pages until they are no longer referenced
+			Arrays.fill(direct, null);
+			indirect.clear();
+			if (kernings != null) kernings.clear();
+			pageCount = 0;
+		}
+		if (graphics != null) graphics.dispose();
+		page = new ImageMask(IntDimensions.square(PAGE_SIZE));
+		graphics = createGraphics(page);
+		pageCount++;
+		shelfX = 0;
+		shelfY = 0;
+		shelfHeight = 0;
+	}
+
+	private Graphics2D createGraphics(ImageMask mask) {
+		Graphics2D g = mask.image.createGraphics();
+		ImageUtil.configureGraphics(g);
+		g.setColor(Color.WHITE);
+		return g;
+	}
+
+	// inner classes
+
+	static final class Glyph {
+
+		final Mask mask; // null if the glyph has no pixels
+		final int left; // from the origin to the left of the mask
+		final int top; // from the baseline to the top of the mask
+		final int advance;
+
+		Glyph(Mask mask, int left, int top, int advance) {
+			this.mask = mask;
+			this.left = left;
+			this.top = top;
+			this.advance = advance;
+		}
+
+	}
+
+}
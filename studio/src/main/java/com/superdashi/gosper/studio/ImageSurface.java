@@ -29,6 +29,8 @@ class ImageSurface implements Surface {
 	private final boolean mutable;
 	private final IntDimensions dimensions;
 	final BufferedImage image;
+	private IntRaster raster = null; // lazily obtained, null if the pixels are not directly accessible
+	private volatile boolean rasterKnown = false; // volatile since surfaces may be composited by concurrent bands
 
 	static int imageType(boolean opaque) {
 		return opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
@@ -189,6 +191,14 @@ class ImageSurface implements Surface {
 
 	// package scoped methods
 
+	IntRaster raster() {
+		if (!rasterKnown) {
+			raster = IntRaster.of(image);
+			rasterKnown = true;
+		}
+		return raster;
+	}
+
 	Graphics2D createGraphics() {
 		Graphics2D g = image.createGraphics();
 		ImageUtil.configureGraphics(g);
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.studio;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+// direct access to the pixels of int backed images, so that simple operations can bypass Java2D
+// colors are non-premultiplied, and blending matches the SRC and SRC_OVER rules of AlphaComposite
+// all rectangles are in pixel coordinates and must already be clipped to the raster
+final class IntRaster {
+
+	// null if the image is not backed by a simple int array
+	static IntRaster of(BufferedImage image) {
+		int type = image.getType();
+		if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) return null;
+		WritableRaster raster = image.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+		if (!(buffer instanceof DataBufferInt) || buffer.getNumBanks() != 1) return null;
+		if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) return null;
+		int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		int offset = buffer.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+		return new IntRaster(((DataBufferInt) buffer).getData(), offset, stride, raster.getWidth(), raster.getHeight(), type == BufferedImage.TYPE_INT_RGB);
+	}
+
+	// a * b / 255 for values in the range [0,255], computed as per the Java2D alpha tables
+	private static int mul8(int a, int b) {
+		return (a * b * 0x10101 + 0x800000) >>> 24;
+	}
+
+	// b * 255 / a for values in the range [0,255], computed as per the Java2D alpha tables
+	private static int div8(int a, int b) {
+		if (b >= a) return 255;
+		long inc = ((0xffL << 24) + a / 2) / a;
+		return (int) ((0x800000 + b * inc) >> 24);
+	}
+
+	final int[] data;
+	final int offset;
+	final int stride;
+	final int width;
+	final int height;
+	final boolean opaque;
+
+	private IntRaster(int[] data, int offset, int stride, int width, int height, boolean opaque) {
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+		this.width = width;
+		this.height = height;
+		this.opaque = opaque;
+	}
+
+	void fillRect(int minX, int minY, int maxX, int maxY, int argb, boolean src) {
+		if (minX >= maxX || minY >= maxY) return;
+		int alpha = argb >>> 24;
+		if (!src && alpha == 0) return; // nothing to draw
+		if (src || alpha == 255) {
+			int value = opaque ? argb | 0xff000000 : argb;
+			for (int y = minY; y < maxY; y++) {
+				int i = offset + y * stride;
+				Arrays.fill(data, i + minX, i + maxX, value);
+			}
+			return;
+		}
+		for (int y = minY; y < maxY; y++) {
+			int i = offset + y * stride;
+			for (int x = minX; x < maxX; x++) {
+				data[i + x] = blend(argb, data[i + x]);
+			}
+		}
+	}
+
+	// copies the pixels of the source into the rectangle, the source pixel at (sx, sy) corresponding to (minX, minY)
+	void drawRaster(IntRaster source, int sx, int sy, int minX, int minY, int maxX, int maxY, boolean src) {
+		if (minX >= maxX || minY >= maxY) return;
+		int width = maxX - minX;
+		int[] sd = source.data;
+		for (int y = minY; y < maxY; y++) {
+			int i = offset + y * stride + minX;
+			int j = source.offset + (sy + y - minY) * source.stride + sx;
+			if (source.opaque) {
+				if (opaque) {
+					System.arraycopy(sd, j, data, i, width);
+				} else {
+					for (int k = 0; k < width; k++) {
+						data[i + k] = sd[j + k] | 0xff000000;
+					}
+				}
+			} else if (src) {
+				if (opaque) {
+					for (int k = 0; k < width; k++) {
+						data[i + k] = sd[j + k] | 0xff000000;
+					}
+				} else {
+					System.arraycopy(sd, j, data, i, width);
+				}
+			} else {
+				for (int k = 0; k < width; k++) {
+					int argb = sd[j + k];
+					int alpha = argb >>> 24;
+					if (alpha == 255) {
+						data[i + k] = argb;
+					} else if (alpha != 0) {
+						data[i + k] = blend(argb, data[i + k]);
+					}
+				}
+			}
+		}
+	}
+
+	// composites the color over the rectangle, its alpha scaled by the gray mask, the mask pixel at (sx, sy) corresponding to (minX, minY)
+	// returns false if the mask is not backed by a simple byte array
+	boolean fillMask(BufferedImage mask, int sx, int sy, int minX, int minY, int maxX, int maxY, int argb) {
+		WritableRaster raster = mask.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+		SampleModel model = raster.getSampleModel();
+		if (!(buffer instanceof DataBufferByte) || buffer.getNumBanks() != 1) return false;
+		if (!(model instanceof ComponentSampleModel) || model.getNumBands() != 1) return false;
+		ComponentSampleModel csm = (ComponentSampleModel) model;
+		if (csm.getPixelStride() != 1) return false;
+		if (minX >= maxX || minY >= maxY) return true;
+		int alpha = argb >>> 24;
+		if (alpha == 0) return true;
+
+		byte[] md = ((DataBufferByte) buffer).getData();
+		int ms = csm.getScanlineStride();
+		int mo = buffer.getOffset() + csm.getBandOffsets()[0] - raster.getSampleModelTranslateY() * ms - raster.getSampleModelTranslateX();
+		int rgb = argb & 0x00ffffff;
+		int width = maxX - minX;
+		for (int y = minY; y < maxY; y++) {
+			int i = offset + y * stride + minX;
+			int j = mo + (sy + y - minY) * ms + sx;
+			for (int k = 0; k < width; k++) {
+				int m = md[j + k] & 0xff;
+				if (m == 0) continue;
+				// scaled as per CombinedPaint
+				int a = alpha == 255 ? m : m * alpha / 255;
+				if (a == 255) {
+					data[i + k] = 0xff000000 | rgb;
+				} else if (a != 0) {
+					data[i + k] = blend(a << 24 | rgb, data[i + k]);
+				}
+			}
+		}
+		return true;
+	}
+
+	// source over destination, for a partially transparent source
+	private int blend(int argb, int dst) {
+		int sa = argb >>> 24;
+		int na = 255 - sa;
+		int sr = mul8(sa, (argb >> 16) & 0xff);
+		int sg = mul8(sa, (argb >>  8) & 0xff);
+		int sb = mul8(sa,  argb        & 0xff);
+		if (opaque) {
+			return 0xff000000 |
+					(sr + mul8(na, (dst >> 16) & 0xff)) << 16 |
+					(sg + mul8(na, (dst >>  8) & 0xff)) <<  8 |
+					(sb + mul8(na,  dst        & 0xff));
+		}
+		int da = mul8(na, dst >>> 24);
+		int ra = sa + da;
+		if (ra == 0) return 0;
+		int r = sr + mul8(da, (dst >> 16) & 0xff);
+		int g = sg + mul8(da, (dst >>  8) & 0xff);
+		int b = sb + mul8(da,  dst        & 0xff);
+		if (ra != 255) {
+			// unpremultiply
+			r = div8(ra, r);
+			g = div8(ra, g);
+			b = div8(ra, b);
+		}
+		return ra << 24 | r << 16 | g << 8 | b;
+	}
+
+}
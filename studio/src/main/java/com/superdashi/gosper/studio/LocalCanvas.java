@@ -17,6 +17,7 @@
 package com.superdashi.gosper.studio;
 
 import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Font;
@@ -24,8 +25,10 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.Rectangle;
+import java.awt.Stroke;
 import java.awt.TexturePaint;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -48,16 +51,37 @@ import com.tomgibara.intgeom.IntDimensions;
 import com.tomgibara.intgeom.IntRect;
 import com.tomgibara.intgeom.IntVector;
 
+// simple operations are performed directly on the pixels of the surface when the graphics state permits:
+// an integral translation, a rectangular clip, a solid color and a SRC or SRC_OVER composite
+// otherwise all drawing is delegated to Java2D
 class LocalCanvas implements Canvas {
 
 	private final ImageSurface surface;
+	private final IntRaster raster; // null if the surface pixels are not directly accessible
 	private ImageIntOps intOps;
 	private ImageFloatOps floatOps;
 	private Graphics2D g;
 	private Deque<GraphicsState> stack;
+	private boolean drawn = false; // whether the surface may have changed since drawn was last cleared
+
+	// state derived from the graphics, used by the fast paths
+	private boolean stateKnown = false;
+	private boolean blittable; // frames can be copied directly
+	private boolean fillable; // rects can be filled directly
+	private boolean lineable; // lines are drawn with a simple one pixel stroke
+	private boolean src; // as opposed to src over
+	private int argb; // the color when fillable
+	private int tx;
+	private int ty;
+	// the clip in device coordinates
+	private int clipMinX;
+	private int clipMinY;
+	private int clipMaxX;
+	private int clipMaxY;
 
 	LocalCanvas(ImageSurface surface) {
 		this.surface = surface;
+		raster = surface.raster();
 		g = surface.createGraphics();
 	}
 
@@ -78,6 +102,7 @@ class LocalCanvas implements Canvas {
 
 	@Override
 	public Canvas erase() {
+		checkDrawable();
 		//TODO check what happens for opaque image
 		Composite tmp = g.getComposite();
 		g.setComposite(AlphaComposite.Clear);
@@ -89,7 +114,15 @@ class LocalCanvas implements Canvas {
 	@Override
 	public Canvas color(int argb) {
 		checkNotDestroyed();
-		g.setColor(new Color(argb, true));
+		// avoid creating colors when the color is unchanged
+		Paint paint = g.getPaint();
+		if (!(paint instanceof Color) || ((Color) paint).getRGB() != argb) {
+			g.setColor(new Color(argb, true));
+		}
+		if (stateKnown) {
+			fillable = blittable;
+			this.argb = argb;
+		}
 		return this;
 	}
 
@@ -98,6 +131,7 @@ class LocalCanvas implements Canvas {
 		if (shader == null) throw new IllegalArgumentException("null shader");
 		checkNotDestroyed();
 		g.setPaint(shader.toPaint());
+		stateKnown = false;
 		return this;
 	}
 
@@ -107,12 +141,14 @@ class LocalCanvas implements Canvas {
 		checkNotDestroyed();
 		//g.setComposite(composer.toComposite());
 		composer.applyTo(g);
+		stateKnown = false;
 		return this;
 	}
 
 	@Override
 	public Canvas fill() {
-		checkNotDestroyed();
+		checkDrawable();
+		if (fastFill(0, 0, surface.dimensions().width, surface.dimensions().height)) return this;
 		g.fillRect(0, 0, surface.dimensions().width, surface.dimensions().height);
 		return this;
 	}
@@ -120,7 +156,7 @@ class LocalCanvas implements Canvas {
 	@Override
 	public Canvas drawFrame(Frame frame) {
 		if (frame == null) throw new IllegalArgumentException("null frame");
-		checkNotDestroyed();
+		checkDrawable();
 		drawFrameImpl(frame, IntCoords.ORIGIN);
 		return this;
 	}
@@ -128,7 +164,7 @@ class LocalCanvas implements Canvas {
 	@Override
 	public Canvas fillFrame(Frame frame) {
 		if (frame == null) throw new IllegalArgumentException("null frame");
-		checkNotDestroyed();
+		checkDrawable();
 		fillFrameImpl(frame, IntCoords.ORIGIN);
 		return this;
 	}
@@ -205,9 +241,18 @@ class LocalCanvas implements Canvas {
 		return g.getFontMetrics(font);
 	}
 
+	// true if the surface may have been drawn into since the last call
+	boolean clearDrawn() {
+		boolean drawn = this.drawn;
+		this.drawn = false;
+		return drawn;
+	}
+
 	void doGraphics(Consumer<Graphics2D> op) {
-		checkNotDestroyed();
+		checkDrawable();
 		op.accept(g);
+		// the operation may have changed the graphics state
+		stateKnown = false;
 	}
 
 	// private methods
@@ -216,11 +261,17 @@ class LocalCanvas implements Canvas {
 		if (g == null) throw new IllegalStateException("closed");
 	}
 
+	private void checkDrawable() {
+		checkNotDestroyed();
+		drawn = true;
+	}
+
 	private void drawFrameImpl(Frame frame, IntCoords coords) {
 		int x = coords.x;
 		int y = coords.y;
 		if (frame instanceof ImageSurface) {
 			ImageSurface is = (ImageSurface) frame;
+			if (fastBlit(is, x, y)) return;
 			g.drawImage(is.image, x, y, null);
 			return;
 		}
@@ -268,6 +319,7 @@ class LocalCanvas implements Canvas {
 		}
 		if (frame instanceof ImageMask) {
 			ImageMask im = (ImageMask) frame;
+			if (fastMask(im, x, y)) return;
 			fillImage(im.image, x, y, true);
 			return;
 		}
@@ -276,6 +328,7 @@ class LocalCanvas implements Canvas {
 		}
 		if (frame instanceof EntireMask) {
 			IntDimensions dimensions = frame.dimensions();
+			if (fastFill(x, y, dimensions.width, dimensions.height)) return;
 			g.fillRect(x, y, dimensions.width, dimensions.height);
 			return;
 		}
@@ -324,6 +377,138 @@ class LocalCanvas implements Canvas {
 		g.setPaint(op);
 	}
 
+	private void deriveState() {
+		stateKnown = true;
+		blittable = false;
+		fillable = false;
+		if (raster == null) return;
+
+		AffineTransform transform = g.getTransform();
+		if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) return;
+		double dx = transform.getTranslateX();
+		double dy = transform.getTranslateY();
+		if (dx != (int) dx || dy != (int) dy) return;
+		tx = (int) dx;
+		ty = (int) dy;
+
+		Composite composite = g.getComposite();
+		if (!(composite instanceof AlphaComposite)) return;
+		AlphaComposite ac = (AlphaComposite) composite;
+		if (ac.getAlpha() != 1f) return;
+		switch (ac.getRule()) {
+		case AlphaComposite.SRC: src = true; break;
+		case AlphaComposite.SRC_OVER: src = false; break;
+		default: return;
+		}
+
+		clipMinX = 0;
+		clipMinY = 0;
+		clipMaxX = raster.width;
+		clipMaxY = raster.height;
+		java.awt.Shape clip = g.getClip();
+		if (clip != null) {
+			if (!(clip instanceof Rectangle2D)) return;
+			Rectangle2D rect = (Rectangle2D) clip;
+			double minX = rect.getMinX();
+			double minY = rect.getMinY();
+			double maxX = rect.getMaxX();
+			double maxY = rect.getMaxY();
+			if (minX != (int) minX || minY != (int) minY || maxX != (int) maxX || maxY != (int) maxY) return;
+			clipMinX = Math.max(clipMinX, (int) minX + tx);
+			clipMinY = Math.max(clipMinY, (int) minY + ty);
+			clipMaxX = Math.min(clipMaxX, (int) maxX + tx);
+			clipMaxY = Math.min(clipMaxY, (int) maxY + ty);
+		}
+		blittable = true;
+
+		Stroke stroke = g.getStroke();
+		lineable = stroke instanceof BasicStroke && ((BasicStroke) stroke).getLineWidth() == 1f && ((BasicStroke) stroke).getDashArray() == null;
+
+		Paint paint = g.getPaint();
+		if (paint instanceof Color) {
+			argb = ((Color) paint).getRGB();
+			fillable = true;
+		}
+	}
+
+	// returns false if the rect could not be filled directly
+	private boolean fastFill(int x, int y, int width, int height) {
+		if (!stateKnown) deriveState();
+		if (!fillable) return false;
+		x += tx;
+		y += ty;
+		raster.fillRect(
+				Math.max(x, clipMinX),
+				Math.max(y, clipMinY),
+				Math.min(x + width, clipMaxX),
+				Math.min(y + height, clipMaxY),
+				argb, src);
+		return true;
+	}
+
+	// returns false if the line could not be drawn directly
+	private boolean fastLine(int x1, int y1, int x2, int y2) {
+		if (x1 != x2 && y1 != y2) return false;
+		if (!stateKnown) deriveState();
+		if (!fillable || !lineable) return false;
+		// lines include both end points
+		return fastFill(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+	}
+
+	// returns false if the rect could not be stroked directly
+	// the sides are filled separately so that no pixel is composited twice
+	private boolean fastStrokeRect(IntRect rect) {
+		if (!stateKnown) deriveState();
+		if (!fillable || !lineable) return false;
+		int width = rect.width();
+		int height = rect.height();
+		// narrow rects have no interior
+		if (width <= 2 || height <= 2) return fastFill(rect.minX, rect.minY, width, height);
+		fastFill(rect.minX, rect.minY, width, 1);
+		fastFill(rect.minX, rect.maxY - 1, width, 1);
+		fastFill(rect.minX, rect.minY + 1, 1, height - 2);
+		fastFill(rect.maxX - 1, rect.minY + 1, 1, height - 2);
+		return true;
+	}
+
+	// returns false if the mask could not be filled directly
+	private boolean fastMask(ImageMask im, int x, int y) {
+		if (!stateKnown) deriveState();
+		// masks only reduce the alpha of the source, so only src over is supported
+		if (!fillable || src) return false;
+		x += tx;
+		y += ty;
+		int minX = Math.max(x, clipMinX);
+		int minY = Math.max(y, clipMinY);
+		IntDimensions dimensions = im.dimensions();
+		return raster.fillMask(im.image, minX - x, minY - y,
+				minX,
+				minY,
+				Math.min(x + dimensions.width, clipMaxX),
+				Math.min(y + dimensions.height, clipMaxY),
+				argb);
+	}
+
+	// returns false if the surface could not be copied directly
+	private boolean fastBlit(ImageSurface is, int x, int y) {
+		if (!stateKnown) deriveState();
+		if (!blittable) return false;
+		IntRaster source = is.raster();
+		// overlapping copies are left to Java2D
+		if (source == null || source.data == raster.data) return false;
+		x += tx;
+		y += ty;
+		int minX = Math.max(x, clipMinX);
+		int minY = Math.max(y, clipMinY);
+		raster.drawRaster(source, minX - x, minY - y,
+				minX,
+				minY,
+				Math.min(x + source.width, clipMaxX),
+				Math.min(y + source.height, clipMaxY),
+				src);
+		return true;
+	}
+
 	// inner classes
 
 	private final class ImageIntOps implements IntOps {
@@ -337,6 +522,7 @@ class LocalCanvas implements Canvas {
 		public IntOps translate(int dx, int dy) {
 			checkNotDestroyed();
 			g.translate(dx, dy);
+			stateKnown = false;
 			return this;
 		}
 
@@ -344,12 +530,14 @@ class LocalCanvas implements Canvas {
 		public IntOps translate(IntVector vector) {
 			checkNotDestroyed();
 			g.translate(vector.x, vector.y);
+			stateKnown = false;
 			return this;
 		}
 
 		@Override
 		public IntOps plotPixel(int x, int y) {
-			checkNotDestroyed();
+			checkDrawable();
+			if (fastFill(x, y, 1, 1)) return this;
 			g.fillRect(x, y, 1, 1);
 			return this;
 		}
@@ -369,21 +557,23 @@ class LocalCanvas implements Canvas {
 
 		@Override
 		public IntOps strokeLine(int x1, int y1, int x2, int y2) {
-			checkNotDestroyed();
+			checkDrawable();
+			if (fastLine(x1, y1, x2, y2)) return this;
 			g.drawLine(x1, y1, x2, y2);
 			return this;
 		}
 
 		@Override
 		public IntOps strokeRect(IntRect rect) {
-			checkNotDestroyed();
+			checkDrawable();
+			if (fastStrokeRect(rect)) return this;
 			g.drawRect(rect.minX, rect.minY, rect.width() - 1, rect.height() - 1);
 			return this;
 		}
 
 		@Override
 		public IntOps strokeEllipse(IntRect rect) {
-			checkNotDestroyed();
+			checkDrawable();
 			g.drawOval(rect.minX, rect.minY, rect.width() - 1, rect.height() - 1);
 			return this;
 		}
@@ -391,7 +581,8 @@ class LocalCanvas implements Canvas {
 		@Override
 		public IntOps fillRect(IntRect rect) {
 			if (rect == null) throw new IllegalArgumentException("null rect");
-			checkNotDestroyed();
+			checkDrawable();
+			if (fastFill(rect.minX, rect.minY, rect.width(), rect.height())) return this;
 			g.fillRect(rect.minX, rect.minY, rect.width(), rect.height());
 			return this;
 		}
@@ -399,7 +590,7 @@ class LocalCanvas implements Canvas {
 		@Override
 		public IntOps fillEllipse(IntRect rect) {
 			if (rect == null) throw new IllegalArgumentException("null rect");
-			checkNotDestroyed();
+			checkDrawable();
 			g.fillOval(rect.minX, rect.minY, rect.width(), rect.height());
 			return this;
 		}
@@ -408,7 +599,7 @@ class LocalCanvas implements Canvas {
 		public IntOps drawFrame(Frame frame, IntCoords coords) {
 			if (frame == null) throw new IllegalArgumentException("null frame");
 			if (coords == null) throw new IllegalArgumentException("null coords");
-			checkNotDestroyed();
+			checkDrawable();
 			drawFrameImpl(frame, coords);
 			return this;
 		}
@@ -417,7 +608,7 @@ class LocalCanvas implements Canvas {
 		public IntOps fillFrame(Frame frame, IntCoords coords) {
 			if (frame == null) throw new IllegalArgumentException("null frame");
 			if (coords == null) throw new IllegalArgumentException("null coords");
-			checkNotDestroyed();
+			checkDrawable();
 			fillFrameImpl(frame, coords);
 			return this;
 		}
@@ -427,6 +618,7 @@ class LocalCanvas implements Canvas {
 			if (rect == null) throw new IllegalArgumentException("null rect");
 			checkNotDestroyed();
 			g.clipRect(rect.minX, rect.minY, rect.width(), rect.height());
+			stateKnown = false;
 			return this;
 		}
 
@@ -436,6 +628,7 @@ class LocalCanvas implements Canvas {
 			checkNotDestroyed();
 			g.clipRect(rect.minX, rect.minY, rect.width(), rect.height());
 			g.translate(rect.minX, rect.minY);
+			stateKnown = false;
 			return this;
 		}
 
@@ -458,6 +651,7 @@ class LocalCanvas implements Canvas {
 		public FloatOps translate(float x, float y) {
 			checkNotDestroyed();
 			g.translate(x, y);
+			stateKnown = false;
 			return this;
 		}
 
@@ -466,6 +660,7 @@ class LocalCanvas implements Canvas {
 			if (vector == null) throw new IllegalArgumentException("null vector");
 			checkNotDestroyed();
 			g.translate(vector.x, vector.y);
+			stateKnown = false;
 			return this;
 		}
 
@@ -474,13 +669,14 @@ class LocalCanvas implements Canvas {
 			if (transform == null) throw new IllegalArgumentException("null transform");
 			checkNotDestroyed();
 			g.transform(AWTUtil.toAffineTransform(transform));
+			stateKnown = false;
 			return this;
 		}
 
 		@Override
 		public FloatOps fillRect(Rect rect) {
 			if (rect == null) throw new IllegalArgumentException("null rect");
-			checkNotDestroyed();
+			checkDrawable();
 			g.fill(AWTUtil.toRectangle(rect));
 			return this;
 		}
@@ -488,7 +684,7 @@ class LocalCanvas implements Canvas {
 		@Override
 		public FloatOps fillEllipse(Ellipse ellipse) {
 			if (ellipse == null) throw new IllegalArgumentException("null ellipse");
-			checkNotDestroyed();
+			checkDrawable();
 			g.fill(AWTUtil.toEllipse(ellipse));
 			return this;
 		}
@@ -496,7 +692,7 @@ class LocalCanvas implements Canvas {
 		@Override
 		public FloatOps fillShape(Shape shape) {
 			if (shape == null) throw new IllegalArgumentException("null shape");
-			checkNotDestroyed();
+			checkDrawable();
 			g.fill(AWTUtil.toShape2D(shape));
 			return this;
 		}
@@ -735,6 +931,7 @@ class LocalCanvas implements Canvas {
 			g.setTransform(transform);
 			g.setClip(clip);
 			g.setPaint(paint);
+			stateKnown = false;
 			invalid = true;
 		}
 
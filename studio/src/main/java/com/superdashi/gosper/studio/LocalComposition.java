@@ -19,19 +19,27 @@ package com.superdashi.gosper.studio;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
-import com.superdashi.gosper.studio.Target.SurfaceTarget;
 import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
 
 final class LocalComposition implements Composition {
 
+	// true if the rectangles share at least one pixel
+	private static boolean overlaps(IntRect a, IntRect b) {
+		return a.minX < b.maxX && b.minX < a.maxX && a.minY < b.maxY && b.minY < a.maxY;
+	}
+
 	final LocalStudio studio;
 	private final LocalSurfacePool pool;
 	private final List<LocalPane> panes = new ArrayList<>();
 	private final Set<LocalPanel> panels = new HashSet<>();
 	private boolean panesDisordered = false;
 	private boolean destroyed = false;
+	private IntRect damage = null; // bounds of the regions damaged since the last composite, null if none
 
 	LocalComposition(LocalStudio studio, LocalSurfacePool pool) {
 		this.studio = studio;
@@ -39,25 +47,42 @@ final class LocalComposition implements Composition {
 	}
 
 	@Override
-	public void compositeTo(Target target) {
+	public Optional<IntRect> compositeTo(Target target) {
 		if (target == null) throw new IllegalArgumentException("null target");
-		// only one target type atm
-		Surface surface = ((SurfaceTarget) target).surface;
+		Surface surface = target.surface();
 
 //		System.out.println("STARTING COMPOSITION");
-		if (panes.isEmpty()) return;
+		if (panes.isEmpty()) return Optional.empty();
+		for (LocalPane pane : panes) {
+			pane.damageIfDrawn();
+		}
 		//if (!dimensions.equals(target.dimensions())) throw new IllegalArgumentException("incompatible target");
+		IntRect whole = surface.dimensions().toRect();
+		IntRect region;
+		if (target.composition != this) {
+			// the target may contain anything, so it is recomposited entirely
+			region = whole;
+			target.composition = this;
+		} else if (damage == null || !overlaps(damage, whole)) {
+			damage = null;
+			return Optional.empty();
+		} else {
+			region = IntRect.bounded(
+					Math.max(damage.minX, whole.minX), Math.max(damage.minY, whole.minY),
+					Math.min(damage.maxX, whole.maxX), Math.min(damage.maxY, whole.maxY)
+					);
+		}
+		damage = null;
 		orderPanes();
-		//TODO want proper compositing
-		//TODO also want dirty tracking
-		//TODO may want to render shadows
-		Canvas canvas = surface.createCanvas();
-		for (LocalPane pane : panes) {
-			if (pane.invalid()) continue;
-//			System.out.println("DRAWING " + pane.surface().dimensions() + " TO " + pane.coords + "(" + pane.hashCode() + ")");
-			canvas.intOps().drawFrame(pane.surface(), pane.coords);
+
+		int bands = target.bands(region);
+		if (bands == 1) {
+			compositeRegion(surface, region, region != whole);
+		} else {
+			compositeBands(surface, region, bands);
 		}
-		canvas.destroy();
+		target.composited(region);
+		return Optional.of(region);
 	}
 
 	@Override
@@ -109,16 +134,66 @@ final class LocalComposition implements Composition {
 		pane.ordinal = size;
 		panes.add(pane);
 		panesDisordered = size > 0;
+		damage(pane.area());
 	}
 
 	void remove(LocalPane pane) {
 		panes.remove(pane.ordinal);
+		damage(pane.area());
+	}
+
+	void reorder() {
+		panesDisordered = true;
+	}
+
+	// records that the region (in target coordinates) must be recomposited
+	void damage(IntRect rect) {
+		damage = damage == null ? rect : damage.growToIncludeRect(rect);
 	}
 
 	void remove(LocalPanel panel) {
 		panels.remove(panel);
 	}
 
+	// bands are composited concurrently onto disjoint rows of the surface, each through its own canvas
+	// panes are not modified during compositing, so they may be shared between bands
+	private void compositeBands(Surface surface, IntRect region, int bands) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(bands);
+		int height = region.height();
+		for (int i = 0; i < bands; i++) {
+			IntRect band = IntRect.bounded(
+					region.minX, region.minY + height * i / bands,
+					region.maxX, region.minY + height * (i + 1) / bands
+					);
+			tasks.add(ForkJoinTask.adapt(() -> compositeRegion(surface, band, true)));
+		}
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	private void compositeRegion(Surface surface, IntRect region, boolean clip) {
+		// panes beneath an opaque pane that covers the region needn't be drawn
+		int first = 0;
+		for (int i = panes.size() - 1; i > 0; i--) {
+			LocalPane pane = panes.get(i);
+			if (!pane.invalid() && pane.opaque() && pane.area().containsRect(region)) {
+				first = i;
+				break;
+			}
+		}
+
+		//TODO want proper compositing
+		//TODO may want to render shadows
+		Canvas canvas = surface.createCanvas();
+		if (clip) canvas.intOps().clipRect(region);
+		for (int i = first; i < panes.size(); i++) {
+			LocalPane pane = panes.get(i);
+			if (pane.invalid() || !overlaps(pane.area(), region)) continue;
+//			System.out.println("DRAWING " + pane.surface().dimensions() + " TO " + pane.coords + "(" + pane.hashCode() + ")");
+			canvas.intOps().drawFrame(pane.surface(), pane.coords);
+		}
+		canvas.destroy();
+	}
+
 	private void orderPanes() {
 		if (panesDisordered) {
 			panes.sort((a,b) -> a.elevation - b.elevation);
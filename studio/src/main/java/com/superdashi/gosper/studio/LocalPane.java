@@ -69,19 +69,26 @@ final class LocalPane implements Pane {
 	public void moveTo(IntCoords coords) {
 		if (coords == null) throw new IllegalArgumentException("null coords");
 		checkExists();
+		if (coords.equals(this.coords)) return;
+		damage();
 		this.coords = coords;
+		damage();
 	}
 
 	@Override
 	public void elevateTo(int elevation) {
 		checkExists();
+		if (elevation == this.elevation) return;
 		this.elevation = elevation;
+		panel.composition.reorder();
+		damage();
 	}
 
 	@Override
 	public LocalCanvas canvas() {
 		checkExists();
 		checkValid();
+		// the pane is damaged when it is next composited, if the canvas has been drawn into
 		return canvas == null ? canvas = surface.createCanvas() : canvas;
 	}
 
@@ -98,6 +105,11 @@ final class LocalPane implements Pane {
 		return surface == null;
 	}
 
+	// the bounds of the pane within the composition, available even when invalid
+	IntRect area() {
+		return IntRect.rectangle(coords, dimensions);
+	}
+
 	ImageSurface surface() {
 		assert surface != null;
 		return surface;
@@ -106,9 +118,16 @@ final class LocalPane implements Pane {
 	void validate(ImageSurface surface) {
 		assert surface != null;
 		this.surface = surface;
+		damage();
+	}
+
+	// we can't know what was drawn, so assume the whole pane changed
+	void damageIfDrawn() {
+		if (canvas != null && canvas.clearDrawn()) damage();
 	}
 
 	void invalidate() {
+		if (surface != null) damage();
 		surface = null;
 		if (canvas != null) {
 			canvas.destroy();
@@ -116,6 +135,10 @@ final class LocalPane implements Pane {
 		}
 	}
 
+	private void damage() {
+		panel.composition.damage(area());
+	}
+
 	private void checkExists() {
 		if (panel.destroyed()) throw new IllegalStateException("destroyed");
 	}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 Dashi Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.superdashi.gosper.studio;
+
+import java.util.Arrays;
+
+import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
+
+// panes are composited onto an opaque surface, and composited regions are then reduced to bits
+// this avoids the generic color conversion that Java2D applies to indexed images
+final class PackedBitTarget extends Target {
+
+	// luminance weights for each channel in 8 bit fixed point, the weights sum to 256
+	private static final int[] LUM_R = new int[256];
+	private static final int[] LUM_G = new int[256];
+	private static final int[] LUM_B = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			LUM_R[i] = i *  77;
+			LUM_G[i] = i * 150;
+			LUM_B[i] = i *  29;
+		}
+	}
+
+	private static final int[] BAYER = {
+			 0, 32,  8, 40,  2, 34, 10, 42,
+			48, 16, 56, 24, 50, 18, 58, 26,
+			12, 44,  4, 36, 14, 46,  6, 38,
+			60, 28, 52, 20, 62, 30, 54, 22,
+			 3, 35, 11, 43,  1, 33,  9, 41,
+			51, 19, 59, 27, 49, 17, 57, 25,
+			15, 47,  7, 39, 13, 45,  5, 37,
+			63, 31, 55, 23, 61, 29, 53, 21,
+	};
+
+	private final byte[] data;
+	private final int width;
+	private final int stride; // bytes per row
+	private final Dither dither;
+	private final int threshold;
+	private final int[] pixels;
+	private final Surface surface;
+	private final int[] row; // luminances, then bits, of the row being packed
+	private final int[] thresholds; // for ordered dithering, indexed by matrix cell
+	private final int[] errors; // for error diffusion, current row then next row
+
+	PackedBitTarget(IntDimensions dimensions, byte[] data, Dither dither, int threshold) {
+		this.data = data;
+		this.dither = dither;
+		this.threshold = threshold;
+		width = dimensions.width;
+		stride = (width + 7) >> 3;
+		pixels = new int[dimensions.area()];
+		surface = Surface.overIntRGB(dimensions, pixels);
+		row = new int[width];
+		if (dither == Dither.ORDERED) {
+			// centre the matrix on the threshold
+			thresholds = new int[BAYER.length];
+			for (int i = 0; i < thresholds.length; i++) {
+				thresholds[i] = threshold + BAYER[i] * 4 + 2 - 128;
+			}
+		} else {
+			thresholds = null;
+		}
+		errors = dither == Dither.DIFFUSION ? new int[(width + 2) * 2] : null;
+	}
+
+	@Override
+	Surface surface() {
+		return surface;
+	}
+
+	@Override
+	void composited(IntRect region) {
+		int minX = region.minX;
+		int maxX = region.maxX;
+		if (errors != null) Arrays.fill(errors, 0);
+		for (int y = region.minY; y < region.maxY; y++) {
+			luminances(y, minX, maxX);
+			switch (dither) {
+			case NONE      : threshold(minX, maxX);   break;
+			case ORDERED   : order(y, minX, maxX);    break;
+			case DIFFUSION : diffuse(y, minX, maxX);  break;
+			}
+			pack(y, minX, maxX);
+		}
+	}
+
+	private void luminances(int y, int minX, int maxX) {
+		int offset = y * width;
+		for (int x = minX; x < maxX; x++) {
+			int p = pixels[offset + x];
+			row[x] = (LUM_R[(p >> 16) & 0xff] + LUM_G[(p >> 8) & 0xff] + LUM_B[p & 0xff]) >> 8;
+		}
+	}
+
+	private void threshold(int minX, int maxX) {
+		int threshold = this.threshold;
+		for (int x = minX; x < maxX; x++) {
+			row[x] = row[x] >= threshold ? 1 : 0;
+		}
+	}
+
+	private void order(int y, int minX, int maxX) {
+		int base = (y & 7) << 3;
+		for (int x = minX; x < maxX; x++) {
+			row[x] = row[x] >= thresholds[base | (x & 7)] ? 1 : 0;
+		}
+	}
+
+	// errors are accumulated in sixteenths, and are confined to the region
+	private void diffuse(int y, int minX, int maxX) {
+		int length = width + 2;
+		int curr = (y & 1) == 0 ? 0 : length;
+		int next = length - curr;
+		for (int x = minX; x < maxX; x++) {
+			int i = x + 1;
+			int value = row[x] + (errors[curr + i] >> 4);
+			errors[curr + i] = 0;
+			int bit = value >= threshold ? 1 : 0;
+			int error = bit == 0 ? value : value - 255;
+			if (x + 1 < maxX) errors[curr + i + 1] += error * 7;
+			if (x > minX) errors[next + i - 1] += error * 3;
+			errors[next + i    ] += error * 5;
+			if (x + 1 < maxX) errors[next + i + 1] += error;
+			row[x] = bit;
+		}
+	}
+
+	// writes whole bytes, preserving any bits outside the region
+	private void pack(int y, int minX, int maxX) {
+		int offset = y * stride;
+		int x = minX;
+		while (x < maxX) {
+			int index = offset + (x >> 3);
+			int from = x & 7;
+			int to = Math.min(8, from + maxX - x);
+			int bits = 0;
+			for (int b = from; b < to; b++) {
+				bits |= row[x++] << (7 - b);
+			}
+			if (from == 0 && to == 8) {
+				data[index] = (byte) bits;
+			} else {
+				int mask = (0xff >> from) & (0xff << (8 - to));
+				data[index] = (byte) ((data[index] & ~mask) | bits);
+			}
+		}
+	}
+
+}
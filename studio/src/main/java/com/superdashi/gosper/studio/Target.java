@@ -19,9 +19,25 @@ package com.superdashi.gosper.studio;
 import java.awt.image.BufferedImage;
 
 import com.tomgibara.intgeom.IntDimensions;
+import com.tomgibara.intgeom.IntRect;
 
 public abstract class Target {
 
+	// how colors are reduced to the single bit of a packed bitmap
+	public enum Dither {
+		NONE,      // pixels are lit if their luminance meets the threshold
+		ORDERED,   // the threshold is varied with an 8x8 Bayer matrix
+		DIFFUSION; // the error at each pixel is diffused (Floyd-Steinberg)
+	}
+
+	public static final int DEFAULT_THRESHOLD = 128;
+
+	// regions with at least this many pixels are composited in parallel when tiling is enabled
+	public static final int DEFAULT_TILING_THRESHOLD = 32 * 1024;
+
+	// bands are never made shorter than this, so that the work in each band outweighs the cost of scheduling it
+	private static final int MIN_BAND_HEIGHT = 16;
+
 	public static Target toIntRGB(IntDimensions dimensions, int[] data) {
 		ImageUtil.checkSurfaceData(dimensions, data, 32);
 		return new SurfaceTarget(ImageUtil.imageOverIntRGB(dimensions, data));
@@ -42,6 +58,20 @@ public abstract class Target {
 		return new SurfaceTarget(ImageUtil.imageOverByteBitmap(dimensions, data));
 	}
 
+	// rows are packed from the most significant bit of each byte and padded to whole bytes, lit pixels are set
+	public static Target toPackedBits(IntDimensions dimensions, byte[] data) {
+		return toPackedBits(dimensions, data, Dither.NONE, DEFAULT_THRESHOLD);
+	}
+
+	// the threshold is a luminance between 0 and 256 inclusive, at or above which a pixel is lit
+	public static Target toPackedBits(IntDimensions dimensions, byte[] data, Dither dither, int threshold) {
+		ImageUtil.checkSurfaceData(dimensions, data, 1);
+		if ((dimensions.width + 7) / 8 * dimensions.height > data.length) throw new IllegalArgumentException("data array too short");
+		if (dither == null) throw new IllegalArgumentException("null dither");
+		if (threshold < 0 || threshold > 256) throw new IllegalArgumentException("invalid threshold");
+		return new PackedBitTarget(dimensions, data, dither, threshold);
+	}
+
 	public static Target toImage(BufferedImage image) {
 		if (image == null) throw new IllegalArgumentException("null image");
 		return new SurfaceTarget(image);
@@ -53,8 +83,51 @@ public abstract class Target {
 		return new SurfaceTarget(surface);
 	}
 
+	// the composition that last composited to this target, null if unknown
+	Composition composition = null;
+	// the minimum number of pixels in a region for it to be split into bands, zero if tiling is disabled
+	private int tilingThreshold = 0;
+
 	Target() { }
 
+	// indicates that the target has been modified, so that the next composite will redraw it entirely
+	public void invalidate() {
+		composition = null;
+	}
+
+	// composites large regions in horizontal bands, in parallel, for targets that are expensive to composite
+	public void enableTiling() {
+		enableTiling(DEFAULT_TILING_THRESHOLD);
+	}
+
+	// the threshold is the minimum number of pixels in a region for it to be composited in parallel
+	public void enableTiling(int threshold) {
+		if (threshold < 1) throw new IllegalArgumentException("non-positive threshold");
+		tilingThreshold = threshold;
+	}
+
+	public void disableTiling() {
+		tilingThreshold = 0;
+	}
+
+	public boolean isTilingEnabled() {
+		return tilingThreshold != 0;
+	}
+
+	// the surface onto which panes are composited
+	abstract Surface surface();
+
+	// the number of bands into which the region should be split for compositing
+	int bands(IntRect region) {
+		if (tilingThreshold == 0) return 1;
+		if (region.width() * region.height() < tilingThreshold) return 1;
+		int bands = Math.min(Runtime.getRuntime().availableProcessors(), region.height() / MIN_BAND_HEIGHT);
+		return Math.max(bands, 1);
+	}
+
+	// called after the region of the surface has been composited
+	void composited(IntRect region) { }
+
 	static class SurfaceTarget extends Target {
 
 		final Surface surface;
@@ -67,5 +140,10 @@ public abstract class Target {
 			this.surface = surface;
 		}
 
+		@Override
+		Surface surface() {
+			return surface;
+		}
+
 	}
 }
@@ -16,7 +16,10 @@
  */
 package com.superdashi.gosper.studio;
 
+import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics2D;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -25,6 +28,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
+import org.junit.Assert;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
@@ -579,6 +583,103 @@ public class LocalCanvasTest extends RenderTest {
 		recordResult(surface, "fontStyledText");
 	}
 
+	@Test
+	public void testFastPaths() {
+		for (boolean opaque : new boolean[] {true, false}) {
+			ImageSurface expected = ImageSurface.sized(IntDimensions.of(40, 30), opaque);
+			ImageSurface actual = ImageSurface.sized(IntDimensions.of(40, 30), opaque);
+			ImageSurface tile = ImageSurface.sized(IntDimensions.of(8, 6), false);
+			Random r = new Random(0L);
+			for (int y = 0; y < 30; y++) {
+				for (int x = 0; x < 40; x++) {
+					int argb = r.nextInt();
+					expected.writePixel(x, y, argb);
+					actual.writePixel(x, y, argb);
+				}
+			}
+			for (int y = 0; y < 6; y++) {
+				for (int x = 0; x < 8; x++) {
+					tile.writePixel(x, y, r.nextInt());
+				}
+			}
+
+			// draw directly with Java2D
+			Graphics2D g = expected.createGraphics();
+			g.setColor(new Color(0x80ff8000, true));
+			g.fillRect(2, 3, 10, 7);
+			g.translate(5, 4);
+			g.clipRect(0, 0, 30, 20);
+			g.drawLine(-3, 2, 40, 2);
+			g.drawLine(6, 0, 6, 25);
+			g.fillRect(8, 8, 1, 1);
+			g.drawImage(tile.image, 25, 15, null);
+			g.setColor(new Color(0xff0000ff, true));
+			g.drawRect(1, 1, 9, 7);
+			g.setComposite(AlphaComposite.Src);
+			g.setColor(new Color(0x4000ff00, true));
+			g.fillRect(12, 10, 6, 5);
+			g.drawImage(tile.image, -2, -1, null);
+			g.dispose();
+
+			// draw with the canvas
+			actual.createCanvas()
+				.color(0x80ff8000)
+				.intOps()
+				.fillRect(IntRect.rectangle(2, 3, 10, 7))
+				.translate(5, 4)
+				.clipRect(IntRect.rectangle(0, 0, 30, 20))
+				.strokeLine(-3, 2, 40, 2)
+				.strokeLine(6, 0, 6, 25)
+				.plotPixel(8, 8)
+				.drawFrame(tile, IntCoords.at(25, 15))
+				.canvas()
+				.color(0xff0000ff)
+				.intOps()
+				.strokeRect(IntRect.rectangle(1, 1, 10, 8))
+				.canvas()
+				.composer(new PorterDuff(PorterDuff.Rule.SRC).asComposer())
+				.color(0x4000ff00)
+				.intOps()
+				.fillRect(IntRect.rectangle(12, 10, 6, 5))
+				.drawFrame(tile, IntCoords.at(-2, -1))
+				.canvas()
+				.destroy();
+
+			for (int y = 0; y < 30; y++) {
+				for (int x = 0; x < 40; x++) {
+					Assert.assertEquals("pixel at " + x + "," + y, expected.readPixel(x, y), actual.readPixel(x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGlyphCache() throws Exception {
+		String str = "Glyphs are cached: AV To, 1234!";
+		ImageSurface expected = ImageSurface.sized(IntDimensions.of(250, 25), true);
+		ImageSurface actual = ImageSurface.sized(IntDimensions.of(250, 25), true);
+
+		Graphics2D g = expected.createGraphics();
+		g.setColor(Color.WHITE);
+		g.setFont(font("SourceSansPro-Regular.ttf").deriveFont(15f));
+		g.drawString(str, 2, 20);
+		g.dispose();
+
+		// the second rendering uses cached glyphs
+		Canvas canvas = actual.createCanvas();
+		IntTextOps ops = canvas.color(Argb.WHITE).intOps().newText(testTypeface(15f));
+		ops.moveTo(2, 20).renderString(str);
+		canvas.color(Argb.BLACK).fill().color(Argb.WHITE);
+		ops.renderString(str);
+		canvas.destroy();
+
+		for (int y = 0; y < 25; y++) {
+			for (int x = 0; x < 250; x++) {
+				Assert.assertEquals("pixel at " + x + "," + y, expected.readPixel(x, y), actual.readPixel(x, y));
+			}
+		}
+	}
+
 	private ImageSurface simpleTile() {
 		ImageSurface tile = ImageSurface.sized(IntDimensions.square(2), true);
 		tile.writePixel(0,0,0xffffffff);
@@ -16,6 +16,9 @@
  */
 package com.superdashi.gosper.studio;
 
+import java.util.Optional;
+
+import org.junit.Assert;
 import org.junit.Test;
 
 import com.superdashi.gosper.color.Argb;
@@ -61,6 +64,92 @@ public class StudioTest extends RenderTest {
 		comp.destroy();
 	}
 
+	@Test
+	public void testDamage() {
+		Studio studio = new StudioPlan().createLocalStudio();
+		Composition comp = studio.createComposition();
+		IntDimensions fullScreen = IntDimensions.of(320, 240);
+		Panel panel = comp.createPanel(IntDimensions.of(100, 20), true);
+		Pane pane = panel.createEntirePane(IntCoords.at(50, 60), 0);
+		Target target = Target.toSurface(Surface.create(fullScreen, false));
+
+		// first composite covers the whole target
+		Assert.assertEquals(Optional.of(fullScreen.toRect()), comp.compositeTo(target));
+		// nothing has changed since
+		Assert.assertEquals(Optional.empty(), comp.compositeTo(target));
+		// drawing damages the pane
+		Canvas canvas = pane.canvas();
+		canvas.color(Argb.RED).fill();
+		Assert.assertEquals(Optional.of(pane.bounds()), comp.compositeTo(target));
+		// a retained canvas damages the pane when it is drawn into later
+		canvas.color(Argb.BLUE);
+		Assert.assertEquals(Optional.empty(), comp.compositeTo(target));
+		canvas.fill();
+		Assert.assertEquals(Optional.of(pane.bounds()), comp.compositeTo(target));
+		// moving damages old and new positions
+		pane.moveTo(IntCoords.at(150, 60));
+		Assert.assertEquals(Optional.of(IntRect.bounded(50, 60, 250, 80)), comp.compositeTo(target));
+		// an invalidated target is recomposited entirely
+		target.invalidate();
+		Assert.assertEquals(Optional.of(fullScreen.toRect()), comp.compositeTo(target));
+		comp.destroy();
+	}
+
+	@Test
+	public void testPackedBits() {
+		Studio studio = new StudioPlan().createLocalStudio();
+		Composition comp = studio.createComposition();
+		IntDimensions screen = IntDimensions.of(128, 64);
+		Panel panel = comp.createPanel(screen, true);
+		Pane pane = panel.createEntirePane(IntCoords.ORIGIN, 0);
+		Canvas canvas = pane.canvas();
+		canvas.color(Argb.BLACK).fill();
+		canvas.color(Argb.WHITE).intOps().fillRect(IntRect.bounded(3, 5, 70, 40));
+
+		// thresholded bits match those converted by Java2D
+		byte[] expected = new byte[screen.area() / 8];
+		byte[] actual = new byte[screen.area() / 8];
+		comp.compositeTo(Target.toByteBitmap(screen, expected));
+		comp.compositeTo(Target.toPackedBits(screen, actual));
+		Assert.assertArrayEquals(expected, actual);
+
+		// dithering mid-grey lights half the pixels
+		canvas.color(0xff808080).fill();
+		for (Target.Dither dither : Target.Dither.values()) {
+			byte[] bits = new byte[screen.area() / 8];
+			comp.compositeTo(Target.toPackedBits(screen, bits, dither, Target.DEFAULT_THRESHOLD));
+			int count = 0;
+			for (byte b : bits) count += Integer.bitCount(b & 0xff);
+			if (dither == Target.Dither.NONE) {
+				Assert.assertEquals(screen.area(), count);
+			} else {
+				Assert.assertEquals(screen.area() / 2, count, screen.area() / 32);
+			}
+		}
+		comp.destroy();
+	}
+
+	@Test
+	public void testTiling() {
+		Studio studio = new StudioPlan().createLocalStudio();
+		Composition comp = studio.createComposition();
+		IntDimensions fullScreen = IntDimensions.of(320, 240);
+		Panel back = comp.createPanel(fullScreen, true);
+		back.createEntirePane(IntCoords.ORIGIN, 0).canvas().shader(new LinearGradientPlane(IntCoords.at(0,0), Argb.GREEN, IntCoords.at(0,240), Argb.RED).asShader()).fill();
+		Panel front = comp.createPanel(IntDimensions.of(100, 150), false);
+		front.createEntirePane(IntCoords.at(30, 40), 1).canvas().color(0x800000ff).fill();
+
+		int[] expected = new int[fullScreen.area()];
+		int[] actual = new int[fullScreen.area()];
+		Target tiled = Target.toIntRGB(fullScreen, actual);
+		tiled.enableTiling(1);
+		Assert.assertTrue(tiled.isTilingEnabled());
+		comp.compositeTo(Target.toIntRGB(fullScreen, expected));
+		Assert.assertEquals(Optional.of(fullScreen.toRect()), comp.compositeTo(tiled));
+		Assert.assertArrayEquals(expected, actual);
+		comp.destroy();
+	}
+
 	private void testComposition(String name, Composition comp, IntDimensions fullScreen) {
 		int area = fullScreen.area();
 		testComposition(name, comp, (SurfaceTarget) Target.toSurface(Surface.create(fullScreen, false)), "translucent");